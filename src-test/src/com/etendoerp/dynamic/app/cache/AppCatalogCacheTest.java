@@ -0,0 +1,260 @@
+package com.etendoerp.dynamic.app.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openbravo.base.exception.OBException;
+
+import com.etendoerp.dynamic.app.service.ResolvedRoleApp;
+
+/**
+ * Unit tests for the {@link AppCatalogCache} class.
+ *
+ * These tests verify hits, invalidation, eviction and that concurrent misses
+ * for the same role share a single load.
+ */
+public class AppCatalogCacheTest {
+
+  private static final String ROLE_ID = "roleId";
+
+  private AppCatalogCache cache;
+
+  /**
+   * Creates an empty cache before each test.
+   */
+  @Before
+  public void setUp() {
+    cache = new AppCatalogCache(300, 2);
+  }
+
+  private static List<ResolvedRoleApp> roleApps(String appName) {
+    return Collections.singletonList(
+        new ResolvedRoleApp("id", "appId", appName, "versionId", "1.0", false, false, "/path/dist.js"));
+  }
+
+  /**
+   * Tests that a second request for the same role is served from the cache.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testHitDoesNotLoadAgain() throws Exception {
+    AtomicInteger loads = new AtomicInteger();
+
+    List<ResolvedRoleApp> first = cache.get(ROLE_ID, () -> {
+      loads.incrementAndGet();
+      return roleApps("App");
+    });
+    List<ResolvedRoleApp> second = cache.get(ROLE_ID, () -> {
+      loads.incrementAndGet();
+      return roleApps("Other");
+    });
+
+    assertEquals(1, loads.get());
+    assertSame(first, second);
+  }
+
+  /**
+   * Tests that invalidating a role forces the next request to load it again.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testInvalidateRoleReloads() throws Exception {
+    cache.get(ROLE_ID, () -> roleApps("App"));
+    cache.invalidateRole(ROLE_ID);
+
+    List<ResolvedRoleApp> reloaded = cache.get(ROLE_ID, () -> roleApps("Reloaded"));
+
+    assertEquals("Reloaded", reloaded.get(0).getAppName());
+  }
+
+  /**
+   * Tests that a load is only discarded by the invalidations of its role or
+   * of its apps made while it runs, not by those of other roles and apps.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testOnlyAffectedLoadsAreDiscarded() throws Exception {
+    cache.get(ROLE_ID, () -> {
+      cache.invalidateRole(ROLE_ID);
+      return roleApps("Stale");
+    });
+    cache.get("role2", () -> {
+      cache.invalidateApp("appId");
+      return roleApps("Stale");
+    });
+    cache.get("unrelated", () -> {
+      cache.invalidateRole(ROLE_ID);
+      cache.invalidateApp("otherAppId");
+      return roleApps("Unrelated");
+    });
+
+    assertEquals(1, cache.size());
+    assertEquals("Unrelated", cache.get("unrelated", () -> roleApps("Reloaded")).get(0).getAppName());
+  }
+
+  /**
+   * Tests that concurrent misses for the same role run the loader once and
+   * every caller receives its result.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testConcurrentMissesShareOneLoad() throws Exception {
+    int callers = 8;
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch loaderStarted = new CountDownLatch(1);
+    CountDownLatch releaseLoader = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(callers);
+    try {
+      List<Future<List<ResolvedRoleApp>>> results = new ArrayList<>();
+      results.add(executor.submit(() -> cache.get(ROLE_ID, () -> {
+        loads.incrementAndGet();
+        loaderStarted.countDown();
+        releaseLoader.await(5, TimeUnit.SECONDS);
+        return roleApps("App");
+      })));
+      assertTrue(loaderStarted.await(5, TimeUnit.SECONDS));
+      for (int i = 1; i < callers; i++) {
+        results.add(executor.submit(() -> cache.get(ROLE_ID, () -> {
+          loads.incrementAndGet();
+          return roleApps("Other");
+        })));
+      }
+      releaseLoader.countDown();
+
+      for (Future<List<ResolvedRoleApp>> result : results) {
+        assertEquals("App", result.get(5, TimeUnit.SECONDS).get(0).getAppName());
+      }
+      assertEquals(1, loads.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Tests that a failed load is propagated and not cached.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testFailedLoadIsNotCached() throws Exception {
+    assertThrows(OBException.class, () -> cache.get(ROLE_ID, () -> {
+      throw new OBException("No default version");
+    }));
+
+    List<ResolvedRoleApp> loaded = cache.get(ROLE_ID, () -> roleApps("App"));
+
+    assertEquals("App", loaded.get(0).getAppName());
+  }
+
+  /**
+   * Tests that the cache never holds more roles than its configured maximum.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testMaxRolesIsEnforced() throws Exception {
+    cache.get("role1", () -> roleApps("App1"));
+    cache.get("role2", () -> roleApps("App2"));
+    cache.get("role3", () -> roleApps("App3"));
+
+    assertEquals(2, cache.size());
+  }
+
+  /**
+   * Tests that hits, misses, loads and evictions are counted.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testStatisticsAreRecorded() throws Exception {
+    cache.get("role1", () -> roleApps("App1"));
+    cache.get("role1", () -> roleApps("App1"));
+    cache.get("role2", () -> roleApps("App2"));
+    cache.get("role3", () -> roleApps("App3"));
+
+    CacheStatistics statistics = cache.getStatistics();
+    assertEquals(1, statistics.getHitCount());
+    assertEquals(3, statistics.getMissCount());
+    assertEquals(3, statistics.getLoadCount());
+    assertEquals(1, statistics.getEvictionCount());
+  }
+
+  /**
+   * Tests that reducing the maximum number of roles evicts the exceeding
+   * entries.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testSetMaxRolesEvicts() throws Exception {
+    cache.get("role1", () -> roleApps("App1"));
+    cache.get("role2", () -> roleApps("App2"));
+
+    cache.setMaxRoles(1);
+
+    assertEquals(1, cache.size());
+    assertEquals(1, cache.getMaxRoles());
+  }
+
+  /**
+   * Tests that invalidating an app forgets the roles that use it and returns
+   * its versions.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testInvalidateAppForgetsItsRoles() throws Exception {
+    cache.get("role1", () -> roleApps("App1"));
+    cache.get("role2", Collections::emptyList);
+
+    Set<String> versionIds = cache.invalidateApp("appId");
+
+    assertEquals(Collections.singleton("versionId"), versionIds);
+    assertEquals(1, cache.size());
+  }
+
+  /**
+   * Tests that a response is kept with the cached app list it was written
+   * from, and forgotten once the role is loaded again.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testResponsesAreKeptWithTheirAppList() throws Exception {
+    byte[] response = new byte[] { 1, 2, 3 };
+    List<ResolvedRoleApp> first = cache.get(ROLE_ID, () -> roleApps("App"));
+
+    cache.putResponse(ROLE_ID, first, "JSON:gzip", response);
+
+    assertSame(response, cache.getResponse(ROLE_ID, first, "JSON:gzip"));
+    assertNull(cache.getResponse(ROLE_ID, first, "CBOR:gzip"));
+    assertNull(cache.getResponse(ROLE_ID, roleApps("App"), "JSON:gzip"));
+
+    cache.invalidateRole(ROLE_ID);
+    List<ResolvedRoleApp> reloaded = cache.get(ROLE_ID, () -> roleApps("Reloaded"));
+    cache.putResponse(ROLE_ID, first, "JSON:gzip", response);
+
+    assertNull(cache.getResponse(ROLE_ID, reloaded, "JSON:gzip"));
+    assertNull(cache.getResponse(ROLE_ID, first, "JSON:gzip"));
+  }
+}
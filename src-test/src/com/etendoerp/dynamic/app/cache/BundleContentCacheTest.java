@@ -0,0 +1,169 @@
+package com.etendoerp.dynamic.app.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the {@link BundleContentCache} class.
+ *
+ * These tests verify that bundles are served from memory, reloaded when the
+ * file changes and evicted in least recently used order.
+ */
+public class BundleContentCacheTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private BundleContentCache cache;
+
+  /**
+   * Creates a cache of 10 bytes before each test.
+   */
+  @Before
+  public void setUp() {
+    cache = new BundleContentCache(10, 8);
+  }
+
+  private Path bundle(String name, String content) throws Exception {
+    Path file = folder.getRoot().toPath().resolve(name);
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private static String read(BundleContentCache.Bundle bundle) {
+    ByteBuffer content = bundle.getContent();
+    byte[] bytes = new byte[content.remaining()];
+    content.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Tests that an unchanged file is served from the cache.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testUnchangedFileIsServedFromCache() throws Exception {
+    Path file = bundle("dist.js", "abc");
+
+    BundleContentCache.Bundle first = cache.get("v1", file);
+    BundleContentCache.Bundle second = cache.get("v1", file);
+
+    assertSame(first, second);
+    assertEquals("abc", read(second));
+    assertEquals(3, cache.getUsedBytes());
+  }
+
+  /**
+   * Tests that a rebuilt bundle is read again and gets a new hash.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testChangedFileIsReloaded() throws Exception {
+    Path file = bundle("dist.js", "abc");
+    BundleContentCache.Bundle first = cache.get("v1", file);
+
+    Files.write(file, "abcd".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(file, FileTime.fromMillis(first.getLastModified() + 1000));
+    BundleContentCache.Bundle second = cache.get("v1", file);
+
+    assertEquals("abcd", read(second));
+    assertNotEquals(first.getSha256(), second.getSha256());
+    assertEquals(4, cache.getUsedBytes());
+  }
+
+  /**
+   * Tests that the least recently used bundle is evicted when the cache is
+   * full.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testLeastRecentlyUsedIsEvicted() throws Exception {
+    Path first = bundle("first.js", "1234");
+    Path second = bundle("second.js", "5678");
+    Path third = bundle("third.js", "90ab");
+
+    cache.get("v1", first);
+    cache.get("v2", second);
+    cache.get("v1", first);
+    cache.get("v3", third);
+
+    assertEquals(2, cache.size());
+    assertEquals(8, cache.getUsedBytes());
+    BundleContentCache.Bundle reloaded = cache.get("v2", second);
+    assertEquals("5678", read(reloaded));
+  }
+
+  /**
+   * Tests that bundles bigger than the entry limit are not cached.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testBigBundleIsNotCached() throws Exception {
+    Path file = bundle("big.js", "123456789");
+
+    assertNull(cache.get("v1", file));
+    assertEquals(0, cache.size());
+  }
+
+  /**
+   * Tests that invalidating a version releases its memory.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testInvalidateReleasesBundle() throws Exception {
+    cache.get("v1", bundle("dist.js", "abc"));
+
+    cache.invalidate("v1");
+
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getUsedBytes());
+  }
+
+  /**
+   * Tests that shrinking the cache evicts the least recently used bundles
+   * and counts them.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testSetMaxBytesEvicts() throws Exception {
+    cache.get("v1", bundle("one.js", "abc"));
+    cache.get("v2", bundle("two.js", "def"));
+
+    cache.setMaxBytes(4);
+
+    assertEquals(1, cache.size());
+    assertEquals(3, cache.getUsedBytes());
+    assertEquals(4, cache.getMaxEntryBytes());
+    assertEquals(1, cache.getStatistics().getEvictionCount());
+  }
+
+  /**
+   * Tests that the biggest cached bundle never exceeds what a single buffer
+   * can hold, whatever limit is configured.
+   */
+  @Test
+  public void testMaxEntryBytesFitsInABuffer() {
+    BundleContentCache unbounded = new BundleContentCache(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    assertEquals(Integer.MAX_VALUE, unbounded.getMaxEntryBytes());
+  }
+}
@@ -0,0 +1,136 @@
+package com.etendoerp.dynamic.app.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link RoleInheritanceCache} class.
+ *
+ * These tests verify the order of the flattened roles, that ancestors are
+ * not queried again, that invalidation only affects the inheriting roles and
+ * that the number of roles kept is bounded.
+ */
+public class RoleInheritanceCacheTest {
+
+  private RoleInheritanceCache cache;
+  private Map<String, List<String>> parents;
+  private List<String> queried;
+
+  /**
+   * Creates an empty cache and an inheritance graph where role inherits from
+   * two templates and both of them from a base role.
+   */
+  @Before
+  public void setUp() {
+    cache = new RoleInheritanceCache(100);
+    parents = new HashMap<>();
+    parents.put("role", Arrays.asList("template1", "template2"));
+    parents.put("template1", Collections.singletonList("base"));
+    parents.put("template2", Collections.singletonList("base"));
+    parents.put("other", Collections.singletonList("template2"));
+    queried = new ArrayList<>();
+  }
+
+  private List<String> load(String roleId) {
+    queried.add(roleId);
+    return parents.getOrDefault(roleId, Collections.emptyList());
+  }
+
+  /**
+   * Tests that the role comes first, followed by its ancestors in
+   * inheritance order and without repetitions.
+   */
+  @Test
+  public void testFlattensInInheritanceOrder() {
+    List<String> roleIds = cache.getEffectiveRoles("role", this::load);
+
+    assertEquals(Arrays.asList("role", "template1", "base", "template2"), roleIds);
+  }
+
+  /**
+   * Tests that the cached flattening of a role is reused, also when it is the
+   * ancestor of another role.
+   */
+  @Test
+  public void testReusesCachedAncestors() {
+    cache.getEffectiveRoles("template2", this::load);
+    queried.clear();
+
+    cache.getEffectiveRoles("other", this::load);
+    cache.getEffectiveRoles("other", this::load);
+
+    assertEquals(Collections.singletonList("other"), queried);
+  }
+
+  /**
+   * Tests that the ancestors flattened on the way are kept too, and that an
+   * ancestor shared by two parents is only queried once.
+   */
+  @Test
+  public void testKeepsFlattenedAncestors() {
+    cache.getEffectiveRoles("role", this::load);
+
+    assertEquals(Arrays.asList("role", "template1", "base", "template2"), queried);
+    assertEquals(4, cache.size());
+
+    queried.clear();
+    assertEquals(Arrays.asList("template2", "base"), cache.getEffectiveRoles("template2", this::load));
+    assertTrue(queried.isEmpty());
+  }
+
+  /**
+   * Tests that an inheritance cycle does not loop forever.
+   */
+  @Test
+  public void testCyclesAreIgnored() {
+    parents.put("base", Collections.singletonList("role"));
+
+    List<String> roleIds = cache.getEffectiveRoles("role", this::load);
+
+    assertEquals(4, roleIds.size());
+  }
+
+  /**
+   * Tests that invalidating a role forgets the roles that include it and
+   * keeps the rest.
+   */
+  @Test
+  public void testInvalidationOnlyAffectsInheritingRoles() {
+    cache.getEffectiveRoles("role", this::load);
+    cache.getEffectiveRoles("template1", this::load);
+    cache.getEffectiveRoles("other", this::load);
+
+    Set<String> invalidated = cache.invalidateRole("template1");
+
+    assertEquals(2, invalidated.size());
+    assertTrue(invalidated.containsAll(Arrays.asList("role", "template1")));
+    assertEquals(3, cache.size());
+    assertTrue(cache.getInheritingRoles("template2").contains("other"));
+  }
+
+  /**
+   * Tests that the cache never keeps more roles than its limit, also when the
+   * limit is lowered.
+   */
+  @Test
+  public void testMaxRolesIsEnforced() {
+    cache.setMaxRoles(2);
+
+    cache.getEffectiveRoles("role", this::load);
+    assertEquals(2, cache.size());
+
+    cache.setMaxRoles(1);
+    assertEquals(1, cache.size());
+  }
+}
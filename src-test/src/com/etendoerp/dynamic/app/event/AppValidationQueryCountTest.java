@@ -0,0 +1,179 @@
+package com.etendoerp.dynamic.app.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.openbravo.client.kernel.event.EntityNewEvent;
+import org.openbravo.client.kernel.event.EntityPersistenceEvent;
+import org.openbravo.dal.service.OBCriteria;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.model.ad.access.Role;
+
+import com.etendoerp.dynamic.app.data.DynamicApp;
+import com.etendoerp.dynamic.app.data.DynamicAppVersion;
+import com.etendoerp.dynamic.app.data.DynamicRoleApp;
+import com.etendoerp.dynamic.app.util.DynamicAppProperties;
+
+/**
+ * Counts the queries of the validation of an import of {@value #RECORDS} role apps and {@value #RECORDS} versions,
+ * saved through {@link ValidateAppConfigurationByRole} and {@link ValidateDefaultValueInAppVersion} as a data set
+ * import saves them, with the validation of each record and with the deferred one.
+ */
+public class AppValidationQueryCountTest {
+  private static final int RECORDS = 10_000;
+  private static final int APPS = 2_000;
+
+  private final AtomicInteger queries = new AtomicInteger();
+  private final List<Synchronization> synchronizations = new ArrayList<>();
+  private final List<DynamicApp> apps = new ArrayList<>();
+  private OBDal obDal;
+
+  /**
+   * Creates the apps of the import and the database they are validated against, with no other records.
+   */
+  @Before
+  public void setUp() {
+    for (int i = 0; i < APPS; i++) {
+      DynamicApp app = mock(DynamicApp.class);
+      when(app.getId()).thenReturn("app" + i);
+      apps.add(app);
+    }
+    obDal = mockDal();
+  }
+
+  private EntityNewEvent roleAppEvent(int i) {
+    Role role = mock(Role.class);
+    when(role.getId()).thenReturn("role" + i);
+    DynamicRoleApp roleApp = mock(DynamicRoleApp.class);
+    when(roleApp.getId()).thenReturn("roleApp" + i);
+    when(roleApp.getEtdappApp()).thenReturn(apps.get(i % APPS));
+    when(roleApp.getRole()).thenReturn(role);
+    when(roleApp.isActive()).thenReturn(true);
+    return newEvent(roleApp);
+  }
+
+  private EntityNewEvent versionEvent(int i) {
+    DynamicAppVersion version = mock(DynamicAppVersion.class);
+    when(version.getId()).thenReturn("version" + i);
+    when(version.getEtdappApp()).thenReturn(apps.get(i % APPS));
+    // The first version of each app is its default one
+    when(version.isDefault()).thenReturn(i < APPS);
+    when(version.isActive()).thenReturn(true);
+    return newEvent(version);
+  }
+
+  private static EntityNewEvent newEvent(Object target) {
+    EntityNewEvent event = mock(EntityNewEvent.class);
+    when(event.getTargetInstance()).thenReturn(target);
+    return event;
+  }
+
+  @SuppressWarnings("unchecked")
+  private OBDal mockDal() {
+    OBDal dal = mock(OBDal.class);
+    OBCriteria<DynamicRoleApp> roleAppCriteria = mock(OBCriteria.class);
+    OBCriteria<DynamicAppVersion> versionCriteria = mock(OBCriteria.class);
+    for (OBCriteria<?> criteria : new OBCriteria<?>[] { roleAppCriteria, versionCriteria }) {
+      when(criteria.add(any())).thenAnswer(invocation -> invocation.getMock());
+      when(criteria.setMaxResults(anyInt())).thenAnswer(invocation -> invocation.getMock());
+      when(criteria.uniqueResult()).thenReturn(null);
+      when(criteria.list()).thenReturn(Collections.emptyList());
+    }
+    when(dal.createCriteria(DynamicRoleApp.class)).thenAnswer(invocation -> {
+      queries.incrementAndGet();
+      return roleAppCriteria;
+    });
+    when(dal.createCriteria(DynamicAppVersion.class)).thenAnswer(invocation -> {
+      queries.incrementAndGet();
+      return versionCriteria;
+    });
+    Session session = mock(Session.class);
+    Transaction transaction = mock(Transaction.class);
+    when(dal.getSession()).thenReturn(session);
+    when(session.getTransaction()).thenReturn(transaction);
+    Mockito.doAnswer(invocation -> synchronizations.add(invocation.getArgument(0))).when(transaction)
+        .registerSynchronization(any());
+    return dal;
+  }
+
+  /**
+   * Saves the import through the observers and commits it, returning the queries it needed.
+   */
+  private int importRecords(boolean deferred) {
+    ValidateAppConfigurationByRole roleAppValidator = new ValidateAppConfigurationByRole() {
+      @Override
+      protected boolean isValidEvent(EntityPersistenceEvent event) {
+        return true;
+      }
+    };
+    ValidateDefaultValueInAppVersion versionValidator = new ValidateDefaultValueInAppVersion() {
+      @Override
+      protected boolean isValidEvent(EntityPersistenceEvent event) {
+        return true;
+      }
+    };
+    List<EntityNewEvent> roleAppEvents = new ArrayList<>();
+    List<EntityNewEvent> versionEvents = new ArrayList<>();
+    for (int i = 0; i < RECORDS; i++) {
+      roleAppEvents.add(roleAppEvent(i));
+      versionEvents.add(versionEvent(i));
+    }
+    queries.set(0);
+    synchronizations.clear();
+
+    try (MockedStatic<OBDal> obDalStatic = Mockito.mockStatic(OBDal.class);
+        MockedStatic<DynamicAppProperties> properties = Mockito.mockStatic(DynamicAppProperties.class)) {
+      obDalStatic.when(OBDal::getInstance).thenReturn(obDal);
+      properties.when(() -> DynamicAppProperties.getString(eq("etdapp.validation.deferred"), anyString()))
+          .thenReturn(String.valueOf(deferred));
+
+      for (int i = 0; i < RECORDS; i++) {
+        roleAppValidator.onSave(roleAppEvents.get(i));
+        versionValidator.onSave(versionEvents.get(i));
+      }
+      for (Synchronization synchronization : synchronizations) {
+        synchronization.beforeCompletion();
+        synchronization.afterCompletion(Status.STATUS_COMMITTED);
+      }
+    }
+    return queries.get();
+  }
+
+  /**
+   * Tests that the validation of each record needs a query per role app and
+   * per default version.
+   */
+  @Test
+  public void testValidationOfEachRecordQueriesEachRecord() {
+    assertEquals(RECORDS + APPS, importRecords(false));
+  }
+
+  /**
+   * Tests that the deferred validation needs a query per thousand apps of
+   * each check, and registers itself once in the transaction.
+   */
+  @Test
+  public void testDeferredValidationQueriesEachThousandApps() {
+    assertEquals(2 * (APPS / 1000), importRecords(true));
+    assertEquals(1, synchronizations.size());
+  }
+}
@@ -0,0 +1,150 @@
+package com.etendoerp.dynamic.app.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.dal.service.OBCriteria;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+import org.openbravo.model.ad.access.Role;
+
+import com.etendoerp.dynamic.app.data.DynamicApp;
+import com.etendoerp.dynamic.app.data.DynamicAppVersion;
+import com.etendoerp.dynamic.app.data.DynamicRoleApp;
+
+/**
+ * Unit tests for the {@link DeferredAppValidation} class.
+ *
+ * These tests verify that the records saved in a transaction are validated
+ * with grouped queries and that a record is not counted as its own duplicate.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class DeferredAppValidationTest {
+
+  @Mock
+  private OBDal obDal;
+
+  @Mock
+  private OBCriteria<DynamicRoleApp> roleAppCriteria;
+
+  @Mock
+  private OBCriteria<DynamicAppVersion> versionCriteria;
+
+  @Mock
+  private DynamicApp app;
+
+  @Mock
+  private Role role;
+
+  private DeferredAppValidation validation;
+
+  /**
+   * Creates an empty validation before each test.
+   */
+  @Before
+  public void setUp() {
+    validation = new DeferredAppValidation();
+    when(app.getId()).thenReturn("appId");
+  }
+
+  private DynamicRoleApp roleApp(String id) {
+    DynamicRoleApp roleApp = mock(DynamicRoleApp.class);
+    when(roleApp.getId()).thenReturn(id);
+    when(roleApp.getEtdappApp()).thenReturn(app);
+    when(roleApp.getRole()).thenReturn(role);
+    when(roleApp.isActive()).thenReturn(true);
+    return roleApp;
+  }
+
+  private DynamicAppVersion defaultVersion(String id) {
+    DynamicAppVersion version = mock(DynamicAppVersion.class);
+    when(version.getId()).thenReturn(id);
+    when(version.isDefault()).thenReturn(true);
+    when(version.getEtdappApp()).thenReturn(app);
+    when(version.isActive()).thenReturn(true);
+    return version;
+  }
+
+  /**
+   * Tests that a role app whose group only counts itself passes with a single
+   * query.
+   */
+  @Test
+  public void testSingleRoleAppPasses() {
+    when(role.getId()).thenReturn("roleId");
+    when(obDal.createCriteria(DynamicRoleApp.class)).thenReturn(roleAppCriteria);
+    when(roleAppCriteria.list()).thenReturn(Collections.singletonList(new Object[] { "appId", "roleId", 1L }));
+
+    try (MockedStatic<OBDal> obDalStatic = Mockito.mockStatic(OBDal.class)) {
+      obDalStatic.when(OBDal::getInstance).thenReturn(obDal);
+      validation.addRoleApp(roleApp("roleApp1"));
+
+      validation.validate();
+
+      verify(obDal).createCriteria(DynamicRoleApp.class);
+      verify(obDal, never()).createCriteria(DynamicAppVersion.class);
+    }
+  }
+
+  /**
+   * Tests that the same app assigned twice to a role fails.
+   */
+  @Test
+  public void testDuplicatedRoleAppFails() {
+    when(role.getId()).thenReturn("roleId");
+    when(obDal.createCriteria(DynamicRoleApp.class)).thenReturn(roleAppCriteria);
+    when(roleAppCriteria.list()).thenReturn(Collections.singletonList(new Object[] { "appId", "roleId", 2L }));
+
+    try (MockedStatic<OBDal> obDalStatic = Mockito.mockStatic(OBDal.class);
+        MockedStatic<OBMessageUtils> messageUtils = Mockito.mockStatic(OBMessageUtils.class)) {
+      obDalStatic.when(OBDal::getInstance).thenReturn(obDal);
+      messageUtils.when(() -> OBMessageUtils.messageBD("ETDAPP_ExistsAppForRole")).thenReturn("Duplicated app");
+      validation.addRoleApp(roleApp("roleApp1"));
+
+      OBException exception = assertThrows(OBException.class, validation::validate);
+
+      assertEquals("Duplicated app", exception.getMessage());
+    }
+  }
+
+  /**
+   * Tests that a second default version of an app fails, and that a version
+   * saved again as not default is no longer checked.
+   */
+  @Test
+  public void testSecondDefaultVersionFails() {
+    when(obDal.createCriteria(DynamicAppVersion.class)).thenReturn(versionCriteria);
+    when(versionCriteria.list()).thenReturn(Collections.singletonList(new Object[] { "appId", 2L }));
+    DynamicAppVersion changedVersion = defaultVersion("version2");
+
+    try (MockedStatic<OBDal> obDalStatic = Mockito.mockStatic(OBDal.class);
+        MockedStatic<OBMessageUtils> messageUtils = Mockito.mockStatic(OBMessageUtils.class)) {
+      obDalStatic.when(OBDal::getInstance).thenReturn(obDal);
+      messageUtils.when(() -> OBMessageUtils.messageBD("ETDAPP_ExistsOtherRecordAsDefault"))
+          .thenReturn("Two defaults");
+      validation.addVersion(defaultVersion("version1"));
+      validation.addVersion(changedVersion);
+
+      assertThrows(OBException.class, validation::validate);
+
+      when(changedVersion.isDefault()).thenReturn(false);
+      validation.addVersion(changedVersion);
+      when(versionCriteria.list()).thenReturn(Collections.singletonList(new Object[] { "appId", 1L }));
+      validation.validate();
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.etendoerp.dynamic.app.jfr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Unit tests for the Java Flight Recorder events of the dynamic app module.
+ *
+ * These tests record the events with a JFR recording and verify the fields
+ * written for request phases and validations.
+ */
+public class DynamicAppEventsTest {
+
+  private static final String PHASE_EVENT = "com.etendoerp.dynamic.app.RequestPhase";
+  private static final String VALIDATION_EVENT = "com.etendoerp.dynamic.app.Validation";
+
+  private static List<RecordedEvent> record(Runnable emitter, String eventName) throws Exception {
+    Path dump = Files.createTempFile("etdapp", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable(eventName).withThreshold(java.time.Duration.ZERO);
+      recording.start();
+      emitter.run();
+      recording.stop();
+      recording.dump(dump);
+      return RecordingFile.readAllEvents(dump)
+          .stream()
+          .filter(event -> eventName.equals(event.getEventType().getName()))
+          .collect(Collectors.toList());
+    } finally {
+      Files.deleteIfExists(dump);
+    }
+  }
+
+  /**
+   * Tests that a request phase event is recorded with its phase, role and app count.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testRequestPhaseEventIsRecorded() throws Exception {
+    List<RecordedEvent> events = record(() -> {
+      AppsRequestPhaseEvent event = AppsRequestPhaseEvent.start(AppsRequestPhaseEvent.ROLE_APP_ITERATION);
+      event.finish("roleId", 3);
+    }, PHASE_EVENT);
+
+    assertEquals(1, events.size());
+    assertEquals(AppsRequestPhaseEvent.ROLE_APP_ITERATION, events.get(0).getString("phase"));
+    assertEquals("roleId", events.get(0).getString("roleId"));
+    assertEquals(3, events.get(0).getInt("appCount"));
+  }
+
+  /**
+   * Tests that validation events record whether the validation passed.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testValidationEventIsRecorded() throws Exception {
+    List<RecordedEvent> events = record(() -> {
+      AppValidationEvent.start("Passing validation").finish("passedId", true);
+      AppValidationEvent.start("Failing validation").finish("failedId", false);
+    }, VALIDATION_EVENT);
+
+    assertEquals(2, events.size());
+    assertEquals("passedId", events.get(0).getString("recordId"));
+    assertTrue(events.get(0).getBoolean("passed"));
+    assertEquals("failedId", events.get(1).getString("recordId"));
+    assertFalse(events.get(1).getBoolean("passed"));
+  }
+}
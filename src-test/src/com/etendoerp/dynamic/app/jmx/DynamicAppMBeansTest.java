@@ -0,0 +1,71 @@
+package com.etendoerp.dynamic.app.jmx;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link DynamicAppMBeans} class.
+ *
+ * These tests verify that the cache MBeans are registered with their
+ * attributes and operations.
+ */
+public class DynamicAppMBeansTest {
+
+  private MBeanServer server;
+
+  /**
+   * Creates an empty MBean server before each test.
+   */
+  @Before
+  public void setUp() {
+    server = MBeanServerFactory.newMBeanServer();
+  }
+
+  /**
+   * Releases the MBean server.
+   */
+  @After
+  public void tearDown() {
+    MBeanServerFactory.releaseMBeanServer(server);
+  }
+
+  /**
+   * Tests that every cache is registered with its management operations.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testCachesAreRegistered() throws Exception {
+    DynamicAppMBeans.register(server);
+
+    MBeanInfo catalog = server.getMBeanInfo(DynamicAppMBeans.getObjectName("AppCatalog"));
+    assertTrue(Arrays.stream(catalog.getOperations()).anyMatch(op -> "invalidateApp".equals(op.getName())));
+    assertTrue(Arrays.stream(catalog.getAttributes()).anyMatch(attr -> "MaxRoles".equals(attr.getName())
+        && attr.isWritable()));
+    assertTrue(server.isRegistered(DynamicAppMBeans.getObjectName("BundleContent")));
+    assertTrue(server.isRegistered(DynamicAppMBeans.getObjectName("RoleInheritance")));
+  }
+
+  /**
+   * Tests that registering again, as a redeployed webapp does, replaces the
+   * previous MBeans.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testRegisterTwiceReplacesMBeans() throws Exception {
+    DynamicAppMBeans.register(server);
+    DynamicAppMBeans.register(server);
+
+    assertTrue(server.isRegistered(DynamicAppMBeans.getObjectName("AppCatalog")));
+  }
+}
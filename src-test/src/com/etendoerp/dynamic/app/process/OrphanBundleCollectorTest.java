@@ -0,0 +1,162 @@
+package com.etendoerp.dynamic.app.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the {@link OrphanBundleCollector} class.
+ *
+ * These tests verify which bundle files are considered orphaned and what is
+ * done with them in each mode.
+ */
+public class OrphanBundleCollectorTest {
+
+  private static final long GRACE = TimeUnit.DAYS.toMillis(7);
+  private static final long OLD = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(30);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path directory;
+
+  /**
+   * Creates an app directory with a referenced bundle, its sidecars, an old
+   * unreferenced bundle with its manifest and an old file written by someone
+   * else.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Before
+  public void setUp() throws Exception {
+    directory = folder.newFolder("app").toPath();
+    file("dist.js", OLD);
+    file("dist.js.gz", OLD);
+    file("dist.js.manifest.json", OLD);
+    file("old.js", OLD);
+    file("old.js.br", OLD);
+    file("old.js.manifest.json", OLD);
+    file("foreign.js", OLD);
+    file("README.md", OLD);
+  }
+
+  private Path file(String name, long lastModified) throws Exception {
+    Path file = directory.resolve(name);
+    Files.write(file, name.getBytes());
+    Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified));
+    return file;
+  }
+
+  private Map<Path, Set<String>> referenced(String... names) {
+    return Collections.singletonMap(directory, new HashSet<>(Arrays.asList(names)));
+  }
+
+  /**
+   * Tests that a dry run reports the unreferenced bundles and their sidecars
+   * without touching them.
+   */
+  @Test
+  public void testDryRunOnlyReports() {
+    List<OrphanBundleCollector.Orphan> orphans = new OrphanBundleCollector(GRACE, OrphanBundleCollector.Mode.DRY_RUN)
+        .collect(referenced("dist.js"));
+
+    assertEquals(3, orphans.size());
+    for (OrphanBundleCollector.Orphan orphan : orphans) {
+      assertEquals(OrphanBundleCollector.Action.REPORTED, orphan.getAction());
+      assertTrue(Files.exists(orphan.getPath()));
+    }
+  }
+
+  /**
+   * Tests that orphaned bundles are moved to the quarantine directory.
+   */
+  @Test
+  public void testQuarantineMovesOrphans() {
+    new OrphanBundleCollector(GRACE, OrphanBundleCollector.Mode.QUARANTINE).collect(referenced("dist.js"));
+
+    Path quarantine = directory.resolve(OrphanBundleCollector.QUARANTINE_DIRECTORY);
+    assertFalse(Files.exists(directory.resolve("old.js")));
+    assertTrue(Files.exists(quarantine.resolve("old.js")));
+    assertTrue(Files.exists(quarantine.resolve("old.js.br")));
+    assertTrue(Files.exists(quarantine.resolve("old.js.manifest.json")));
+    assertTrue(Files.exists(directory.resolve("dist.js.gz")));
+    assertTrue(Files.exists(directory.resolve("README.md")));
+  }
+
+  /**
+   * Tests that quarantined bundles are deleted once their grace period ends.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testQuarantineIsPurgedAfterGracePeriod() throws Exception {
+    Path quarantine = Files.createDirectory(directory.resolve(OrphanBundleCollector.QUARANTINE_DIRECTORY));
+    Path expired = quarantine.resolve("expired.js");
+    Files.write(expired, new byte[] { 1 });
+    Files.setLastModifiedTime(expired, FileTime.fromMillis(OLD));
+
+    new OrphanBundleCollector(GRACE, OrphanBundleCollector.Mode.QUARANTINE).collect(referenced("dist.js", "old.js"));
+
+    assertFalse(Files.exists(expired));
+  }
+
+  /**
+   * Tests that recent bundles are kept during the grace period.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testRecentBundlesAreKept() throws Exception {
+    file("new.js", System.currentTimeMillis());
+
+    new OrphanBundleCollector(GRACE, OrphanBundleCollector.Mode.DELETE).collect(referenced("dist.js"));
+
+    assertTrue(Files.exists(directory.resolve("new.js")));
+    assertFalse(Files.exists(directory.resolve("old.js")));
+  }
+
+  /**
+   * Tests that bundles without a manifest, which were not written by the
+   * module, are never collected.
+   */
+  @Test
+  public void testFilesWithoutManifestAreKept() {
+    List<OrphanBundleCollector.Orphan> orphans = new OrphanBundleCollector(GRACE, OrphanBundleCollector.Mode.DELETE)
+        .collect(referenced("dist.js"));
+
+    assertTrue(Files.exists(directory.resolve("foreign.js")));
+    for (OrphanBundleCollector.Orphan orphan : orphans) {
+      assertFalse(orphan.getPath().endsWith("foreign.js"));
+    }
+    assertTrue(OrphanBundleCollector.hasManifest(directory, "old.js.br"));
+    assertFalse(OrphanBundleCollector.hasManifest(directory, "foreign.js"));
+  }
+
+  /**
+   * Tests that sidecars are considered referenced when their bundle is.
+   */
+  @Test
+  public void testSidecarsFollowTheirBundle() {
+    Set<String> referenced = Collections.singleton("dist.js");
+
+    assertTrue(OrphanBundleCollector.isReferenced("dist.js.gz", referenced));
+    assertFalse(OrphanBundleCollector.isReferenced("dist.jsx", referenced));
+    assertFalse(OrphanBundleCollector.isBundle("README.md"));
+  }
+}
@@ -5,11 +5,14 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -18,7 +21,9 @@ import com.auth0.jwt.interfaces.DecodedJWT;
 import com.smf.securewebservices.rsql.OBRestUtils;
 import com.smf.securewebservices.utils.SecureWebServicesUtils;
 import com.smf.securewebservices.utils.WSResult;
+import org.codehaus.jettison.json.JSONArray;
 import org.codehaus.jettison.json.JSONObject;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -28,12 +33,16 @@ import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.mockito.quality.Strictness;
 import org.openbravo.dal.core.DalContextListener;
 import org.openbravo.dal.core.OBContext;
 import org.openbravo.dal.service.OBCriteria;
 import org.openbravo.dal.service.OBDal;
 import org.openbravo.erpCommon.utility.OBMessageUtils;
 import org.openbravo.model.ad.access.Role;
+import org.openbravo.model.ad.access.RoleInheritance;
+import com.etendoerp.dynamic.app.cache.AppCatalogCache;
+import com.etendoerp.dynamic.app.cache.RoleInheritanceCache;
 import com.etendoerp.dynamic.app.data.DynamicApp;
 import com.etendoerp.dynamic.app.data.DynamicAppVersion;
 import com.etendoerp.dynamic.app.data.DynamicRoleApp;
@@ -88,6 +97,14 @@ public class AppsForUserServletTest {
     @Mock
     private ServletContext servletContext;
 
+    @Mock
+    private OBCriteria<DynamicRoleApp> roleAppCriteria;
+
+    @Mock
+    private OBCriteria<RoleInheritance> roleInheritanceCriteria;
+
+    private MockedStatic<ResolvedRoleAppStore> resolvedRoleAppStore;
+
     /**
      * Sets up the test environment with mock objects and common configurations.
      *
@@ -100,8 +117,13 @@ public class AppsForUserServletTest {
         List<DynamicRoleApp> roleAppList = new ArrayList<>();
         roleAppList.add(mockRoleApp);
 
-        when(mockRole.getETDAPPDynamicRoleAppList()).thenReturn(roleAppList);
+        when(obDal.createCriteria(DynamicRoleApp.class)).thenReturn(roleAppCriteria);
+        when(roleAppCriteria.list()).thenReturn(roleAppList);
+        when(obDal.createCriteria(RoleInheritance.class)).thenReturn(roleInheritanceCriteria);
+        when(roleInheritanceCriteria.list()).thenReturn(new ArrayList<>());
+        when(mockRoleApp.getRole()).thenReturn(mockRole);
         when(mockRoleApp.getEtdappApp()).thenReturn(mockApp);
+        when(mockApp.getId()).thenReturn("testAppId");
         when(mockRoleApp.getEtdappAppVersion()).thenReturn(mockVersion);
         when(mockApp.getName()).thenReturn(TEST_APP_NAME);
         when(mockApp.getDirectoryLocation()).thenReturn("@basedesign@/testDir");
@@ -110,6 +132,23 @@ public class AppsForUserServletTest {
         when(servletContext.getRealPath("")).thenReturn("/test/path/");
 
         when(obContext.getRole()).thenReturn(mockRole);
+        when(mockRole.getId()).thenReturn("testRoleId");
+
+        AppCatalogCache.getInstance().invalidateAll();
+        RoleInheritanceCache.getInstance().invalidateAll();
+
+        // The DAL resolution is tested here, the materialized table in ResolvedRoleAppStoreTest
+        resolvedRoleAppStore = Mockito.mockStatic(ResolvedRoleAppStore.class,
+            withSettings().strictness(Strictness.LENIENT));
+        resolvedRoleAppStore.when(ResolvedRoleAppStore::isEnabled).thenReturn(false);
+    }
+
+    /**
+     * Releases the static mock of the materialized role apps.
+     */
+    @After
+    public void tearDown() {
+        resolvedRoleAppStore.close();
     }
 
     /**
@@ -130,9 +169,9 @@ public class AppsForUserServletTest {
         try (MockedStatic<OBDal> obDalMock = Mockito.mockStatic(OBDal.class)) {
             obDalMock.when(OBDal::getInstance).thenReturn(obDal);
 
-            java.lang.reflect.Method method = AppsForUserServlet.class.getDeclaredMethod("getVersionDefault", DynamicApp.class);
+            java.lang.reflect.Method method = RoleAppResolver.class.getDeclaredMethod("getVersionDefault", DynamicApp.class);
             method.setAccessible(true);
-            DynamicAppVersion result = (DynamicAppVersion) method.invoke(servlet, mockApp);
+            DynamicAppVersion result = (DynamicAppVersion) method.invoke(new RoleAppResolver(), mockApp);
 
             assertNotNull(result);
             assertEquals(mockVersion, result);
@@ -254,11 +293,13 @@ public class AppsForUserServletTest {
 
         try (MockedStatic<SecureWebServicesUtils> secureUtils = Mockito.mockStatic(SecureWebServicesUtils.class);
              MockedStatic<DalContextListener> dalContext = Mockito.mockStatic(DalContextListener.class);
-             MockedStatic<OBContext> obContextMock = Mockito.mockStatic(OBContext.class)) {
+             MockedStatic<OBContext> obContextMock = Mockito.mockStatic(OBContext.class);
+             MockedStatic<OBDal> obDalMock = Mockito.mockStatic(OBDal.class)) {
 
             secureUtils.when(() -> SecureWebServicesUtils.decodeToken(anyString())).thenReturn(decodedToken);
             when(decodedToken.getClaim("role")).thenReturn(mock(com.auth0.jwt.interfaces.Claim.class));
 
+            obDalMock.when(OBDal::getInstance).thenReturn(obDal);
             obContextMock.when(OBContext::getOBContext).thenReturn(obContext);
             when(obContext.getRole()).thenReturn(mockRole);
 
@@ -286,24 +327,28 @@ public class AppsForUserServletTest {
             DynamicApp newApp = mock(DynamicApp.class);
             DynamicAppVersion newVersion = mock(DynamicAppVersion.class);
 
+            when(newApp.getId()).thenReturn("appId" + i);
             when(newApp.getName()).thenReturn(TEST_APP_NAME + i);
             when(newApp.getDirectoryLocation()).thenReturn("@basedesign@/testDir" + i);
             when(newVersion.getName()).thenReturn("1." + i);
             when(newVersion.getFileName()).thenReturn("test" + i + ".js");
+            when(newRoleApp.getRole()).thenReturn(mockRole);
             when(newRoleApp.getEtdappApp()).thenReturn(newApp);
             when(newRoleApp.getEtdappAppVersion()).thenReturn(newVersion);
 
             roleAppList.add(newRoleApp);
         }
 
-        when(mockRole.getETDAPPDynamicRoleAppList()).thenReturn(roleAppList);
+        when(roleAppCriteria.list()).thenReturn(roleAppList);
 
         try (MockedStatic<SecureWebServicesUtils> secureUtils = Mockito.mockStatic(SecureWebServicesUtils.class);
              MockedStatic<DalContextListener> dalContext = Mockito.mockStatic(DalContextListener.class);
-             MockedStatic<OBContext> obContextMock = Mockito.mockStatic(OBContext.class)) {
+             MockedStatic<OBContext> obContextMock = Mockito.mockStatic(OBContext.class);
+             MockedStatic<OBDal> obDalMock = Mockito.mockStatic(OBDal.class)) {
 
             secureUtils.when(() -> SecureWebServicesUtils.decodeToken(anyString())).thenReturn(decodedToken);
             when(decodedToken.getClaim("role")).thenReturn(mock(com.auth0.jwt.interfaces.Claim.class));
+            obDalMock.when(OBDal::getInstance).thenReturn(obDal);
             obContextMock.when(OBContext::getOBContext).thenReturn(obContext);
             when(obContext.getRole()).thenReturn(mockRole);
             dalContext.when(DalContextListener::getServletContext).thenReturn(servletContext);
@@ -314,6 +359,135 @@ public class AppsForUserServletTest {
         }
     }
 
+    /**
+     * Tests that the resolved app list of a role is cached, so a second request
+     * for the same role does not read the role apps again.
+     *
+     * @throws Exception if test execution fails
+     */
+    @Test
+    public void testRoleAppsAreCached() throws Exception {
+        Map<String, String> params = new HashMap<>();
+        params.put(TOKEN_PARAM, VALID_TOKEN);
+
+        try (MockedStatic<SecureWebServicesUtils> secureUtils = Mockito.mockStatic(SecureWebServicesUtils.class);
+             MockedStatic<DalContextListener> dalContext = Mockito.mockStatic(DalContextListener.class);
+             MockedStatic<OBContext> obContextMock = Mockito.mockStatic(OBContext.class);
+             MockedStatic<OBDal> obDalMock = Mockito.mockStatic(OBDal.class)) {
+
+            secureUtils.when(() -> SecureWebServicesUtils.decodeToken(anyString())).thenReturn(decodedToken);
+            when(decodedToken.getClaim("role")).thenReturn(mock(com.auth0.jwt.interfaces.Claim.class));
+            obDalMock.when(OBDal::getInstance).thenReturn(obDal);
+            obContextMock.when(OBContext::getOBContext).thenReturn(obContext);
+            dalContext.when(DalContextListener::getServletContext).thenReturn(servletContext);
+
+            WSResult first = servlet.get(TEST_PATH, params);
+            WSResult second = servlet.get(TEST_PATH, params);
+
+            assertEquals(WSResult.Status.OK, first.getStatus());
+            assertEquals(WSResult.Status.OK, second.getStatus());
+            verify(roleAppCriteria, times(1)).list();
+        }
+    }
+
+    /**
+     * Tests that the apps of an inherited role are included, and that an app
+     * assigned to both roles keeps the version of the inheriting role.
+     *
+     * @throws Exception if test execution fails
+     */
+    @Test
+    public void testInheritedAppsAreIncluded() throws Exception {
+        Map<String, String> params = new HashMap<>();
+        params.put(TOKEN_PARAM, VALID_TOKEN);
+
+        Role templateRole = mock(Role.class);
+        when(templateRole.getId()).thenReturn("templateRoleId");
+        RoleInheritance inheritance = mock(RoleInheritance.class);
+        when(inheritance.getInheritFrom()).thenReturn(templateRole);
+        List<RoleInheritance> inheritances = new ArrayList<>();
+        inheritances.add(inheritance);
+        when(roleInheritanceCriteria.list()).thenReturn(inheritances, new ArrayList<>());
+
+        DynamicApp templateApp = mock(DynamicApp.class);
+        when(templateApp.getId()).thenReturn("templateAppId");
+        when(templateApp.getName()).thenReturn("TemplateApp");
+        when(templateApp.getDirectoryLocation()).thenReturn("@basedesign@/templateDir");
+        DynamicAppVersion templateVersion = mock(DynamicAppVersion.class);
+        when(templateVersion.getName()).thenReturn("2.0");
+        when(templateVersion.getFileName()).thenReturn("template.js");
+
+        DynamicRoleApp inheritedApp = mock(DynamicRoleApp.class);
+        when(inheritedApp.getRole()).thenReturn(templateRole);
+        when(inheritedApp.getEtdappApp()).thenReturn(templateApp);
+        when(inheritedApp.getEtdappAppVersion()).thenReturn(templateVersion);
+        DynamicRoleApp overriddenApp = mock(DynamicRoleApp.class);
+        when(overriddenApp.getRole()).thenReturn(templateRole);
+        when(overriddenApp.getEtdappApp()).thenReturn(mockApp);
+        when(overriddenApp.getEtdappAppVersion()).thenReturn(templateVersion);
+
+        List<DynamicRoleApp> roleAppList = new ArrayList<>();
+        roleAppList.add(overriddenApp);
+        roleAppList.add(inheritedApp);
+        roleAppList.add(mockRoleApp);
+        when(roleAppCriteria.list()).thenReturn(roleAppList);
+
+        try (MockedStatic<SecureWebServicesUtils> secureUtils = Mockito.mockStatic(SecureWebServicesUtils.class);
+             MockedStatic<DalContextListener> dalContext = Mockito.mockStatic(DalContextListener.class);
+             MockedStatic<OBContext> obContextMock = Mockito.mockStatic(OBContext.class);
+             MockedStatic<OBDal> obDalMock = Mockito.mockStatic(OBDal.class)) {
+
+            secureUtils.when(() -> SecureWebServicesUtils.decodeToken(anyString())).thenReturn(decodedToken);
+            when(decodedToken.getClaim("role")).thenReturn(mock(com.auth0.jwt.interfaces.Claim.class));
+            obDalMock.when(OBDal::getInstance).thenReturn(obDal);
+            obContextMock.when(OBContext::getOBContext).thenReturn(obContext);
+            dalContext.when(DalContextListener::getServletContext).thenReturn(servletContext);
+
+            WSResult result = servlet.get(TEST_PATH, params);
+
+            assertEquals(WSResult.Status.OK, result.getStatus());
+            JSONArray apps = (JSONArray) result.getData();
+            assertEquals(2, apps.length());
+            assertEquals("1.0", apps.getJSONObject(0).getString("etdappAppVersionName"));
+            assertEquals("TemplateApp", apps.getJSONObject(1).getString("etdappAppName"));
+        }
+    }
+
+    /**
+     * Tests that apps whose version is installed in the client are only
+     * marked as up to date, and the rest are sent whole.
+     *
+     * @throws Exception if test execution fails
+     */
+    @Test
+    public void testInstalledVersionsAreCompared() throws Exception {
+        Map<String, String> params = new HashMap<>();
+        params.put(TOKEN_PARAM, VALID_TOKEN);
+        when(mockVersion.getId()).thenReturn("versionId");
+
+        try (MockedStatic<SecureWebServicesUtils> secureUtils = Mockito.mockStatic(SecureWebServicesUtils.class);
+             MockedStatic<DalContextListener> dalContext = Mockito.mockStatic(DalContextListener.class);
+             MockedStatic<OBContext> obContextMock = Mockito.mockStatic(OBContext.class);
+             MockedStatic<OBDal> obDalMock = Mockito.mockStatic(OBDal.class)) {
+
+            secureUtils.when(() -> SecureWebServicesUtils.decodeToken(anyString())).thenReturn(decodedToken);
+            when(decodedToken.getClaim("role")).thenReturn(mock(com.auth0.jwt.interfaces.Claim.class));
+            obDalMock.when(OBDal::getInstance).thenReturn(obDal);
+            obContextMock.when(OBContext::getOBContext).thenReturn(obContext);
+            dalContext.when(DalContextListener::getServletContext).thenReturn(servletContext);
+
+            params.put("installed", "otherVersionId, versionId");
+            JSONObject upToDate = ((JSONArray) servlet.get(TEST_PATH, params).getData()).getJSONObject(0);
+            params.put("installed", "otherVersionId");
+            JSONObject changed = ((JSONArray) servlet.get(TEST_PATH, params).getData()).getJSONObject(0);
+
+            assertTrue(upToDate.getBoolean("upToDate"));
+            assertFalse(upToDate.has("path"));
+            assertFalse(changed.getBoolean("upToDate"));
+            assertEquals("1.0", changed.getString("etdappAppVersionName"));
+        }
+    }
+
     /**
      * Tests behavior when the role's application list is empty.
      * Verifies that the system handles empty application lists gracefully
@@ -326,13 +500,15 @@ public class AppsForUserServletTest {
         Map<String, String> params = new HashMap<>();
         params.put(TOKEN_PARAM, VALID_TOKEN);
 
-        when(mockRole.getETDAPPDynamicRoleAppList()).thenReturn(new ArrayList<>());
+        when(roleAppCriteria.list()).thenReturn(new ArrayList<>());
 
         try (MockedStatic<SecureWebServicesUtils> secureUtils = Mockito.mockStatic(SecureWebServicesUtils.class);
-             MockedStatic<OBContext> obContextMock = Mockito.mockStatic(OBContext.class)) {
+             MockedStatic<OBContext> obContextMock = Mockito.mockStatic(OBContext.class);
+             MockedStatic<OBDal> obDalMock = Mockito.mockStatic(OBDal.class)) {
 
             secureUtils.when(() -> SecureWebServicesUtils.decodeToken(anyString())).thenReturn(decodedToken);
             when(decodedToken.getClaim("role")).thenReturn(mock(com.auth0.jwt.interfaces.Claim.class));
+            obDalMock.when(OBDal::getInstance).thenReturn(obDal);
             obContextMock.when(OBContext::getOBContext).thenReturn(obContext);
             when(obContext.getRole()).thenReturn(mockRole);
 
@@ -427,6 +603,33 @@ public class AppsForUserServletTest {
         }
     }
 
+    /**
+     * Tests that a since parameter that is not a timestamp is rejected.
+     *
+     * @throws Exception if test execution fails
+     */
+    @Test
+    public void testInvalidSince() throws Exception {
+        Map<String, String> params = new HashMap<>();
+        params.put(TOKEN_PARAM, VALID_TOKEN);
+        params.put("since", "yesterday");
+
+        try (MockedStatic<SecureWebServicesUtils> secureUtils = Mockito.mockStatic(SecureWebServicesUtils.class);
+             MockedStatic<OBContext> obContextMock = Mockito.mockStatic(OBContext.class);
+             MockedStatic<OBMessageUtils> messageUtils = Mockito.mockStatic(OBMessageUtils.class)) {
+
+            secureUtils.when(() -> SecureWebServicesUtils.decodeToken(anyString())).thenReturn(decodedToken);
+            when(decodedToken.getClaim("role")).thenReturn(mock(com.auth0.jwt.interfaces.Claim.class));
+            obContextMock.when(OBContext::getOBContext).thenReturn(obContext);
+            messageUtils.when(() -> OBMessageUtils.messageBD("ETDAPP_InvalidSince")).thenReturn("Invalid since %s");
+
+            WSResult result = servlet.get(TEST_PATH, params);
+
+            assertEquals(WSResult.Status.BAD_REQUEST, result.getStatus());
+            verify(roleAppCriteria, never()).list();
+        }
+    }
+
     /**
      * Tests behavior when an invalid authentication token is provided.
      * Verifies that the system properly handles invalid tokens and returns
@@ -477,6 +680,7 @@ public class AppsForUserServletTest {
 
             obRestUtils.verify(() -> OBRestUtils.writeWSResponse(mockResult, response));
             verify(request).getHeader(AUTHORIZATION_HEADER);
+            verify(response).addHeader("Vary", "Accept");
         }
     }
 
@@ -577,6 +781,56 @@ public class AppsForUserServletTest {
         }
     }
 
+    /**
+     * Tests the doGet method when the client accepts gzip.
+     * Verifies that a big enough response is sent compressed, with its encoding
+     * and compressed length, and that the compressed response is kept with the
+     * cached apps of the role so the next request neither writes nor compresses it.
+     *
+     * @throws Exception if test execution fails
+     */
+    @Test
+    public void testDoGetCompressesAcceptedResponse() throws Exception {
+        ServletOutputStream outputStream = mock(ServletOutputStream.class);
+        String body = String.join("", Collections.nCopies(200, "{\"etdappAppName\":\"TestApp\"},"));
+
+        when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(BEARER_TOKEN);
+        when(request.getHeader("Accept-Encoding")).thenReturn("br, gzip;q=0.8, deflate;q=0.5");
+        when(response.getOutputStream()).thenReturn(outputStream);
+
+        try (MockedStatic<OBRestUtils> obRestUtils = Mockito.mockStatic(OBRestUtils.class);
+             MockedStatic<SecureWebServicesUtils> secureUtils = Mockito.mockStatic(SecureWebServicesUtils.class);
+             MockedStatic<DalContextListener> dalContext = Mockito.mockStatic(DalContextListener.class);
+             MockedStatic<OBContext> obContextMock = Mockito.mockStatic(OBContext.class);
+             MockedStatic<OBDal> obDalMock = Mockito.mockStatic(OBDal.class)) {
+            obRestUtils.when(() -> OBRestUtils.requestParamsToMap(request)).thenAnswer(invocation -> new HashMap<>());
+            obRestUtils.when(() -> OBRestUtils.writeWSResponse(any(WSResult.class), any(HttpServletResponse.class)))
+                    .thenAnswer(invocation -> {
+                        invocation.getArgument(1, HttpServletResponse.class).getWriter().write(body);
+                        return null;
+                    });
+            secureUtils.when(() -> SecureWebServicesUtils.decodeToken(anyString())).thenReturn(decodedToken);
+            when(decodedToken.getClaim("role")).thenReturn(mock(com.auth0.jwt.interfaces.Claim.class));
+            obDalMock.when(OBDal::getInstance).thenReturn(obDal);
+            obContextMock.when(OBContext::getOBContext).thenReturn(obContext);
+            dalContext.when(DalContextListener::getServletContext).thenReturn(servletContext);
+
+            servlet.doGet(VALID_PATH, request, response);
+            servlet.doGet(VALID_PATH, request, response);
+
+            byte[] expected = ResponseCompression.getInstance().compress(body.getBytes(StandardCharsets.UTF_8),
+                    ResponseCompression.GZIP);
+            obRestUtils.verify(() -> OBRestUtils.writeWSResponse(any(WSResult.class),
+                    any(HttpServletResponse.class)), times(1));
+            verify(roleAppCriteria, times(1)).list();
+            verify(response, times(2)).setHeader("Content-Encoding", "gzip");
+            verify(response, times(2)).addHeader("Vary", "Accept");
+            verify(response, times(2)).addHeader("Vary", "Accept-Encoding");
+            verify(response, times(2)).setContentLength(expected.length);
+            verify(outputStream, times(2)).write(expected);
+        }
+    }
+
     /**
      * Tests the doGet method when an exception occurs during parameter processing.
      * Verifies that the system properly handles exceptions during request parameter
@@ -0,0 +1,105 @@
+package com.etendoerp.dynamic.app.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link AppsRequestLimiter} class.
+ *
+ * These tests verify the per client token bucket and the adaptive global
+ * concurrency limit used to shed load in the userApp service.
+ */
+public class AppsRequestLimiterTest {
+
+  private static final String CLIENT = "client-token";
+  private static final long SLOW_REQUEST = TimeUnit.SECONDS.toNanos(2);
+  private static final long FAST_REQUEST = TimeUnit.MILLISECONDS.toNanos(5);
+
+  /**
+   * Tests that a client can burst up to the configured size and is then
+   * asked to retry later.
+   */
+  @Test
+  public void testBurstIsAllowedThenLimited() {
+    AppsRequestLimiter limiter = new AppsRequestLimiter(60, 3, 1, 10, 500);
+
+    assertEquals(0, limiter.tryAcquire(CLIENT));
+    assertEquals(0, limiter.tryAcquire(CLIENT));
+    assertEquals(0, limiter.tryAcquire(CLIENT));
+
+    long retryAfter = limiter.tryAcquire(CLIENT);
+    assertTrue(retryAfter >= 1);
+    assertTrue(retryAfter <= 1);
+  }
+
+  /**
+   * Tests that each client has its own bucket.
+   */
+  @Test
+  public void testClientsAreLimitedIndependently() {
+    AppsRequestLimiter limiter = new AppsRequestLimiter(60, 1, 1, 10, 500);
+
+    assertEquals(0, limiter.tryAcquire(CLIENT));
+    assertTrue(limiter.tryAcquire(CLIENT) > 0);
+    assertEquals(0, limiter.tryAcquire("other-client"));
+  }
+
+  /**
+   * Tests that requests are shed once the concurrency limit is reached and
+   * admitted again after a release.
+   */
+  @Test
+  public void testConcurrencyLimitShedsLoad() {
+    AppsRequestLimiter limiter = new AppsRequestLimiter(60, 10, 1, 2, 500);
+
+    assertTrue(limiter.tryEnter());
+    assertTrue(limiter.tryEnter());
+    assertFalse(limiter.tryEnter());
+
+    limiter.release();
+
+    assertTrue(limiter.tryEnter());
+    assertEquals(2, limiter.getInFlight());
+  }
+
+  /**
+   * Tests that slow requests halve the concurrency limit down to its minimum
+   * and fast requests grow it back.
+   */
+  @Test
+  public void testConcurrencyLimitAdaptsToLatency() {
+    AppsRequestLimiter limiter = new AppsRequestLimiter(60, 10, 2, 8, 500);
+
+    limiter.tryEnter();
+    limiter.recordLatency(SLOW_REQUEST);
+    limiter.release();
+    assertEquals(4, limiter.getConcurrencyLimit());
+
+    limiter.tryEnter();
+    limiter.recordLatency(SLOW_REQUEST);
+    limiter.release();
+    limiter.tryEnter();
+    limiter.recordLatency(SLOW_REQUEST);
+    limiter.release();
+    assertEquals(2, limiter.getConcurrencyLimit());
+
+    limiter.tryEnter();
+    limiter.recordLatency(FAST_REQUEST);
+    limiter.release();
+    assertEquals(3, limiter.getConcurrencyLimit());
+  }
+
+  /**
+   * Tests that the limits are disabled unless they are enabled in the
+   * properties.
+   */
+  @Test
+  public void testDisabledByDefault() {
+    assertFalse(AppsRequestLimiter.isEnabled());
+  }
+}
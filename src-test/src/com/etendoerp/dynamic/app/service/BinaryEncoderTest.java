@@ -0,0 +1,93 @@
+package com.etendoerp.dynamic.app.service;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link BinaryEncoder} class.
+ *
+ * These tests verify the bytes written for each kind of value in CBOR and in
+ * MessagePack.
+ */
+public class BinaryEncoderTest {
+
+  private static byte[] bytes(int... values) {
+    byte[] bytes = new byte[values.length];
+    for (int i = 0; i < values.length; i++) {
+      bytes[i] = (byte) values[i];
+    }
+    return bytes;
+  }
+
+  /**
+   * Tests the CBOR encoding of integers of each size.
+   */
+  @Test
+  public void testCborIntegers() {
+    assertArrayEquals(bytes(0x17), BinaryEncoder.cbor().writeLong(23).toByteArray());
+    assertArrayEquals(bytes(0x18, 0x18), BinaryEncoder.cbor().writeLong(24).toByteArray());
+    assertArrayEquals(bytes(0x19, 0x03, 0xe8), BinaryEncoder.cbor().writeLong(1000).toByteArray());
+    assertArrayEquals(bytes(0x1a, 0x00, 0x0f, 0x42, 0x40), BinaryEncoder.cbor().writeLong(1_000_000).toByteArray());
+    assertArrayEquals(bytes(0x1b, 0x00, 0x00, 0x00, 0xe8, 0xd4, 0xa5, 0x10, 0x00),
+        BinaryEncoder.cbor().writeLong(1_000_000_000_000L).toByteArray());
+    assertArrayEquals(bytes(0x38, 0x63), BinaryEncoder.cbor().writeLong(-100).toByteArray());
+  }
+
+  /**
+   * Tests the CBOR encoding of strings, containers and simple values.
+   */
+  @Test
+  public void testCborValues() {
+    byte[] encoded = BinaryEncoder.cbor()
+        .writeMapHeader(1)
+        .writeString("a")
+        .writeArrayHeader(3)
+        .writeBoolean(true)
+        .writeBoolean(false)
+        .writeNullable(null)
+        .toByteArray();
+
+    assertArrayEquals(bytes(0xa1, 0x61, 0x61, 0x83, 0xf5, 0xf4, 0xf6), encoded);
+    assertArrayEquals(bytes(0x62, 0xc3, 0xbc), BinaryEncoder.cbor().writeString("\u00fc").toByteArray());
+  }
+
+  /**
+   * Tests the MessagePack encoding of integers of each size.
+   */
+  @Test
+  public void testMessagePackIntegers() {
+    assertArrayEquals(bytes(0x7f), BinaryEncoder.messagePack().writeLong(127).toByteArray());
+    assertArrayEquals(bytes(0xe0), BinaryEncoder.messagePack().writeLong(-32).toByteArray());
+    assertArrayEquals(bytes(0xcc, 0x80), BinaryEncoder.messagePack().writeLong(128).toByteArray());
+    assertArrayEquals(bytes(0xcd, 0x03, 0xe8), BinaryEncoder.messagePack().writeLong(1000).toByteArray());
+    assertArrayEquals(bytes(0xce, 0x00, 0x0f, 0x42, 0x40),
+        BinaryEncoder.messagePack().writeLong(1_000_000).toByteArray());
+    assertArrayEquals(bytes(0xd0, 0x9c), BinaryEncoder.messagePack().writeLong(-100).toByteArray());
+    assertArrayEquals(bytes(0xd1, 0xfc, 0x18), BinaryEncoder.messagePack().writeLong(-1000).toByteArray());
+  }
+
+  /**
+   * Tests the MessagePack encoding of strings, containers and simple values.
+   */
+  @Test
+  public void testMessagePackValues() {
+    byte[] encoded = BinaryEncoder.messagePack()
+        .writeMapHeader(1)
+        .writeString("a")
+        .writeArrayHeader(3)
+        .writeBoolean(true)
+        .writeBoolean(false)
+        .writeNullable(null)
+        .toByteArray();
+
+    assertArrayEquals(bytes(0x81, 0xa1, 0x61, 0x93, 0xc3, 0xc2, 0xc0), encoded);
+    String longString = String.join("", Collections.nCopies(32, "x"));
+    byte[] encodedString = BinaryEncoder.messagePack().writeString(longString).toByteArray();
+    assertArrayEquals(bytes(0xd9, 0x20, 0x78), Arrays.copyOf(encodedString, 3));
+    assertArrayEquals(bytes(0xdc, 0x00, 0x10), BinaryEncoder.messagePack().writeArrayHeader(16).toByteArray());
+  }
+}
@@ -0,0 +1,140 @@
+package com.etendoerp.dynamic.app.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.endsWith;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.servlet.ServletContext;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openbravo.dal.core.DalContextListener;
+
+/**
+ * Unit tests for the {@link BundleDirectoryWatcher} class.
+ *
+ * These tests verify which directories are watched and how the changed files
+ * are matched with the bundles of the versions.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class BundleDirectoryWatcherTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Mock
+  private Connection connection;
+
+  @Mock
+  private PreparedStatement statement;
+
+  @Mock
+  private ResultSet resultSet;
+
+  @Mock
+  private ServletContext servletContext;
+
+  private final BundleDirectoryWatcher watcher = new BundleDirectoryWatcher(10);
+
+  /**
+   * Stops the watcher after each test.
+   *
+   * @throws Exception if the watch service cannot be closed
+   */
+  @After
+  public void tearDown() throws Exception {
+    watcher.stop();
+  }
+
+  /**
+   * Tests that existing directories are watched once, and only while the
+   * watcher is started.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testWatchExistingDirectoriesOnce() throws Exception {
+    Path directory = folder.newFolder("app").toPath();
+
+    watcher.watch(directory);
+    assertEquals(0, watcher.getWatchedCount());
+
+    watcher.start();
+    watcher.watch(directory);
+    watcher.watch(directory.resolve("."));
+    watcher.watch(directory.resolve("missing"));
+
+    assertEquals(1, watcher.getWatchedCount());
+  }
+
+  /**
+   * Tests that the directories not holding the bundle of any version stop
+   * being watched.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testUnwatchUnusedDirectories() throws Exception {
+    Path used = folder.newFolder("used").toPath();
+    Path unused = folder.newFolder("unused").toPath();
+    watcher.start();
+    watcher.watch(used);
+    watcher.watch(unused);
+
+    watcher.unwatchUnused(Arrays.asList(
+        new BundleDirectoryWatcher.VersionBundle("versionId", "appId", "app.js", used.resolve("app.js"))));
+
+    assertEquals(1, watcher.getWatchedCount());
+    watcher.watch(unused);
+    assertEquals(2, watcher.getWatchedCount());
+  }
+
+  /**
+   * Tests that the changed files are looked up by name and that versions of
+   * files with the same name in other directories are discarded.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testFindVersionsMatchesThePath() throws Exception {
+    when(connection.prepareStatement(endsWith("AND ((V.FILENAME = ? OR V.FILENAME LIKE ?))"))).thenReturn(statement);
+    when(statement.executeQuery()).thenReturn(resultSet);
+    when(resultSet.next()).thenReturn(true, true, false);
+    when(resultSet.getString("ETDAPP_APP_VERSION_ID")).thenReturn("versionId", "otherVersionId");
+    when(resultSet.getString("ETDAPP_APP_ID")).thenReturn("appId", "otherAppId");
+    when(resultSet.getString("FILENAME")).thenReturn("dist/app.js", "app.js");
+    when(resultSet.getString("DIRLOCATION")).thenReturn("@basedesign@/web/", "@basedesign@/other/");
+    when(servletContext.getRealPath(anyString())).thenReturn("/test/path/");
+
+    try (MockedStatic<DalContextListener> dalContext = Mockito.mockStatic(DalContextListener.class)) {
+      dalContext.when(DalContextListener::getServletContext).thenReturn(servletContext);
+
+      Path changed = Paths.get("/test/path/src-loc/design/web/dist/app.js");
+      List<BundleDirectoryWatcher.VersionBundle> bundles = BundleDirectoryWatcher.findVersions(connection,
+          Arrays.asList(changed));
+
+      assertEquals(1, bundles.size());
+      assertEquals("versionId", bundles.get(0).versionId);
+      assertEquals("dist/app.js", bundles.get(0).fileName);
+      verify(statement).setString(1, "app.js");
+      verify(statement).setString(2, "%/app.js");
+    }
+  }
+}
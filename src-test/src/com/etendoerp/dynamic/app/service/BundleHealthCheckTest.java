@@ -0,0 +1,110 @@
+package com.etendoerp.dynamic.app.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the {@link BundleHealthCheck} class.
+ *
+ * These tests verify how the bundles of the versions are checked and how the
+ * kept results are reported and used.
+ */
+public class BundleHealthCheckTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(2);
+  private final BundleHealthCheck healthCheck = new BundleHealthCheck(executor, 60_000);
+
+  /**
+   * Stops the threads that check the bundles after each test.
+   */
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private BundleDirectoryWatcher.VersionBundle bundle(String versionId, Path path) {
+    return new BundleDirectoryWatcher.VersionBundle(versionId, "appId", path.getFileName().toString(), path);
+  }
+
+  /**
+   * Tests that missing files and directories are broken, and that versions
+   * not checked are considered available.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testCheckFindsBrokenBundles() throws Exception {
+    Path available = folder.newFile("available.js").toPath();
+    Path directory = folder.newFolder("directory.js").toPath();
+
+    healthCheck.check(Arrays.asList(bundle("available", available), bundle("directory", directory),
+        bundle("missing", folder.getRoot().toPath().resolve("missing.js")))).get();
+
+    assertFalse(healthCheck.isBroken("available"));
+    assertTrue(healthCheck.isBroken("directory"));
+    assertTrue(healthCheck.isBroken("missing"));
+    assertFalse(healthCheck.isBroken("unchecked"));
+  }
+
+  /**
+   * Tests that the report lists only the broken bundles, with their state.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testReportListsBrokenBundles() throws Exception {
+    Path available = folder.newFile("available.js").toPath();
+    healthCheck.check(Arrays.asList(bundle("available", available),
+        bundle("missing", folder.getRoot().toPath().resolve("missing.js")))).get();
+
+    BundleHealthCheck.Report report = healthCheck.getReport(false);
+    JSONObject json = report.toJSON();
+
+    assertFalse(report.isHealthy());
+    assertEquals("DEGRADED", json.getString("status"));
+    assertEquals(2, json.getInt("checked"));
+    JSONArray broken = json.getJSONArray("broken");
+    assertEquals(1, broken.length());
+    assertEquals("missing", broken.getJSONObject(0).getString("etdappAppVersionId"));
+    assertFalse(broken.getJSONObject(0).has("path"));
+    assertEquals("MISSING", broken.getJSONObject(0).getString("state"));
+  }
+
+  /**
+   * Tests that updating a checked bundle checks it again, and that bundles not
+   * checked before are not added.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testUpdateChecksTheBundleAgain() throws Exception {
+    Path restored = folder.getRoot().toPath().resolve("restored.js");
+    healthCheck.check(Arrays.asList(bundle("restored", restored))).get();
+    assertTrue(healthCheck.isBroken("restored"));
+
+    Files.write(restored, new byte[] { 1 });
+    healthCheck.update(bundle("restored", restored));
+    healthCheck.update(bundle("other", folder.getRoot().toPath().resolve("other.js")));
+
+    assertFalse(healthCheck.isBroken("restored"));
+    assertFalse(healthCheck.isBroken("other"));
+    assertEquals(1, healthCheck.getReport(false).toJSON().getInt("checked"));
+  }
+}
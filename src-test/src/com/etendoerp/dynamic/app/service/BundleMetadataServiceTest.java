@@ -0,0 +1,138 @@
+package com.etendoerp.dynamic.app.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openbravo.dal.service.OBDal;
+
+/**
+ * Unit tests for the {@link BundleMetadataService} class.
+ *
+ * These tests verify how bundles are queued and how their metadata is stored
+ * in the version.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class BundleMetadataServiceTest {
+
+  private static final BundleMetadata METADATA = new BundleMetadata("abc123", 1000, 300);
+
+  @Mock
+  private Executor executor;
+
+  @Mock
+  private OBDal obDal;
+
+  @Mock
+  private Connection connection;
+
+  @Mock
+  private PreparedStatement update;
+
+  @Mock
+  private PreparedStatement statement;
+
+  /**
+   * Tests that a version is only queued once until it is processed.
+   */
+  @Test
+  public void testVersionIsQueuedOnce() {
+    List<Runnable> tasks = new ArrayList<>();
+    BundleMetadataService service = new BundleMetadataService(tasks::add);
+
+    assertTrue(service.enqueue("versionId", "appId", "dist.js", Paths.get("/missing/dist.js")));
+    assertFalse(service.enqueue("versionId", "appId", "dist.js", Paths.get("/missing/dist.js")));
+    assertEquals(1, service.getQueuedCount());
+
+    tasks.get(0).run();
+
+    assertEquals(0, service.getQueuedCount());
+    assertTrue(service.enqueue("versionId", "appId", "dist.js", Paths.get("/missing/dist.js")));
+  }
+
+  /**
+   * Tests that a bundle is skipped when the queue is full, so the version can
+   * be queued again later.
+   */
+  @Test
+  public void testFullQueueSkipsTheBundle() {
+    doThrow(new RejectedExecutionException()).when(executor).execute(any(Runnable.class));
+    BundleMetadataService service = new BundleMetadataService(executor);
+
+    assertFalse(service.enqueue("versionId", "appId", "dist.js", Paths.get("/missing/dist.js")));
+    assertEquals(0, service.getQueuedCount());
+  }
+
+  /**
+   * Tests that the metadata is stored in the version and its resolved apps are
+   * rebuilt in the same transaction.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testStoreUpdatesVersionAndResolvedApps() throws Exception {
+    when(obDal.getConnection(false)).thenReturn(connection);
+    when(connection.prepareStatement(startsWith("UPDATE ETDAPP_APP_VERSION"))).thenReturn(update);
+    when(connection.prepareStatement(startsWith("DELETE"))).thenReturn(statement);
+    when(connection.prepareStatement(startsWith("INSERT"))).thenReturn(statement);
+    when(update.executeUpdate()).thenReturn(1);
+
+    try (MockedStatic<OBDal> obDalStatic = Mockito.mockStatic(OBDal.class)) {
+      obDalStatic.when(OBDal::getInstance).thenReturn(obDal);
+
+      assertTrue(new BundleMetadataService(executor).store("versionId", "appId", "dist.js", METADATA));
+
+      verify(update).setString(1, "abc123");
+      verify(update).setLong(2, 1000);
+      verify(update).setLong(3, 300);
+      verify(update).setString(4, "versionId");
+      verify(update).setString(5, "dist.js");
+      verify(statement, times(2)).setString(1, "appId");
+      verify(obDal).commitAndClose();
+    }
+  }
+
+  /**
+   * Tests that nothing else is rebuilt when the version was removed or its
+   * bundle replaced meanwhile.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testStoreSkipsReplacedBundle() throws Exception {
+    when(obDal.getConnection(false)).thenReturn(connection);
+    when(connection.prepareStatement(anyString())).thenReturn(update);
+    when(update.executeUpdate()).thenReturn(0);
+
+    try (MockedStatic<OBDal> obDalStatic = Mockito.mockStatic(OBDal.class)) {
+      obDalStatic.when(OBDal::getInstance).thenReturn(obDal);
+
+      assertFalse(new BundleMetadataService(executor).store("versionId", "appId", "other.js", METADATA));
+
+      verify(connection, never()).prepareStatement(startsWith("DELETE"));
+      verify(obDal).commitAndClose();
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package com.etendoerp.dynamic.app.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the {@link BundleMetadata} class.
+ *
+ * These tests verify the hash and sizes computed for a bundle and how they
+ * are returned with the resolved apps.
+ */
+public class BundleMetadataTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path bundle(byte[] content) throws Exception {
+    Path file = folder.getRoot().toPath().resolve("dist.js");
+    Files.write(file, content);
+    return file;
+  }
+
+  private static byte[] content(int size) {
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; content.length() < size; i++) {
+      content.append("export const value").append(i).append(" = ").append(i * 31 % 97).append(";\n");
+    }
+    return content.substring(0, size).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static long gzipSize(byte[] content) throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+      gzip.write(content);
+    }
+    return output.size();
+  }
+
+  /**
+   * Tests that the hash and the sizes match the ones of the whole file, also
+   * when it is read through several mappings.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testComputeAcrossMappings() throws Exception {
+    byte[] content = content(100_000);
+    Path file = bundle(content);
+
+    BundleMetadata metadata = BundleMetadata.compute(file, 4096);
+
+    assertEquals(DigestUtils.sha256Hex(content), metadata.getSha256());
+    assertEquals(100_000, metadata.getSize());
+    assertEquals(gzipSize(content), metadata.getGzipSize());
+  }
+
+  /**
+   * Tests that an empty bundle gets the size of an empty gzip stream.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testComputeEmptyBundle() throws Exception {
+    Path file = bundle(new byte[0]);
+
+    BundleMetadata metadata = BundleMetadata.compute(file);
+
+    assertEquals(DigestUtils.sha256Hex(new byte[0]), metadata.getSha256());
+    assertEquals(0, metadata.getSize());
+    assertEquals(gzipSize(new byte[0]), metadata.getGzipSize());
+  }
+
+  /**
+   * Tests that the metadata is returned with the app, and omitted while it is
+   * being computed.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testMetadataIsReturnedWithTheApp() throws Exception {
+    BundleMetadata metadata = new BundleMetadata("abc123", 1000, 300);
+    ResolvedRoleApp withMetadata = new ResolvedRoleApp("roleAppId", "appId", "TestApp", "versionId", "1.0", false,
+        false, "/path/dist.js", metadata);
+    ResolvedRoleApp withoutMetadata = new ResolvedRoleApp("roleAppId", "appId", "TestApp", "versionId", "1.0", false,
+        false, "/path/dist.js");
+
+    JSONObject json = withMetadata.toJSON();
+
+    assertEquals("abc123", json.getString("etdappBundleSha256"));
+    assertEquals(1000, json.getLong("etdappBundleSize"));
+    assertEquals(300, json.getLong("etdappBundleGzipSize"));
+    assertFalse(withoutMetadata.toJSON().has("etdappBundleSha256"));
+    assertNull(withoutMetadata.getBundle());
+    assertTrue(withMetadata.toJSON(Collections.singleton("otherVersionId")).has("etdappBundleSha256"));
+  }
+
+  private static void manifest(Path bundle, String sha256, long size, long gzipSize) throws Exception {
+    String manifest = "{\"bundleFileName\":\"dist.js\",\"artifacts\":["
+        + "{\"file\":\"dist.js\",\"encoding\":\"identity\",\"size\":" + size + ",\"sha256\":\"" + sha256 + "\"},"
+        + "{\"file\":\"dist.js.gz\",\"encoding\":\"gzip\",\"size\":" + gzipSize + ",\"sha256\":\"def456\"}]}";
+    Files.write(BundleMetadata.getManifest(bundle), manifest.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Tests that the metadata listed in the manifest of the bundle is used
+   * instead of hashing the bundle.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testComputeUsesManifest() throws Exception {
+    Path file = bundle(content(1000));
+    manifest(file, "abc123", 1000, 300);
+
+    BundleMetadata metadata = BundleMetadata.compute(file);
+
+    assertEquals("abc123", metadata.getSha256());
+    assertEquals(1000, metadata.getSize());
+    assertEquals(300, metadata.getGzipSize());
+  }
+
+  /**
+   * Tests that a manifest that does not describe the bundle anymore is
+   * ignored and the bundle is hashed instead.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testComputeIgnoresStaleManifest() throws Exception {
+    byte[] content = content(1000);
+    Path file = bundle(content);
+    manifest(file, "abc123", 999, 300);
+
+    BundleMetadata metadata = BundleMetadata.compute(file);
+
+    assertEquals(DigestUtils.sha256Hex(content), metadata.getSha256());
+    assertEquals(gzipSize(content), metadata.getGzipSize());
+  }
+}
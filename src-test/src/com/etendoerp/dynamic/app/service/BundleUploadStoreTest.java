@@ -0,0 +1,250 @@
+package com.etendoerp.dynamic.app.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+/**
+ * Unit tests for the {@link BundleUploadStore} class.
+ *
+ * These tests verify chunked uploads, resuming after a restart, the hash
+ * computed while streaming and the final move of the bundle.
+ */
+public class BundleUploadStoreTest {
+
+  private static final String BUNDLE = "0123456789";
+  private static final String BUNDLE_SHA256 = "84d89877f0d4041efb6bf91a16f0248f2fd573e6af05c19f96bedb9f882f7882";
+  private static final String USER = "userId";
+  private static final String ROLE = "roleId";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path uploadDirectory;
+  private Path appDirectory;
+  private BundleUploadStore store;
+
+  /**
+   * Creates a store limited to 100 bytes before each test.
+   */
+  @Before
+  public void setUp() {
+    uploadDirectory = folder.getRoot().toPath().resolve("uploads");
+    appDirectory = folder.getRoot().toPath().resolve("app");
+    store = new BundleUploadStore(uploadDirectory, 100);
+  }
+
+  private static ByteArrayInputStream body(String content) {
+    return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Tests that a bundle uploaded in chunks is moved to the app directory with
+   * its hash.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testChunkedUploadCompletes() throws Exception {
+    BundleUploadStore.Upload upload = store.create("appId", "1.0.0", "dist.js", BUNDLE.length(), BUNDLE_SHA256, USER,
+        ROLE);
+
+    assertTrue(store.append(upload, 0, body("01234")));
+    assertFalse(upload.isComplete());
+    assertTrue(store.append(upload, 5, body("56789")));
+    assertTrue(upload.isComplete());
+
+    Path bundle = store.complete(upload, appDirectory);
+
+    assertEquals(BUNDLE, new String(Files.readAllBytes(bundle), StandardCharsets.UTF_8));
+    assertEquals(BUNDLE_SHA256, upload.getSha256());
+  }
+
+  /**
+   * Tests that a chunk sent for a different offset is rejected so the client
+   * resumes from the bytes already received.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testWrongOffsetIsRejected() throws Exception {
+    BundleUploadStore.Upload upload = store.create("appId", "1.0.0", "dist.js", BUNDLE.length(), null, USER, ROLE);
+    store.append(upload, 0, body("01234"));
+
+    assertFalse(store.append(upload, 2, body("23456")));
+    assertEquals(5, upload.getOffset());
+  }
+
+  /**
+   * Tests that while a chunk is still being received the offset can be read
+   * and a second chunk is rejected instead of waiting for the first one.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testConcurrentAppendIsRejected() throws Exception {
+    BundleUploadStore.Upload upload = store.create("appId", "1.0.0", "dist.js", BUNDLE.length(), null, USER, ROLE);
+    CountDownLatch reading = new CountDownLatch(1);
+    CountDownLatch stalled = new CountDownLatch(1);
+    InputStream slowBody = new InputStream() {
+      @Override
+      public int read() throws IOException {
+        reading.countDown();
+        try {
+          stalled.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException(e);
+        }
+        return -1;
+      }
+    };
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Boolean> first = executor.submit(() -> store.append(upload, 0, slowBody));
+      assertTrue(reading.await(5, TimeUnit.SECONDS));
+
+      assertEquals(0, upload.getOffset());
+      assertFalse(store.append(upload, 0, body("01234")));
+
+      stalled.countDown();
+      assertTrue(first.get(5, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Tests that an upload can be resumed by a new store, as after a restart,
+   * and still gets the hash of the whole bundle.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testUploadResumesAfterRestart() throws Exception {
+    BundleUploadStore.Upload upload = store.create("appId", "1.0.0", "dist.js", BUNDLE.length(), null, USER, ROLE);
+    store.append(upload, 0, body("0123"));
+
+    BundleUploadStore restarted = new BundleUploadStore(uploadDirectory, 100);
+    BundleUploadStore.Upload resumed = restarted.get(upload.getId());
+
+    assertNotNull(resumed);
+    assertEquals(4, resumed.getOffset());
+    assertEquals("dist.js", resumed.getFileName());
+    assertTrue(resumed.isOwnedBy(USER, ROLE));
+    assertTrue(restarted.append(resumed, 4, body("456789")));
+    restarted.complete(resumed, appDirectory);
+    assertEquals(BUNDLE_SHA256, resumed.getSha256());
+  }
+
+  /**
+   * Tests that a bundle that does not match the expected hash is discarded.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testHashMismatchDiscardsUpload() throws Exception {
+    try (MockedStatic<OBMessageUtils> messageUtilsMock = Mockito.mockStatic(OBMessageUtils.class)) {
+      messageUtilsMock.when(() -> OBMessageUtils.messageBD(anyString())).thenReturn("Hash mismatch");
+      BundleUploadStore.Upload upload = store.create("appId", "1.0.0", "dist.js", 3, BUNDLE_SHA256, USER, ROLE);
+      store.append(upload, 0, body("abc"));
+
+      assertThrows(OBException.class, () -> store.complete(upload, appDirectory));
+      assertNull(store.get(upload.getId()));
+      assertFalse(Files.exists(appDirectory.resolve("dist.js")));
+    }
+  }
+
+  /**
+   * Tests that file names that could escape the app directory are rejected.
+   */
+  @Test
+  public void testInvalidFileNameIsRejected() {
+    try (MockedStatic<OBMessageUtils> messageUtilsMock = Mockito.mockStatic(OBMessageUtils.class)) {
+      messageUtilsMock.when(() -> OBMessageUtils.messageBD(anyString())).thenReturn("Invalid file name %s");
+
+      assertThrows(OBException.class, () -> store.create("appId", "1.0.0", "../dist.js", 10, null, USER, ROLE));
+    }
+  }
+
+  /**
+   * Tests that an upload only belongs to the user and role that started it.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testUploadIsOwnedByItsCreator() throws Exception {
+    BundleUploadStore.Upload upload = store.create("appId", "1.0.0", "dist.js", BUNDLE.length(), null, USER, ROLE);
+
+    assertTrue(upload.isOwnedBy(USER, ROLE));
+    assertFalse(upload.isOwnedBy("otherUserId", ROLE));
+    assertFalse(upload.isOwnedBy(USER, "otherRoleId"));
+  }
+
+  /**
+   * Tests that an upload that received no bytes for longer than the time to
+   * live is removed with its files.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testExpiredUploadIsPurged() throws Exception {
+    BundleUploadStore expiring = new BundleUploadStore(uploadDirectory, 100, 60_000, 5);
+    BundleUploadStore.Upload upload = expiring.create("appId", "1.0.0", "dist.js", BUNDLE.length(), null, USER, ROLE);
+    expiring.append(upload, 0, body("0123"));
+    Path partFile = uploadDirectory.resolve(upload.getId() + ".part");
+    Files.setLastModifiedTime(partFile, FileTime.fromMillis(System.currentTimeMillis() - 120_000));
+
+    expiring.purgeExpired();
+
+    assertNull(expiring.get(upload.getId()));
+    assertFalse(Files.exists(partFile));
+    assertFalse(Files.exists(uploadDirectory.resolve(upload.getId() + ".upload")));
+  }
+
+  /**
+   * Tests that a user cannot open more uploads than the limit, while other
+   * users still can.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testOpenUploadsAreLimitedPerUser() throws Exception {
+    try (MockedStatic<OBMessageUtils> messageUtilsMock = Mockito.mockStatic(OBMessageUtils.class)) {
+      messageUtilsMock.when(() -> OBMessageUtils.messageBD(anyString())).thenReturn("Limit %s reached");
+      BundleUploadStore limited = new BundleUploadStore(uploadDirectory, 100, 60_000, 2);
+      limited.create("appId", "1.0.0", "a.js", BUNDLE.length(), null, USER, ROLE);
+      limited.create("appId", "1.0.1", "b.js", BUNDLE.length(), null, USER, ROLE);
+
+      assertThrows(OBException.class,
+          () -> limited.create("appId", "1.0.2", "c.js", BUNDLE.length(), null, USER, ROLE));
+      assertNotNull(limited.create("appId", "1.0.2", "c.js", BUNDLE.length(), null, "otherUserId", ROLE));
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package com.etendoerp.dynamic.app.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Unit tests for the {@link CatalogChangeStore} class.
+ *
+ * These tests verify how the changes of the roles are queried and how
+ * deletions are recorded.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CatalogChangeStoreTest {
+
+  private static final Timestamp SINCE = new Timestamp(1000);
+
+  @Mock
+  private Connection connection;
+
+  @Mock
+  private PreparedStatement statement;
+
+  @Mock
+  private ResultSet resultSet;
+
+  /**
+   * Tests that every role and time parameter is bound and that a row of a role
+   * inheritance is reported as an inheritance change.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testGetChangesBindsRolesAndTimes() throws Exception {
+    when(connection.prepareStatement(anyString())).thenReturn(statement);
+    when(statement.executeQuery()).thenReturn(resultSet);
+    when(resultSet.next()).thenReturn(true, true, false);
+    when(resultSet.getString(1)).thenReturn("appId", "role1");
+    when(resultSet.getString(2)).thenReturn("A", "I");
+
+    CatalogChangeStore.Changes changes = CatalogChangeStore.getChanges(connection, Arrays.asList("role1", "role2"),
+        SINCE);
+
+    assertEquals(Collections.singleton("appId"), changes.getAppIds());
+    assertTrue(changes.isInheritanceChanged());
+    verify(statement).setString(1, "role1");
+    verify(statement).setTimestamp(3, SINCE);
+    verify(statement).setTimestamp(6, SINCE);
+    verify(statement).setString(8, "role2");
+    verify(statement).setTimestamp(9, SINCE);
+    verify(statement).setString(11, "role2");
+  }
+
+  /**
+   * Tests that a tombstone without app is reported as an inheritance change.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testTombstoneWithoutAppChangesInheritance() throws Exception {
+    when(connection.prepareStatement(anyString())).thenReturn(statement);
+    when(statement.executeQuery()).thenReturn(resultSet);
+    when(resultSet.next()).thenReturn(true, false);
+    when(resultSet.getString(1)).thenReturn(null);
+
+    CatalogChangeStore.Changes changes = CatalogChangeStore.getChanges(connection, Collections.singletonList("role"),
+        SINCE);
+
+    assertTrue(changes.getAppIds().isEmpty());
+    assertTrue(changes.isInheritanceChanged());
+  }
+
+  /**
+   * Tests that a deletion is stored with its role, app, client, organization
+   * and user.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testRecordDeletion() throws Exception {
+    when(connection.prepareStatement(anyString())).thenReturn(statement);
+
+    CatalogChangeStore.recordDeletion(connection, "recordId", null, "appId", "clientId", "orgId", "userId", SINCE);
+
+    verify(statement).setString(2, "clientId");
+    verify(statement).setString(3, "orgId");
+    verify(statement).setTimestamp(4, SINCE);
+    verify(statement).setString(5, "userId");
+    verify(statement).setString(8, "recordId");
+    verify(statement).setString(9, null);
+    verify(statement).setString(10, "appId");
+    verify(statement).setTimestamp(11, SINCE);
+    verify(statement).executeUpdate();
+  }
+
+  /**
+   * Tests that no changes are reported when the query returns no rows.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testNoChanges() throws Exception {
+    when(connection.prepareStatement(anyString())).thenReturn(statement);
+    when(statement.executeQuery()).thenReturn(resultSet);
+
+    CatalogChangeStore.Changes changes = CatalogChangeStore.getChanges(connection, Collections.singletonList("role"),
+        SINCE);
+
+    assertTrue(changes.getAppIds().isEmpty());
+    assertFalse(changes.isInheritanceChanged());
+  }
+}
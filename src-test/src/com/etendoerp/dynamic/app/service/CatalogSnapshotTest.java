@@ -0,0 +1,181 @@
+package com.etendoerp.dynamic.app.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openbravo.dal.core.DalContextListener;
+
+/**
+ * Unit tests for the {@link CatalogSnapshot} class.
+ *
+ * These tests verify that the resolved role apps written to the snapshot are
+ * read back from the mapped file, and that invalid snapshots are ignored.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CatalogSnapshotTest {
+
+  private static final String INSTANCE_ID = "jdbc:postgresql://localhost:5432/etendo/etendo";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Mock
+  private Connection connection;
+
+  @Mock
+  private PreparedStatement versionStatement;
+
+  @Mock
+  private PreparedStatement rowsStatement;
+
+  @Mock
+  private ResultSet version;
+
+  @Mock
+  private ResultSet rows;
+
+  @Mock
+  private ServletContext servletContext;
+
+  private Path writeSnapshot() throws Exception {
+    when(connection.prepareStatement(startsWith("SELECT COUNT"))).thenReturn(versionStatement);
+    when(connection.prepareStatement(startsWith("SELECT AD_ROLE_ID"))).thenReturn(rowsStatement);
+    when(versionStatement.executeQuery()).thenReturn(version);
+    when(version.next()).thenReturn(true);
+    when(version.getLong(1)).thenReturn(2L);
+    when(version.getTimestamp(2)).thenReturn(new Timestamp(1000));
+    when(rowsStatement.executeQuery()).thenReturn(rows);
+    when(rows.next()).thenReturn(true, true, false);
+    when(rows.getString("AD_ROLE_ID")).thenReturn("roleId", "templateRoleId");
+    when(rows.getString("AD_CLIENT_ID")).thenReturn("clientId", "otherClientId");
+    when(rows.getString("AD_ORG_ID")).thenReturn("0");
+    when(rows.getString("ETDAPP_ROLE_APP_ID")).thenReturn("roleAppId", "templateRoleAppId");
+    when(rows.getString("ETDAPP_APP_ID")).thenReturn("appId", "templateAppId");
+    when(rows.getString("APP_NAME")).thenReturn("TestApp", "TemplateApp");
+    when(rows.getString("ETDAPP_APP_VERSION_ID")).thenReturn("versionId", "templateVersionId");
+    when(rows.getString("VERSION_NAME")).thenReturn("1.0", "2.0");
+    when(rows.getString("SHARE_ENABLED")).thenReturn("Y", "N");
+    when(rows.getString("ISDEVELOPMENT")).thenReturn("N", "Y");
+    when(rows.getString("PATH")).thenReturn("@basedesign@/testDir/test.js", "/other/template.js");
+    when(rows.getString("BUNDLE_SHA256")).thenReturn("abc123", (String) null);
+    when(rows.getLong("BUNDLE_SIZE")).thenReturn(1000L);
+    when(rows.getLong("BUNDLE_GZIP_SIZE")).thenReturn(300L);
+
+    Path file = folder.getRoot().toPath().resolve("catalog.snapshot");
+    CatalogSnapshot.write(connection, file, INSTANCE_ID);
+    return file;
+  }
+
+  /**
+   * Tests that the rows are read back grouped by role, with their bundle
+   * metadata and their base design path resolved.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testReadWrittenSnapshot() throws Exception {
+    Path file = writeSnapshot();
+    when(servletContext.getRealPath("")).thenReturn("/test/path/");
+
+    try (MockedStatic<DalContextListener> dalContext = Mockito.mockStatic(DalContextListener.class)) {
+      dalContext.when(DalContextListener::getServletContext).thenReturn(servletContext);
+
+      Map<String, List<ResolvedRoleApp>> roleApps = CatalogSnapshot.open(file, INSTANCE_ID).read(
+          Arrays.asList("roleId", "templateRoleId", "missingRoleId"),
+          new HashSet<>(Arrays.asList("clientId", "otherClientId")), Collections.singleton("0"));
+
+      assertEquals(2, roleApps.size());
+      ResolvedRoleApp roleApp = roleApps.get("roleId").get(0);
+      assertEquals("versionId", roleApp.getVersionId());
+      assertTrue(roleApp.isShareEnabled());
+      assertEquals("/test/path/src-loc/design/testDir/test.js", roleApp.getPath());
+      assertEquals("abc123", roleApp.getBundle().getSha256());
+      assertEquals(300, roleApp.getBundle().getGzipSize());
+      ResolvedRoleApp templateRoleApp = roleApps.get("templateRoleId").get(0);
+      assertEquals("2.0", templateRoleApp.getVersionName());
+      assertTrue(templateRoleApp.isDevelopment());
+      assertNull(templateRoleApp.getBundle());
+    }
+  }
+
+  /**
+   * Tests that the rows of clients that are not readable are skipped.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testReadSkipsOtherClients() throws Exception {
+    Path file = writeSnapshot();
+
+    Map<String, List<ResolvedRoleApp>> roleApps = CatalogSnapshot.open(file, INSTANCE_ID).read(
+        Collections.singletonList("templateRoleId"), Collections.singleton("clientId"), Collections.singleton("0"));
+
+    assertTrue(roleApps.isEmpty());
+  }
+
+  /**
+   * Tests that a missing snapshot or one with another format is not served.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testInvalidSnapshotIsIgnored() throws Exception {
+    Path file = folder.newFile("catalog.snapshot").toPath();
+
+    assertNull(CatalogSnapshot.open(folder.getRoot().toPath().resolve("missing.snapshot"), INSTANCE_ID));
+    Files.write(file, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+    assertNull(CatalogSnapshot.open(file, INSTANCE_ID));
+  }
+
+  /**
+   * Tests that a snapshot written by an instance with another database is not
+   * served.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testSnapshotOfAnotherInstanceIsIgnored() throws Exception {
+    Path file = writeSnapshot();
+
+    assertNull(CatalogSnapshot.open(file, "jdbc:postgresql://otherhost:5432/otherdb/etendo"));
+  }
+
+  /**
+   * Tests that a snapshot that is not started serves nothing.
+   */
+  @Test
+  public void testNotStartedSnapshotIsNotServed() {
+    CatalogSnapshot snapshot = new CatalogSnapshot(folder.getRoot().toPath().resolve("catalog.snapshot"), INSTANCE_ID,
+        0);
+
+    assertFalse(snapshot.isServing());
+    assertNull(snapshot.read(Collections.singletonList("roleId"), Collections.singletonList("clientId"),
+        Collections.singletonList("0")));
+  }
+}
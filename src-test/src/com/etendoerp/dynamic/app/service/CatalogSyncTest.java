@@ -0,0 +1,161 @@
+package com.etendoerp.dynamic.app.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.mockito.quality.Strictness;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.model.ad.access.Role;
+
+/**
+ * Unit tests for the {@link CatalogSync} class.
+ *
+ * These tests verify which apps are sent as changed or removed and when the
+ * whole list is sent instead.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CatalogSyncTest {
+
+  @Mock
+  private RoleAppResolver resolver;
+
+  @Mock
+  private Role role;
+
+  @Mock
+  private OBDal obDal;
+
+  @Mock
+  private Connection connection;
+
+  @Mock
+  private CatalogChangeStore.Changes changes;
+
+  private MockedStatic<OBDal> obDalMock;
+  private MockedStatic<CatalogChangeStore> changeStore;
+  private CatalogSync catalogSync;
+
+  /**
+   * Mocks the DAL connection and the change store before each test.
+   */
+  @Before
+  public void setUp() {
+    obDalMock = Mockito.mockStatic(OBDal.class, withSettings().strictness(Strictness.LENIENT));
+    obDalMock.when(OBDal::getInstance).thenReturn(obDal);
+    lenient().when(obDal.getConnection(false)).thenReturn(connection);
+    changeStore = Mockito.mockStatic(CatalogChangeStore.class, withSettings().strictness(Strictness.LENIENT));
+    changeStore.when(() -> CatalogChangeStore.getChanges(any(Connection.class), anyList(), any(Timestamp.class)))
+        .thenReturn(changes);
+    lenient().when(resolver.getEffectiveRoles(role)).thenReturn(Collections.singletonList("roleId"));
+    catalogSync = new CatalogSync(resolver);
+  }
+
+  /**
+   * Releases the static mocks.
+   */
+  @After
+  public void tearDown() {
+    changeStore.close();
+    obDalMock.close();
+  }
+
+  private static ResolvedRoleApp roleApp(String appId) {
+    return new ResolvedRoleApp("id-" + appId, appId, "App", "versionId", "1.0", false, false, "/path/dist.js");
+  }
+
+  /**
+   * Tests that nothing is sent, and nothing else is read, when nothing
+   * changed.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testNoChanges() throws Exception {
+    when(changes.getAppIds()).thenReturn(Collections.emptySet());
+
+    JSONObject sync = catalogSync.getChanges(role, System.currentTimeMillis());
+
+    assertFalse(sync.getBoolean("full"));
+    assertEquals(0, sync.getJSONArray("changed").length());
+    assertEquals(0, sync.getJSONArray("removed").length());
+    assertTrue(sync.getLong("timestamp") < System.currentTimeMillis());
+    verify(resolver, never()).loadRoleApps(role);
+  }
+
+  /**
+   * Tests that changed apps still available are sent and the rest are
+   * reported as removed.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testChangedAndRemovedApps() throws Exception {
+    when(changes.getAppIds()).thenReturn(new HashSet<>(Arrays.asList("app1", "app2")));
+    when(resolver.loadRoleApps(role)).thenReturn(Arrays.asList(roleApp("app1"), roleApp("app3")));
+
+    JSONObject sync = catalogSync.getChanges(role, System.currentTimeMillis());
+
+    assertFalse(sync.getBoolean("full"));
+    assertEquals(1, sync.getJSONArray("changed").length());
+    assertEquals("app1", sync.getJSONArray("changed").getJSONObject(0).getString("etdappApp"));
+    assertEquals("app2", sync.getJSONArray("removed").getString(0));
+  }
+
+  /**
+   * Tests that the whole list is sent when the inheritance of the role
+   * changed.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testInheritanceChangeSendsFullList() throws Exception {
+    when(changes.isInheritanceChanged()).thenReturn(true);
+    when(resolver.getRoleApps(role)).thenReturn(Arrays.asList(roleApp("app1"), roleApp("app2")));
+
+    JSONObject sync = catalogSync.getChanges(role, System.currentTimeMillis());
+
+    assertTrue(sync.getBoolean("full"));
+    assertEquals(2, sync.getJSONArray("changed").length());
+  }
+
+  /**
+   * Tests that a time older than the tombstones kept gets the whole list
+   * without looking for changes.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testOldSinceSendsFullList() throws Exception {
+    when(resolver.getRoleApps(role)).thenReturn(Collections.singletonList(roleApp("app1")));
+
+    JSONObject sync = catalogSync.getChanges(role, 0);
+
+    assertTrue(sync.getBoolean("full"));
+    assertEquals(1, sync.getJSONArray("changed").length());
+    changeStore.verify(() -> CatalogChangeStore.getChanges(any(Connection.class), anyList(), any(Timestamp.class)),
+        never());
+  }
+}
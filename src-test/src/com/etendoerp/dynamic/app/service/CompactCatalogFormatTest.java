@@ -0,0 +1,78 @@
+package com.etendoerp.dynamic.app.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link CompactCatalogFormat} class.
+ *
+ * These tests verify how the binary format is negotiated and how the apps are
+ * written in it.
+ */
+public class CompactCatalogFormatTest {
+
+  private static final ResolvedRoleApp ROLE_APP = new ResolvedRoleApp("ra", "a", "n", "v", "1", true, false, "p",
+      new BundleMetadata("s", 10, 5));
+
+  /**
+   * Tests that the binary format with the highest quality is chosen, and that
+   * JSON is kept when the client prefers it or accepts no binary format.
+   */
+  @Test
+  public void testNegotiate() {
+    assertEquals(CompactCatalogFormat.CBOR, CompactCatalogFormat.negotiate("application/cbor"));
+    assertEquals(CompactCatalogFormat.MESSAGE_PACK,
+        CompactCatalogFormat.negotiate("application/cbor;q=0.5, application/x-msgpack"));
+    assertEquals(CompactCatalogFormat.CBOR,
+        CompactCatalogFormat.negotiate("application/json;q=0.9, application/cbor"));
+    assertNull(CompactCatalogFormat.negotiate("application/json, application/cbor;q=0.5"));
+    assertNull(CompactCatalogFormat.negotiate("application/cbor;q=0"));
+    assertNull(CompactCatalogFormat.negotiate("*/*"));
+    assertNull(CompactCatalogFormat.negotiate(null));
+  }
+
+  /**
+   * Tests that the names of the values are written once, followed by the
+   * values of each app in their order.
+   */
+  @Test
+  public void testWriteApps() {
+    BinaryEncoder expected = BinaryEncoder.messagePack().writeMapHeader(2).writeString("fields")
+        .writeArrayHeader(ResolvedRoleApp.FIELDS.size());
+    for (String field : ResolvedRoleApp.FIELDS) {
+      expected.writeString(field);
+    }
+    expected.writeString("apps").writeArrayHeader(1).writeArrayHeader(ResolvedRoleApp.FIELDS.size())
+        .writeString("ra").writeString("a").writeString("n").writeString("v").writeString("1")
+        .writeBoolean(true).writeNull().writeString("p").writeString("s").writeLong(10).writeLong(5)
+        .writeNull();
+
+    byte[] written = CompactCatalogFormat.MESSAGE_PACK.write(Collections.singletonList(ROLE_APP), null);
+
+    assertArrayEquals(expected.toByteArray(), written);
+  }
+
+  /**
+   * Tests that only the ids of an installed version are written, as in the
+   * JSON response.
+   */
+  @Test
+  public void testWriteInstalledApp() {
+    BinaryEncoder expected = BinaryEncoder.cbor().writeArrayHeader(ResolvedRoleApp.FIELDS.size())
+        .writeString("ra").writeString("a").writeNull().writeString("v");
+    for (int i = 0; i < 7; i++) {
+      expected.writeNull();
+    }
+    expected.writeBoolean(true);
+    BinaryEncoder written = BinaryEncoder.cbor();
+
+    ROLE_APP.writeTo(written, Collections.singleton("v"));
+
+    assertArrayEquals(expected.toByteArray(), written.toByteArray());
+  }
+}
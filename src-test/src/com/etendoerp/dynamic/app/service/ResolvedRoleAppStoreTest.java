@@ -0,0 +1,186 @@
+package com.etendoerp.dynamic.app.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.endsWith;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.dal.core.DalContextListener;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+/**
+ * Unit tests for the {@link ResolvedRoleAppStore} class.
+ *
+ * These tests verify how the materialized role apps are read and how their
+ * rows are rebuilt by role and by app.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ResolvedRoleAppStoreTest {
+
+  private static final String ROLE_ID = "roleId";
+  private static final List<String> ROLE_IDS = Arrays.asList(ROLE_ID, "templateRoleId");
+  private static final List<String> CLIENT_IDS = Collections.singletonList("clientId");
+  private static final List<String> ORG_IDS = Arrays.asList("0", "orgId");
+
+  @Mock
+  private Connection connection;
+
+  @Mock
+  private PreparedStatement select;
+
+  @Mock
+  private PreparedStatement delete;
+
+  @Mock
+  private PreparedStatement insert;
+
+  @Mock
+  private ResultSet resultSet;
+
+  @Mock
+  private ServletContext servletContext;
+
+  /**
+   * Tests that the rows of the roles are mapped, grouped by role, with their
+   * bundle metadata, and their base design path is resolved.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testReadResolvesRows() throws Exception {
+    String filter = "AD_ROLE_ID IN (?, ?) AND AD_CLIENT_ID IN (?) AND AD_ORG_ID IN (?, ?) ORDER BY ETDAPP_ROLE_APP_ID";
+    when(connection.prepareStatement(endsWith(filter))).thenReturn(select);
+    when(select.executeQuery()).thenReturn(resultSet);
+    when(resultSet.next()).thenReturn(true, false);
+    when(resultSet.getString("ETDAPP_ROLE_APP_ID")).thenReturn("roleAppId");
+    when(resultSet.getString("AD_ROLE_ID")).thenReturn("templateRoleId");
+    when(resultSet.getString("ETDAPP_APP_ID")).thenReturn("appId");
+    when(resultSet.getString("APP_NAME")).thenReturn("TestApp");
+    when(resultSet.getString("ETDAPP_APP_VERSION_ID")).thenReturn("versionId");
+    when(resultSet.getString("VERSION_NAME")).thenReturn("1.0");
+    when(resultSet.getString("SHARE_ENABLED")).thenReturn("Y");
+    when(resultSet.getString("ISDEVELOPMENT")).thenReturn("N");
+    when(resultSet.getString("PATH")).thenReturn("@basedesign@/testDir/test.js");
+    when(resultSet.getString("BUNDLE_SHA256")).thenReturn("abc123");
+    when(resultSet.getLong("BUNDLE_SIZE")).thenReturn(1000L);
+    when(resultSet.getLong("BUNDLE_GZIP_SIZE")).thenReturn(300L);
+    when(servletContext.getRealPath("")).thenReturn("/test/path/");
+
+    try (MockedStatic<DalContextListener> dalContext = Mockito.mockStatic(DalContextListener.class)) {
+      dalContext.when(DalContextListener::getServletContext).thenReturn(servletContext);
+
+      Map<String, List<ResolvedRoleApp>> roleApps = ResolvedRoleAppStore.read(connection, ROLE_IDS, CLIENT_IDS,
+          ORG_IDS);
+
+      assertEquals(1, roleApps.size());
+      ResolvedRoleApp roleApp = roleApps.get("templateRoleId").get(0);
+      assertEquals("versionId", roleApp.getVersionId());
+      assertTrue(roleApp.isShareEnabled());
+      assertFalse(roleApp.isDevelopment());
+      assertEquals("/test/path/src-loc/design/testDir/test.js", roleApp.getPath());
+      assertEquals("abc123", roleApp.getBundle().getSha256());
+      assertEquals(300, roleApp.getBundle().getGzipSize());
+      verify(select).setString(1, ROLE_ID);
+      verify(select).setString(2, "templateRoleId");
+      verify(select).setString(3, "clientId");
+      verify(select).setString(4, "0");
+      verify(select).setString(5, "orgId");
+    }
+  }
+
+  /**
+   * Tests that an app without version nor default version fails as the DAL
+   * resolution does.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testReadWithoutDefaultVersionFails() throws Exception {
+    when(connection.prepareStatement(startsWith("SELECT"))).thenReturn(select);
+    when(select.executeQuery()).thenReturn(resultSet);
+    when(resultSet.next()).thenReturn(true);
+    when(resultSet.getString("ETDAPP_APP_VERSION_ID")).thenReturn(null);
+    when(resultSet.getString("APP_NAME")).thenReturn("TestApp");
+
+    try (MockedStatic<OBMessageUtils> messageUtils = Mockito.mockStatic(OBMessageUtils.class)) {
+      messageUtils.when(() -> OBMessageUtils.messageBD(anyString())).thenReturn("No default version for %s");
+
+      OBException exception = assertThrows(OBException.class,
+          () -> ResolvedRoleAppStore.read(connection, ROLE_IDS, CLIENT_IDS, ORG_IDS));
+
+      assertEquals("No default version for TestApp", exception.getMessage());
+    }
+  }
+
+  /**
+   * Tests that refreshing roles deletes and inserts their rows with the same
+   * parameters.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testRefreshRolesRebuildsTheirRows() throws Exception {
+    when(connection.prepareStatement("DELETE FROM ETDAPP_ROLE_APP_RESOLVED WHERE AD_ROLE_ID IN (?, ?)"))
+        .thenReturn(delete);
+    when(connection.prepareStatement(endsWith("AND RA.AD_ROLE_ID IN (?, ?)"))).thenReturn(insert);
+
+    ResolvedRoleAppStore.refreshRoles(connection, Arrays.asList("role1", "role2"));
+
+    InOrder order = inOrder(delete, insert);
+    order.verify(delete).executeUpdate();
+    order.verify(insert).executeUpdate();
+    verify(insert).setString(1, "role1");
+    verify(insert).setString(2, "role2");
+    verify(delete).setString(2, "role2");
+  }
+
+  /**
+   * Tests that nothing is executed when there is nothing to refresh.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testRefreshWithoutIdsDoesNothing() throws Exception {
+    ResolvedRoleAppStore.refreshApps(connection, Collections.emptyList());
+
+    verify(connection, never()).prepareStatement(anyString());
+  }
+
+  /**
+   * Tests that long id lists are split in several IN lists and that an empty
+   * list matches nothing.
+   */
+  @Test
+  public void testInClauseSplitsLongLists() {
+    String clause = ResolvedRoleAppStore.inClause("AD_ORG_ID", 1001);
+
+    assertTrue(clause.startsWith("(AD_ORG_ID IN (?"));
+    assertTrue(clause.endsWith(" OR AD_ORG_ID IN (?))"));
+    assertEquals("1 = 0", ResolvedRoleAppStore.inClause("AD_ORG_ID", 0));
+  }
+}
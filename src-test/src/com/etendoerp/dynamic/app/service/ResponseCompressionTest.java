@@ -0,0 +1,76 @@
+package com.etendoerp.dynamic.app.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link ResponseCompression} class.
+ *
+ * These tests verify how the encoding is negotiated and how the responses
+ * are compressed.
+ */
+public class ResponseCompressionTest {
+
+  private static final byte[] BODY = "[{\"etdappAppName\":\"TestApp\"},{\"etdappAppName\":\"OtherApp\"}]"
+      .getBytes(StandardCharsets.UTF_8);
+
+  private static byte[] decompress(InputStream input) throws Exception {
+    try (InputStream decompressed = input) {
+      return decompressed.readAllBytes();
+    }
+  }
+
+  /**
+   * Tests that the accepted encoding with the highest quality is chosen,
+   * preferring gzip, and that unsupported or refused encodings are ignored.
+   */
+  @Test
+  public void testNegotiate() {
+    assertEquals("gzip", ResponseCompression.negotiate("gzip, deflate, br"));
+    assertEquals("gzip", ResponseCompression.negotiate("deflate, gzip"));
+    assertEquals("deflate", ResponseCompression.negotiate("br, gzip;q=0.5, deflate"));
+    assertEquals("gzip", ResponseCompression.negotiate("x-gzip"));
+    assertEquals("gzip", ResponseCompression.negotiate("*;q=0.1"));
+    assertNull(ResponseCompression.negotiate("gzip;q=0, br"));
+    assertNull(ResponseCompression.negotiate("identity"));
+    assertNull(ResponseCompression.negotiate(null));
+  }
+
+  /**
+   * Tests that the compressed bodies can be decompressed with their encoding.
+   *
+   * @throws Exception if test execution fails
+   */
+  @Test
+  public void testCompress() throws Exception {
+    ResponseCompression compression = new ResponseCompression(0);
+
+    byte[] gzip = compression.compress(BODY, ResponseCompression.GZIP);
+    byte[] deflate = compression.compress(BODY, ResponseCompression.DEFLATE);
+
+    assertArrayEquals(BODY, decompress(new GZIPInputStream(new ByteArrayInputStream(gzip))));
+    assertArrayEquals(BODY, decompress(new InflaterInputStream(new ByteArrayInputStream(deflate))));
+  }
+
+  /**
+   * Tests that bodies smaller than the threshold are not compressed.
+   */
+  @Test
+  public void testShouldCompress() {
+    ResponseCompression compression = new ResponseCompression(BODY.length);
+
+    assertTrue(compression.shouldCompress(BODY));
+    assertFalse(compression.shouldCompress("[]".getBytes(StandardCharsets.UTF_8)));
+  }
+}
@@ -0,0 +1,43 @@
+package com.etendoerp.dynamic.app.modulescript;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+import org.openbravo.database.ConnectionProvider;
+import org.openbravo.modulescript.ModuleScript;
+import org.openbravo.modulescript.ModuleScriptExecutionLimits;
+import org.openbravo.modulescript.OpenbravoVersion;
+
+/**
+ * Populates ETDAPP_ROLE_APP_RESOLVED when the module is installed or updated from a version without it. Afterwards
+ * {@code ResolvedRoleAppStore} keeps it in sync.
+ */
+public class RebuildResolvedRoleApps extends ModuleScript {
+  private static final String MODULE_ID = "08E35A0910A74BB3AC0D9B1F3A2C51D3";
+
+  @Override
+  public void execute() {
+    try {
+      ConnectionProvider cp = getConnectionProvider();
+      Connection connection = cp.getTransactionConnection();
+      try {
+        try (PreparedStatement delete = connection.prepareStatement(ResolvedRoleAppSql.DELETE_SQL);
+            PreparedStatement insert = connection.prepareStatement(ResolvedRoleAppSql.INSERT_SQL)) {
+          delete.executeUpdate();
+          insert.executeUpdate();
+        }
+        cp.releaseCommitConnection(connection);
+      } catch (Exception e) {
+        cp.releaseRollbackConnection(connection);
+        throw e;
+      }
+    } catch (Exception e) {
+      handleError(e);
+    }
+  }
+
+  @Override
+  protected ModuleScriptExecutionLimits getModuleScriptExecutionLimits() {
+    return new ModuleScriptExecutionLimits(MODULE_ID, null, new OpenbravoVersion(3, 0, 0));
+  }
+}
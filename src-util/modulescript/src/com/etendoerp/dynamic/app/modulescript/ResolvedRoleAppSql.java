@@ -0,0 +1,29 @@
+package com.etendoerp.dynamic.app.modulescript;
+
+/**
+ * Statements that rebuild ETDAPP_ROLE_APP_RESOLVED, shared by the module script that populates it and by
+ * {@code ResolvedRoleAppStore}, which keeps it in sync at runtime.
+ */
+public final class ResolvedRoleAppSql {
+  public static final String DELETE_SQL = "DELETE FROM ETDAPP_ROLE_APP_RESOLVED";
+  /**
+   * Copies the active apps of each role with their effective version. Conditions can be appended with
+   * {@code AND}.
+   */
+  public static final String INSERT_SQL = "INSERT INTO ETDAPP_ROLE_APP_RESOLVED (ETDAPP_ROLE_APP_ID, AD_CLIENT_ID,"
+      + " AD_ORG_ID, ISACTIVE, CREATED, CREATEDBY, UPDATED, UPDATEDBY, AD_ROLE_ID, ETDAPP_APP_ID, APP_NAME,"
+      + " ETDAPP_APP_VERSION_ID, VERSION_NAME, SHARE_ENABLED, ISDEVELOPMENT, PATH, BUNDLE_SHA256, BUNDLE_SIZE,"
+      + " BUNDLE_GZIP_SIZE)"
+      + " SELECT RA.ETDAPP_ROLE_APP_ID, RA.AD_CLIENT_ID, RA.AD_ORG_ID, 'Y', CURRENT_TIMESTAMP, '0',"
+      + " CURRENT_TIMESTAMP, '0', RA.AD_ROLE_ID, A.ETDAPP_APP_ID, A.NAME, V.ETDAPP_APP_VERSION_ID, V.NAME,"
+      + " COALESCE(V.SHARE_ENABLED, 'N'), COALESCE(V.ISDEVELOPMENT, 'N'), A.DIRLOCATION || V.FILENAME,"
+      + " V.BUNDLE_SHA256, V.BUNDLE_SIZE, V.BUNDLE_GZIP_SIZE"
+      + " FROM ETDAPP_ROLE_APP RA JOIN ETDAPP_APP A ON A.ETDAPP_APP_ID = RA.ETDAPP_APP_ID"
+      + " LEFT JOIN ETDAPP_APP_VERSION V ON V.ETDAPP_APP_VERSION_ID = COALESCE(RA.ETDAPP_APP_VERSION_ID,"
+      + " (SELECT MIN(DV.ETDAPP_APP_VERSION_ID) FROM ETDAPP_APP_VERSION DV"
+      + " WHERE DV.ETDAPP_APP_ID = A.ETDAPP_APP_ID AND DV.ISDEFAULT = 'Y' AND DV.ISACTIVE = 'Y'))"
+      + " WHERE RA.ISACTIVE = 'Y' AND A.ISACTIVE = 'Y' AND (RA.ETDAPP_APP_VERSION_ID IS NULL OR V.ISACTIVE = 'Y')";
+
+  private ResolvedRoleAppSql() {
+  }
+}
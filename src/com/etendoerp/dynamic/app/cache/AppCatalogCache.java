@@ -0,0 +1,256 @@
+package com.etendoerp.dynamic.app.cache;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openbravo.base.exception.OBException;
+
+import com.etendoerp.dynamic.app.service.ResolvedRoleApp;
+import com.etendoerp.dynamic.app.util.DynamicAppProperties;
+
+/**
+ * Cache of the resolved app list of each role.
+ * <p>
+ * Misses are coalesced: when several requests miss the same role at the same time only the first one runs the
+ * loader, the others wait for its result. Entries expire after {@code etdapp.catalog.ttl} seconds so nodes of a
+ * cluster that did not see a change converge, and the cache never holds more than
+ * {@code etdapp.catalog.maxRoles} roles, a limit that can be changed at runtime.
+ * <p>
+ * The responses written from the app list of a role are kept in its entry, so they are forgotten with it.
+ */
+public class AppCatalogCache {
+  private static final long DEFAULT_TTL_SECONDS = 300;
+  private static final int DEFAULT_MAX_ROLES = 1000;
+
+  private static AppCatalogCache instance;
+
+  private final Map<String, CacheEntry> entries = new ConcurrentHashMap<>();
+  private final Map<String, CompletableFuture<List<ResolvedRoleApp>>> inFlight = new ConcurrentHashMap<>();
+  // Orders the loads and the invalidations, each invalidation is recorded with the generation it was made at
+  private final AtomicLong generation = new AtomicLong();
+  private final Map<String, Long> roleInvalidations = new ConcurrentHashMap<>();
+  private final Map<String, Long> appInvalidations = new ConcurrentHashMap<>();
+  private volatile long allInvalidation;
+  private final AtomicInteger loading = new AtomicInteger();
+  private final CacheStatistics statistics = new CacheStatistics();
+  private final long ttlNanos;
+  private volatile int maxRoles;
+
+  public static synchronized AppCatalogCache getInstance() {
+    if (instance == null) {
+      instance = new AppCatalogCache(DynamicAppProperties.getLong("etdapp.catalog.ttl", DEFAULT_TTL_SECONDS),
+          (int) DynamicAppProperties.getLong("etdapp.catalog.maxRoles", DEFAULT_MAX_ROLES));
+    }
+    return instance;
+  }
+
+  public AppCatalogCache(long ttlSeconds, int maxRoles) {
+    this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    this.maxRoles = maxRoles;
+  }
+
+  /**
+   * Returns the app list of the role, running the loader on a miss. Concurrent misses for the same role share a
+   * single execution of the loader.
+   */
+  public List<ResolvedRoleApp> get(String roleId, Callable<List<ResolvedRoleApp>> loader) throws Exception {
+    CacheEntry entry = entries.get(roleId);
+    if (entry != null && !entry.isExpired()) {
+      statistics.recordHit();
+      return entry.roleApps;
+    }
+    statistics.recordMiss();
+
+    CompletableFuture<List<ResolvedRoleApp>> load = new CompletableFuture<>();
+    CompletableFuture<List<ResolvedRoleApp>> running = inFlight.putIfAbsent(roleId, load);
+    if (running != null) {
+      return await(running);
+    }
+
+    loading.incrementAndGet();
+    long loadGeneration = generation.get();
+    long start = System.nanoTime();
+    try {
+      List<ResolvedRoleApp> roleApps = Collections.unmodifiableList(loader.call());
+      statistics.recordLoad(System.nanoTime() - start);
+      // A change of the role or of its apps notified while loading may not be visible to the loader, do not keep
+      // its result. Changes of other roles and apps do not affect it.
+      if (!isInvalidatedSince(roleId, roleApps, loadGeneration)) {
+        put(roleId, roleApps);
+      }
+      load.complete(roleApps);
+      return roleApps;
+    } catch (Exception | Error e) {
+      load.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(roleId, load);
+      if (loading.decrementAndGet() == 0) {
+        forgetInvalidations();
+      }
+    }
+  }
+
+  private boolean isInvalidatedSince(String roleId, List<ResolvedRoleApp> roleApps, long loadGeneration) {
+    if (allInvalidation > loadGeneration || roleInvalidations.getOrDefault(roleId, 0L) > loadGeneration) {
+      return true;
+    }
+    for (ResolvedRoleApp roleApp : roleApps) {
+      if (appInvalidations.getOrDefault(roleApp.getAppId(), 0L) > loadGeneration) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Forgets the invalidations no load in progress can be affected by. Loads started later only look at the
+   * invalidations made after the current generation.
+   */
+  private void forgetInvalidations() {
+    long current = generation.get();
+    if (loading.get() == 0) {
+      roleInvalidations.values().removeIf(invalidation -> invalidation <= current);
+      appInvalidations.values().removeIf(invalidation -> invalidation <= current);
+    }
+  }
+
+  /**
+   * Returns the response kept for the app list of the role, or null when none was kept or the role was loaded again
+   * since.
+   *
+   * @param roleApps
+   *     the app list the response is written from, as returned by {@link #get}
+   * @param variant
+   *     the format and encoding of the response
+   */
+  public byte[] getResponse(String roleId, List<ResolvedRoleApp> roleApps, String variant) {
+    CacheEntry entry = entries.get(roleId);
+    return entry != null && entry.roleApps == roleApps ? entry.responses.get(variant) : null;
+  }
+
+  /**
+   * Keeps the response written from the app list of the role, as long as that list is still the cached one.
+   */
+  public void putResponse(String roleId, List<ResolvedRoleApp> roleApps, String variant, byte[] response) {
+    CacheEntry entry = entries.get(roleId);
+    if (entry != null && entry.roleApps == roleApps) {
+      entry.responses.put(variant, response);
+    }
+  }
+
+  public void invalidateRole(String roleId) {
+    roleInvalidations.merge(roleId, generation.incrementAndGet(), Math::max);
+    entries.remove(roleId);
+    inFlight.remove(roleId);
+  }
+
+  /**
+   * Forgets the roles whose app list includes the app.
+   *
+   * @return the versions of the app used by the forgotten roles
+   */
+  public Set<String> invalidateApp(String appId) {
+    appInvalidations.merge(appId, generation.incrementAndGet(), Math::max);
+    Set<String> versionIds = new HashSet<>();
+    entries.forEach((roleId, entry) -> {
+      for (ResolvedRoleApp roleApp : entry.roleApps) {
+        if (appId.equals(roleApp.getAppId())) {
+          versionIds.add(roleApp.getVersionId());
+          entries.remove(roleId, entry);
+        }
+      }
+    });
+    inFlight.clear();
+    return versionIds;
+  }
+
+  public void invalidateAll() {
+    allInvalidation = generation.incrementAndGet();
+    entries.clear();
+    inFlight.clear();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public int getMaxRoles() {
+    return maxRoles;
+  }
+
+  /**
+   * Changes the number of roles kept, evicting the entries closest to expire when the cache is bigger.
+   */
+  public void setMaxRoles(int maxRoles) {
+    if (maxRoles < 1) {
+      throw new IllegalArgumentException("The cache must keep at least one role");
+    }
+    this.maxRoles = maxRoles;
+    while (entries.size() > maxRoles) {
+      evictOldest();
+    }
+  }
+
+  public CacheStatistics getStatistics() {
+    return statistics;
+  }
+
+  private void put(String roleId, List<ResolvedRoleApp> roleApps) {
+    entries.put(roleId, new CacheEntry(roleApps, System.nanoTime() + ttlNanos));
+    if (entries.size() > maxRoles) {
+      evictOldest();
+    }
+  }
+
+  private void evictOldest() {
+    entries.entrySet()
+        .stream()
+        .min((e1, e2) -> Long.compare(e1.getValue().expiresAt, e2.getValue().expiresAt))
+        .ifPresent(eldest -> {
+          if (entries.remove(eldest.getKey(), eldest.getValue())) {
+            statistics.recordEviction();
+          }
+        });
+  }
+
+  private static List<ResolvedRoleApp> await(CompletableFuture<List<ResolvedRoleApp>> running) throws Exception {
+    try {
+      return running.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OBException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      throw new OBException(cause);
+    }
+  }
+
+  private static class CacheEntry {
+    private final List<ResolvedRoleApp> roleApps;
+    private final Map<String, byte[]> responses = new ConcurrentHashMap<>();
+    private final long expiresAt;
+
+    private CacheEntry(List<ResolvedRoleApp> roleApps, long expiresAt) {
+      this.roleApps = roleApps;
+      this.expiresAt = expiresAt;
+    }
+
+    private boolean isExpired() {
+      return System.nanoTime() - expiresAt > 0;
+    }
+  }
+}
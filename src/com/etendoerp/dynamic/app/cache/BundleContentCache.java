@@ -0,0 +1,197 @@
+package com.etendoerp.dynamic.app.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Hex;
+import org.openbravo.base.exception.OBException;
+
+import com.etendoerp.dynamic.app.util.DynamicAppProperties;
+
+/**
+ * Off-heap cache of the bundle files of the app versions, so the most downloaded bundles are served from memory
+ * instead of being read from disk on every request.
+ * <p>
+ * Contents are kept in direct buffers, keyed by version and validated against the size and modification time of the
+ * file on each access: a rebuilt bundle is read again and gets a new hash. The least recently used bundles are
+ * evicted once the cache holds more than {@code etdapp.bundleCache.maxBytes} bytes, and files bigger than
+ * {@code etdapp.bundleCache.maxEntryBytes} are never cached. The size of the cache can be changed at runtime.
+ */
+public class BundleContentCache {
+  private static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+  private static final long DEFAULT_MAX_ENTRY_BYTES = 32L * 1024 * 1024;
+
+  private static BundleContentCache instance;
+
+  private final LinkedHashMap<String, Bundle> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final CacheStatistics statistics = new CacheStatistics();
+  private final long maxEntryBytes;
+  private long maxBytes;
+  private long usedBytes;
+
+  public static synchronized BundleContentCache getInstance() {
+    if (instance == null) {
+      instance = new BundleContentCache(DynamicAppProperties.getLong("etdapp.bundleCache.maxBytes", DEFAULT_MAX_BYTES),
+          DynamicAppProperties.getLong("etdapp.bundleCache.maxEntryBytes", DEFAULT_MAX_ENTRY_BYTES));
+    }
+    return instance;
+  }
+
+  public BundleContentCache(long maxBytes, long maxEntryBytes) {
+    this.maxBytes = maxBytes;
+    // A bundle is read into a single buffer, which cannot hold more than Integer.MAX_VALUE bytes
+    this.maxEntryBytes = Math.min(maxEntryBytes, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns the bundle of the version, reading the file when it is not cached or changed since it was cached.
+   *
+   * @return the bundle, or null when the file is too big to be cached and has to be streamed from disk
+   */
+  public Bundle get(String versionId, Path file) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+    long lastModified = attributes.lastModifiedTime().toMillis();
+    synchronized (this) {
+      Bundle cached = entries.get(versionId);
+      if (cached != null && cached.size == attributes.size() && cached.lastModified == lastModified) {
+        statistics.recordHit();
+        return cached;
+      }
+    }
+    statistics.recordMiss();
+    if (attributes.size() > getMaxEntryBytes()) {
+      invalidate(versionId);
+      return null;
+    }
+
+    long start = System.nanoTime();
+    Bundle loaded = load(file, lastModified);
+    statistics.recordLoad(System.nanoTime() - start);
+    synchronized (this) {
+      Bundle previous = entries.put(versionId, loaded);
+      if (previous != null) {
+        usedBytes -= previous.size;
+      }
+      usedBytes += loaded.size;
+      evict();
+    }
+    return loaded;
+  }
+
+  public synchronized void invalidate(String versionId) {
+    Bundle removed = entries.remove(versionId);
+    if (removed != null) {
+      usedBytes -= removed.size;
+    }
+  }
+
+  public synchronized void invalidateAll() {
+    entries.clear();
+    usedBytes = 0;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long getUsedBytes() {
+    return usedBytes;
+  }
+
+  public synchronized long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Returns the size of the biggest file that is cached, never more than the size of the cache.
+   */
+  public synchronized long getMaxEntryBytes() {
+    return Math.min(maxBytes, maxEntryBytes);
+  }
+
+  /**
+   * Changes the size of the cache, evicting the least recently used bundles when it is smaller than the bytes in
+   * use.
+   */
+  public synchronized void setMaxBytes(long maxBytes) {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("The size of the cache cannot be negative");
+    }
+    this.maxBytes = maxBytes;
+    evict();
+  }
+
+  public CacheStatistics getStatistics() {
+    return statistics;
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<String, Bundle>> eldest = entries.entrySet().iterator();
+    while (usedBytes > maxBytes && eldest.hasNext()) {
+      usedBytes -= eldest.next().getValue().size;
+      eldest.remove();
+      statistics.recordEviction();
+    }
+  }
+
+  private static Bundle load(Path file, long lastModified) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer content = ByteBuffer.allocateDirect((int) channel.size());
+      while (content.hasRemaining() && channel.read(content) >= 0) {
+        // Keep reading until the buffer is full or the file ends
+      }
+      content.flip();
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(content.duplicate());
+      return new Bundle(content.asReadOnlyBuffer(), lastModified, Hex.encodeHexString(digest.digest()));
+    } catch (NoSuchAlgorithmException e) {
+      throw new OBException(e);
+    }
+  }
+
+  /**
+   * Cached contents of a bundle file.
+   */
+  public static class Bundle {
+    private final ByteBuffer content;
+    private final long size;
+    private final long lastModified;
+    private final String sha256;
+
+    private Bundle(ByteBuffer content, long lastModified, String sha256) {
+      this.content = content;
+      this.size = content.remaining();
+      this.lastModified = lastModified;
+      this.sha256 = sha256;
+    }
+
+    /**
+     * Returns a read-only view of the contents, positioned at the start, that the caller can consume freely.
+     */
+    public ByteBuffer getContent() {
+      return content.duplicate();
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    public String getSha256() {
+      return sha256;
+    }
+  }
+}
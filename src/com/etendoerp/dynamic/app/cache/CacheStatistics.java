@@ -0,0 +1,66 @@
+package com.etendoerp.dynamic.app.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hit, miss, eviction and load time counters of a cache. They are updated without locking, so a snapshot taken
+ * while requests are served may be slightly inconsistent.
+ */
+public class CacheStatistics {
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder loadNanos = new LongAdder();
+
+  public void recordHit() {
+    hits.increment();
+  }
+
+  public void recordMiss() {
+    misses.increment();
+  }
+
+  public void recordEviction() {
+    evictions.increment();
+  }
+
+  public void recordLoad(long nanos) {
+    loads.increment();
+    loadNanos.add(nanos);
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  public long getLoadCount() {
+    return loads.sum();
+  }
+
+  public long getTotalLoadMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(loadNanos.sum());
+  }
+
+  public double getAverageLoadMillis() {
+    long count = loads.sum();
+    return count == 0 ? 0 : loadNanos.sum() / (count * 1_000_000d);
+  }
+
+  public void reset() {
+    hits.reset();
+    misses.reset();
+    evictions.reset();
+    loads.reset();
+    loadNanos.reset();
+  }
+}
@@ -0,0 +1,199 @@
+package com.etendoerp.dynamic.app.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.etendoerp.dynamic.app.util.DynamicAppProperties;
+
+/**
+ * Cache of the flattened inheritance of each role: the role followed by every role it inherits from, directly or
+ * through other roles.
+ * <p>
+ * Flattening a role keeps the flattening of every ancestor reached on the way and reuses the cached ones, so each
+ * role is only queried once. When the inheritance or the apps of a role change only the roles that include it are
+ * forgotten, the rest stay cached. Like the {@link AppCatalogCache}, it never holds more than
+ * {@code etdapp.catalog.maxRoles} roles.
+ */
+public class RoleInheritanceCache {
+  private static final int DEFAULT_MAX_ROLES = 1000;
+
+  private static RoleInheritanceCache instance;
+
+  private final Map<String, Flattening> flattened = new ConcurrentHashMap<>();
+  private final AtomicLong generation = new AtomicLong();
+  private final CacheStatistics statistics = new CacheStatistics();
+  private volatile int maxRoles;
+
+  public static synchronized RoleInheritanceCache getInstance() {
+    if (instance == null) {
+      instance = new RoleInheritanceCache(
+          (int) DynamicAppProperties.getLong("etdapp.catalog.maxRoles", DEFAULT_MAX_ROLES));
+    }
+    return instance;
+  }
+
+  public RoleInheritanceCache(int maxRoles) {
+    this.maxRoles = maxRoles;
+  }
+
+  /**
+   * Returns the role and the roles it inherits from, in inheritance order and without repetitions. The loader
+   * returns the roles a role inherits from directly, ordered by sequence number.
+   */
+  public List<String> getEffectiveRoles(String roleId, Function<String, List<String>> parentLoader) {
+    Flattening cached = flattened.get(roleId);
+    if (cached != null) {
+      statistics.recordHit();
+      return cached.roleIds;
+    }
+    statistics.recordMiss();
+    long loadGeneration = generation.get();
+    long start = System.nanoTime();
+    Map<String, List<String>> computed = new LinkedHashMap<>();
+    List<String> roleIds = flatten(roleId, parentLoader, computed, new HashSet<>(), new HashSet<>());
+    statistics.recordLoad(System.nanoTime() - start);
+    // An inheritance change notified while flattening may not be visible to the loader, do not keep the results
+    if (loadGeneration == generation.get()) {
+      computed.forEach(this::put);
+    }
+    return roleIds;
+  }
+
+  /**
+   * Returns the flattening of the role, reusing the ones cached or computed before. The flattenings computed are
+   * added to {@code computed}, except those left incomplete by an inheritance cycle.
+   *
+   * @param path
+   *     the roles being flattened, the role is one of their ancestors when it is among them
+   * @param incomplete
+   *     the roles whose flattening was cut by a cycle
+   * @return the flattening, or null when the role closes a cycle
+   */
+  private List<String> flatten(String roleId, Function<String, List<String>> parentLoader,
+      Map<String, List<String>> computed, Set<String> path, Set<String> incomplete) {
+    Flattening cached = flattened.get(roleId);
+    if (cached != null) {
+      return cached.roleIds;
+    }
+    List<String> roleIds = computed.get(roleId);
+    if (roleIds != null) {
+      return roleIds;
+    }
+    if (!path.add(roleId)) {
+      return null;
+    }
+    Set<String> effective = new LinkedHashSet<>();
+    effective.add(roleId);
+    boolean complete = true;
+    for (String parentId : parentLoader.apply(roleId)) {
+      List<String> parentRoleIds = flatten(parentId, parentLoader, computed, path, incomplete);
+      if (parentRoleIds != null) {
+        effective.addAll(parentRoleIds);
+      }
+      complete &= parentRoleIds != null && !incomplete.contains(parentId);
+    }
+    path.remove(roleId);
+    roleIds = Collections.unmodifiableList(new ArrayList<>(effective));
+    if (complete) {
+      computed.put(roleId, roleIds);
+    } else {
+      incomplete.add(roleId);
+    }
+    return roleIds;
+  }
+
+  /**
+   * Returns the cached roles that include the given one, the role itself always included.
+   */
+  public Set<String> getInheritingRoles(String roleId) {
+    Set<String> roleIds = new HashSet<>();
+    roleIds.add(roleId);
+    flattened.forEach((id, flattening) -> {
+      if (flattening.roleIds.contains(roleId)) {
+        roleIds.add(id);
+      }
+    });
+    return roleIds;
+  }
+
+  /**
+   * Forgets the flattening of the role and of every role that includes it.
+   *
+   * @return the forgotten roles, whose app lists must be resolved again
+   */
+  public Set<String> invalidateRole(String roleId) {
+    generation.incrementAndGet();
+    Set<String> roleIds = getInheritingRoles(roleId);
+    for (String id : roleIds) {
+      flattened.remove(id);
+    }
+    return roleIds;
+  }
+
+  public void invalidateAll() {
+    generation.incrementAndGet();
+    flattened.clear();
+  }
+
+  public int size() {
+    return flattened.size();
+  }
+
+  public int getMaxRoles() {
+    return maxRoles;
+  }
+
+  /**
+   * Changes the number of roles kept, evicting the oldest flattenings when the cache is bigger.
+   */
+  public void setMaxRoles(int maxRoles) {
+    if (maxRoles < 1) {
+      throw new IllegalArgumentException("The cache must keep at least one role");
+    }
+    this.maxRoles = maxRoles;
+    while (flattened.size() > maxRoles) {
+      evictOldest();
+    }
+  }
+
+  public CacheStatistics getStatistics() {
+    return statistics;
+  }
+
+  private void put(String roleId, List<String> roleIds) {
+    flattened.put(roleId, new Flattening(roleIds, System.nanoTime()));
+    if (flattened.size() > maxRoles) {
+      evictOldest();
+    }
+  }
+
+  private void evictOldest() {
+    flattened.entrySet()
+        .stream()
+        .min((e1, e2) -> Long.compare(e1.getValue().loadedAt, e2.getValue().loadedAt))
+        .ifPresent(eldest -> {
+          if (flattened.remove(eldest.getKey(), eldest.getValue())) {
+            statistics.recordEviction();
+          }
+        });
+  }
+
+  private static class Flattening {
+    private final List<String> roleIds;
+    private final long loadedAt;
+
+    private Flattening(List<String> roleIds, long loadedAt) {
+      this.roleIds = roleIds;
+      this.loadedAt = loadedAt;
+    }
+  }
+}
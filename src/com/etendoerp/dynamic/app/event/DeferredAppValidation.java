@@ -0,0 +1,183 @@
+package com.etendoerp.dynamic.app.event;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.transaction.Synchronization;
+
+import org.hibernate.criterion.ProjectionList;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.dal.service.OBCriteria;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+import com.etendoerp.dynamic.app.data.DynamicAppVersion;
+import com.etendoerp.dynamic.app.data.DynamicRoleApp;
+import com.etendoerp.dynamic.app.jfr.AppValidationEvent;
+import com.etendoerp.dynamic.app.util.DynamicAppProperties;
+
+/**
+ * Validates the role apps and versions saved in a transaction at once, right before it commits, when the changes
+ * have already been flushed. {@link ValidateAppConfigurationByRole} and {@link ValidateDefaultValueInAppVersion} use
+ * it instead of one query per saved record when {@code etdapp.validation.deferred} is {@code true}, which speeds up
+ * imports of many records.
+ * <p>
+ * Each check counts the active records of the touched apps with one grouped query per {@value #MAX_IN_LIST} apps. A
+ * record fails when the count of its group includes other records than itself.
+ */
+class DeferredAppValidation implements Synchronization {
+  private static final int MAX_IN_LIST = 1000;
+  private static final ThreadLocal<DeferredAppValidation> current = new ThreadLocal<>();
+
+  private final Map<String, Touched> roleApps = new LinkedHashMap<>();
+  private final Map<String, Touched> defaultVersions = new LinkedHashMap<>();
+
+  static boolean isEnabled() {
+    return "true".equalsIgnoreCase(DynamicAppProperties.getString("etdapp.validation.deferred", "false"));
+  }
+
+  /**
+   * Returns the validation of the current transaction, registering it on first use.
+   */
+  static DeferredAppValidation getCurrent() {
+    DeferredAppValidation validation = current.get();
+    if (validation == null) {
+      validation = new DeferredAppValidation();
+      OBDal.getInstance().getSession().getTransaction().registerSynchronization(validation);
+      current.set(validation);
+    }
+    return validation;
+  }
+
+  void addRoleApp(DynamicRoleApp roleApp) {
+    String appId = roleApp.getEtdappApp().getId();
+    roleApps.put(roleApp.getId(), new Touched(appId, appId + "/" + roleApp.getRole().getId(),
+        Boolean.TRUE.equals(roleApp.isActive())));
+  }
+
+  void addVersion(DynamicAppVersion appVersion) {
+    if (Boolean.TRUE.equals(appVersion.isDefault())) {
+      String appId = appVersion.getEtdappApp().getId();
+      defaultVersions.put(appVersion.getId(), new Touched(appId, appId, Boolean.TRUE.equals(appVersion.isActive())));
+    } else {
+      // It may have been saved as default before in this transaction
+      defaultVersions.remove(appVersion.getId());
+    }
+  }
+
+  @Override
+  public void beforeCompletion() {
+    current.remove();
+    validate();
+  }
+
+  @Override
+  public void afterCompletion(int status) {
+    current.remove();
+  }
+
+  /**
+   * @throws OBException
+   *     when an app is assigned twice to a role or has more than one default version
+   */
+  void validate() {
+    if (!roleApps.isEmpty()) {
+      AppValidationEvent validationEvent = AppValidationEvent.start("App configuration by role");
+      String failedId = findDuplicate(roleApps, countRoleApps(getAppIds(roleApps)));
+      validationEvent.finish(failedId, failedId == null);
+      if (failedId != null) {
+        throw new OBException(OBMessageUtils.messageBD("ETDAPP_ExistsAppForRole"));
+      }
+    }
+    if (!defaultVersions.isEmpty()) {
+      AppValidationEvent validationEvent = AppValidationEvent.start("Default value in app version");
+      String failedId = findDuplicate(defaultVersions, countDefaultVersions(getAppIds(defaultVersions)));
+      validationEvent.finish(failedId, failedId == null);
+      if (failedId != null) {
+        throw new OBException(OBMessageUtils.messageBD("ETDAPP_ExistsOtherRecordAsDefault"));
+      }
+    }
+  }
+
+  private static List<String> getAppIds(Map<String, Touched> records) {
+    Set<String> appIds = new LinkedHashSet<>();
+    for (Touched touched : records.values()) {
+      appIds.add(touched.appId);
+    }
+    return new ArrayList<>(appIds);
+  }
+
+  private static Map<String, Long> countRoleApps(List<String> appIds) {
+    Map<String, Long> counts = new HashMap<>();
+    for (int from = 0; from < appIds.size(); from += MAX_IN_LIST) {
+      OBCriteria<DynamicRoleApp> criteria = OBDal.getInstance().createCriteria(DynamicRoleApp.class);
+      criteria.add(Restrictions.in(DynamicRoleApp.PROPERTY_ETDAPPAPP + ".id", chunk(appIds, from)));
+      ProjectionList projections = Projections.projectionList()
+          .add(Projections.groupProperty(DynamicRoleApp.PROPERTY_ETDAPPAPP + ".id"))
+          .add(Projections.groupProperty(DynamicRoleApp.PROPERTY_ROLE + ".id"))
+          .add(Projections.rowCount());
+      criteria.setProjection(projections);
+      for (Object row : criteria.list()) {
+        Object[] values = (Object[]) row;
+        counts.put(values[0] + "/" + values[1], ((Number) values[2]).longValue());
+      }
+    }
+    return counts;
+  }
+
+  private static Map<String, Long> countDefaultVersions(List<String> appIds) {
+    Map<String, Long> counts = new HashMap<>();
+    for (int from = 0; from < appIds.size(); from += MAX_IN_LIST) {
+      OBCriteria<DynamicAppVersion> criteria = OBDal.getInstance().createCriteria(DynamicAppVersion.class);
+      criteria.add(Restrictions.in(DynamicAppVersion.PROPERTY_ETDAPPAPP + ".id", chunk(appIds, from)));
+      criteria.add(Restrictions.eq(DynamicAppVersion.PROPERTY_DEFAULT, true));
+      ProjectionList projections = Projections.projectionList()
+          .add(Projections.groupProperty(DynamicAppVersion.PROPERTY_ETDAPPAPP + ".id"))
+          .add(Projections.rowCount());
+      criteria.setProjection(projections);
+      for (Object row : criteria.list()) {
+        Object[] values = (Object[]) row;
+        counts.put((String) values[0], ((Number) values[1]).longValue());
+      }
+    }
+    return counts;
+  }
+
+  private static List<String> chunk(List<String> appIds, int from) {
+    return appIds.subList(from, Math.min(appIds.size(), from + MAX_IN_LIST));
+  }
+
+  /**
+   * Returns the first record whose group has other records, or null when there is none.
+   */
+  private static String findDuplicate(Map<String, Touched> records, Map<String, Long> counts) {
+    for (Map.Entry<String, Touched> entry : records.entrySet()) {
+      Touched touched = entry.getValue();
+      // Only active records are counted, as in the check of each record
+      long others = counts.getOrDefault(touched.group, 0L) - (touched.active ? 1 : 0);
+      if (others > 0) {
+        return entry.getKey();
+      }
+    }
+    return null;
+  }
+
+  private static class Touched {
+    private final String appId;
+    private final String group;
+    private final boolean active;
+
+    private Touched(String appId, String group, boolean active) {
+      this.appId = appId;
+      this.group = group;
+      this.active = active;
+    }
+  }
+}
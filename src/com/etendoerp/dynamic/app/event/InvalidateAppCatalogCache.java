@@ -0,0 +1,133 @@
+package com.etendoerp.dynamic.app.event;
+
+import java.util.Set;
+
+import javax.enterprise.event.Observes;
+import javax.transaction.Synchronization;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.base.model.Entity;
+import org.openbravo.base.model.ModelProvider;
+import org.openbravo.base.model.Property;
+import org.openbravo.client.kernel.event.EntityDeleteEvent;
+import org.openbravo.client.kernel.event.EntityNewEvent;
+import org.openbravo.client.kernel.event.EntityPersistenceEvent;
+import org.openbravo.client.kernel.event.EntityPersistenceEventObserver;
+import org.openbravo.client.kernel.event.EntityUpdateEvent;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.model.ad.access.Role;
+import org.openbravo.model.ad.access.RoleInheritance;
+
+import com.etendoerp.dynamic.app.cache.AppCatalogCache;
+import com.etendoerp.dynamic.app.cache.BundleContentCache;
+import com.etendoerp.dynamic.app.cache.RoleInheritanceCache;
+import com.etendoerp.dynamic.app.data.DynamicApp;
+import com.etendoerp.dynamic.app.data.DynamicAppVersion;
+import com.etendoerp.dynamic.app.data.DynamicRoleApp;
+
+/**
+ * Invalidates the cached app lists and bundles when apps, versions, role assignments or role inheritance change.
+ * Changes of a role also invalidate the roles that inherit from it. The invalidation is repeated once the
+ * transaction completes so a request that reloads the catalog before the commit is not kept.
+ */
+public class InvalidateAppCatalogCache extends EntityPersistenceEventObserver {
+  private static final Entity[] entities = {
+      ModelProvider.getInstance().getEntity(DynamicApp.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(DynamicAppVersion.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(DynamicRoleApp.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(RoleInheritance.ENTITY_NAME) };
+  private static final Logger logger = LogManager.getLogger();
+
+  @Override
+  protected Entity[] getObservedEntities() {
+    return entities;
+  }
+
+  public void onUpdate(@Observes EntityUpdateEvent event) {
+    if (!isValidEvent(event)) {
+      return;
+    }
+    invalidate(event);
+  }
+
+  public void onSave(@Observes EntityNewEvent event) {
+    if (!isValidEvent(event)) {
+      return;
+    }
+    invalidate(event);
+  }
+
+  public void onDelete(@Observes EntityDeleteEvent event) {
+    if (!isValidEvent(event)) {
+      return;
+    }
+    invalidate(event);
+  }
+
+  private void invalidate(EntityPersistenceEvent event) {
+    Runnable invalidation;
+    if (event.getTargetInstance() instanceof DynamicRoleApp) {
+      final String roleId = ((DynamicRoleApp) event.getTargetInstance()).getRole().getId();
+      final String previousRoleId = getPreviousRoleId(event, entities[2], DynamicRoleApp.PROPERTY_ROLE);
+      invalidation = () -> {
+        invalidateRoleApps(RoleInheritanceCache.getInstance().getInheritingRoles(roleId));
+        if (previousRoleId != null && !previousRoleId.equals(roleId)) {
+          invalidateRoleApps(RoleInheritanceCache.getInstance().getInheritingRoles(previousRoleId));
+        }
+      };
+    } else if (event.getTargetInstance() instanceof RoleInheritance) {
+      final String roleId = ((RoleInheritance) event.getTargetInstance()).getRole().getId();
+      final String previousRoleId = getPreviousRoleId(event, entities[3], RoleInheritance.PROPERTY_ROLE);
+      invalidation = () -> {
+        invalidateRoleApps(RoleInheritanceCache.getInstance().invalidateRole(roleId));
+        if (previousRoleId != null && !previousRoleId.equals(roleId)) {
+          invalidateRoleApps(RoleInheritanceCache.getInstance().invalidateRole(previousRoleId));
+        }
+      };
+    } else if (event.getTargetInstance() instanceof DynamicAppVersion) {
+      final String versionId = ((DynamicAppVersion) event.getTargetInstance()).getId();
+      invalidation = () -> {
+        AppCatalogCache.getInstance().invalidateAll();
+        BundleContentCache.getInstance().invalidate(versionId);
+      };
+    } else {
+      // Apps can be assigned to any role and their directory changes the path of every version
+      invalidation = () -> {
+        AppCatalogCache.getInstance().invalidateAll();
+        BundleContentCache.getInstance().invalidateAll();
+      };
+    }
+    invalidation.run();
+    try {
+      OBDal.getInstance().getSession().getTransaction().registerSynchronization(new Synchronization() {
+        @Override
+        public void beforeCompletion() {
+          // Nothing to do until the transaction is completed
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+          invalidation.run();
+        }
+      });
+    } catch (Exception e) {
+      logger.debug("Could not register the catalog invalidation after the transaction", e);
+    }
+  }
+
+  private static void invalidateRoleApps(Set<String> roleIds) {
+    for (String roleId : roleIds) {
+      AppCatalogCache.getInstance().invalidateRole(roleId);
+    }
+  }
+
+  private String getPreviousRoleId(EntityPersistenceEvent event, Entity entity, String propertyName) {
+    if (!(event instanceof EntityUpdateEvent)) {
+      return null;
+    }
+    Property roleProperty = entity.getProperty(propertyName);
+    Role previousRole = (Role) ((EntityUpdateEvent) event).getPreviousState(roleProperty);
+    return previousRole != null ? previousRole.getId() : null;
+  }
+}
@@ -0,0 +1,120 @@
+package com.etendoerp.dynamic.app.event;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.enterprise.event.Observes;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.openbravo.base.exception.OBException;
+import org.openbravo.base.model.Entity;
+import org.openbravo.base.model.ModelProvider;
+import org.openbravo.base.model.Property;
+import org.openbravo.client.kernel.event.EntityDeleteEvent;
+import org.openbravo.client.kernel.event.EntityNewEvent;
+import org.openbravo.client.kernel.event.EntityPersistenceEvent;
+import org.openbravo.client.kernel.event.EntityPersistenceEventObserver;
+import org.openbravo.client.kernel.event.EntityUpdateEvent;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.model.ad.access.Role;
+
+import com.etendoerp.dynamic.app.data.DynamicApp;
+import com.etendoerp.dynamic.app.data.DynamicAppVersion;
+import com.etendoerp.dynamic.app.data.DynamicRoleApp;
+import com.etendoerp.dynamic.app.service.CatalogSnapshot;
+import com.etendoerp.dynamic.app.service.ResolvedRoleAppStore;
+
+/**
+ * Keeps ETDAPP_ROLE_APP_RESOLVED in sync with apps, versions and role assignments.
+ * <p>
+ * The roles and apps changed in a transaction are collected and their rows are rebuilt once, right before the
+ * transaction commits, when the changes have already been flushed to the database. Once it commits, the
+ * {@link CatalogSnapshot} is written again.
+ */
+public class MaintainResolvedRoleApps extends EntityPersistenceEventObserver {
+  private static final Entity[] entities = {
+      ModelProvider.getInstance().getEntity(DynamicApp.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(DynamicAppVersion.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(DynamicRoleApp.ENTITY_NAME) };
+  private static final ThreadLocal<PendingRefresh> pending = new ThreadLocal<>();
+
+  @Override
+  protected Entity[] getObservedEntities() {
+    return entities;
+  }
+
+  public void onUpdate(@Observes EntityUpdateEvent event) {
+    if (!isValidEvent(event)) {
+      return;
+    }
+    collect(event);
+  }
+
+  public void onSave(@Observes EntityNewEvent event) {
+    if (!isValidEvent(event)) {
+      return;
+    }
+    collect(event);
+  }
+
+  public void onDelete(@Observes EntityDeleteEvent event) {
+    if (!isValidEvent(event)) {
+      return;
+    }
+    collect(event);
+  }
+
+  private void collect(EntityPersistenceEvent event) {
+    PendingRefresh refresh = getPendingRefresh();
+    Object target = event.getTargetInstance();
+    if (target instanceof DynamicRoleApp) {
+      refresh.roleIds.add(((DynamicRoleApp) target).getRole().getId());
+      if (event instanceof EntityUpdateEvent) {
+        Property roleProperty = entities[2].getProperty(DynamicRoleApp.PROPERTY_ROLE);
+        Role previousRole = (Role) ((EntityUpdateEvent) event).getPreviousState(roleProperty);
+        if (previousRole != null) {
+          refresh.roleIds.add(previousRole.getId());
+        }
+      }
+    } else if (target instanceof DynamicAppVersion) {
+      refresh.appIds.add(((DynamicAppVersion) target).getEtdappApp().getId());
+    } else {
+      refresh.appIds.add(((DynamicApp) target).getId());
+    }
+  }
+
+  private PendingRefresh getPendingRefresh() {
+    PendingRefresh refresh = pending.get();
+    if (refresh == null) {
+      refresh = new PendingRefresh();
+      OBDal.getInstance().getSession().getTransaction().registerSynchronization(refresh);
+      pending.set(refresh);
+    }
+    return refresh;
+  }
+
+  private static class PendingRefresh implements Synchronization {
+    private final Set<String> roleIds = new LinkedHashSet<>();
+    private final Set<String> appIds = new LinkedHashSet<>();
+
+    @Override
+    public void beforeCompletion() {
+      pending.remove();
+      try {
+        ResolvedRoleAppStore.refreshRoles(OBDal.getInstance().getConnection(false), roleIds);
+        ResolvedRoleAppStore.refreshApps(OBDal.getInstance().getConnection(false), appIds);
+      } catch (Exception e) {
+        throw new OBException("Could not refresh the resolved role apps", e);
+      }
+    }
+
+    @Override
+    public void afterCompletion(int status) {
+      pending.remove();
+      if (status == Status.STATUS_COMMITTED && CatalogSnapshot.isEnabled()) {
+        CatalogSnapshot.getInstance().scheduleWrite();
+      }
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package com.etendoerp.dynamic.app.event;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.enterprise.event.Observes;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.openbravo.base.model.Entity;
+import org.openbravo.base.model.ModelProvider;
+import org.openbravo.base.model.Property;
+import org.openbravo.client.kernel.event.EntityDeleteEvent;
+import org.openbravo.client.kernel.event.EntityNewEvent;
+import org.openbravo.client.kernel.event.EntityPersistenceEventObserver;
+import org.openbravo.client.kernel.event.EntityUpdateEvent;
+import org.openbravo.dal.service.OBDal;
+
+import com.etendoerp.dynamic.app.data.DynamicApp;
+import com.etendoerp.dynamic.app.data.DynamicAppVersion;
+import com.etendoerp.dynamic.app.service.BundleDirectoryWatcher;
+import com.etendoerp.dynamic.app.service.BundleMetadataService;
+import com.etendoerp.dynamic.app.service.RoleAppResolver;
+
+/**
+ * Queues the computation of the bundle metadata of the saved versions, once their transaction commits.
+ * <p>
+ * Changing the file name of a version clears its metadata, so the hash of the previous bundle is never returned.
+ * Versions saved without metadata, like the ones saved before it was computed, are queued again. Changing the
+ * directory of an app queues all its versions. The directories of the queued bundles are added to the
+ * {@link BundleDirectoryWatcher}, and the ones no longer used are dropped from it when an app changes its directory
+ * or an app or version is deleted.
+ */
+public class PrecomputeBundleMetadata extends EntityPersistenceEventObserver {
+  private static final Entity[] entities = { ModelProvider.getInstance().getEntity(DynamicAppVersion.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(DynamicApp.ENTITY_NAME) };
+  private static final String[] METADATA_PROPERTIES = { DynamicAppVersion.PROPERTY_BUNDLESHA256,
+      DynamicAppVersion.PROPERTY_BUNDLESIZE, DynamicAppVersion.PROPERTY_BUNDLEGZIPSIZE };
+  private static final ThreadLocal<PendingBundles> pending = new ThreadLocal<>();
+
+  @Override
+  protected Entity[] getObservedEntities() {
+    return entities;
+  }
+
+  public void onUpdate(@Observes EntityUpdateEvent event) {
+    if (!isValidEvent(event)) {
+      return;
+    }
+    if (event.getTargetInstance() instanceof DynamicApp) {
+      onAppUpdate(event);
+      return;
+    }
+    final DynamicAppVersion appVersion = (DynamicAppVersion) event.getTargetInstance();
+    Property fileNameProperty = entities[0].getProperty(DynamicAppVersion.PROPERTY_FILENAME);
+    boolean fileChanged = !Objects.equals(event.getPreviousState(fileNameProperty),
+        event.getCurrentState(fileNameProperty));
+    if (fileChanged) {
+      for (String propertyName : METADATA_PROPERTIES) {
+        event.setCurrentState(entities[0].getProperty(propertyName), null);
+      }
+    }
+    if (fileChanged) {
+      getPending().directoriesChanged = true;
+    }
+    if (fileChanged || appVersion.getBundleSha256() == null) {
+      queue(appVersion);
+    }
+  }
+
+  public void onSave(@Observes EntityNewEvent event) {
+    if (!isValidEvent(event)) {
+      return;
+    }
+    if (event.getTargetInstance() instanceof DynamicAppVersion) {
+      queue((DynamicAppVersion) event.getTargetInstance());
+    }
+  }
+
+  public void onDelete(@Observes EntityDeleteEvent event) {
+    if (isValidEvent(event)) {
+      getPending().directoriesChanged = true;
+    }
+  }
+
+  private void onAppUpdate(EntityUpdateEvent event) {
+    Property directoryProperty = entities[1].getProperty(DynamicApp.PROPERTY_DIRECTORYLOCATION);
+    if (Objects.equals(event.getPreviousState(directoryProperty), event.getCurrentState(directoryProperty))) {
+      return;
+    }
+    getPending().directoriesChanged = true;
+    // The versions now point to the bundles of the new directory
+    for (DynamicAppVersion appVersion : ((DynamicApp) event.getTargetInstance()).getETDAPPAppVersionList()) {
+      queue(appVersion);
+    }
+  }
+
+  private PendingBundles getPending() {
+    PendingBundles bundles = pending.get();
+    if (bundles == null) {
+      bundles = new PendingBundles();
+      OBDal.getInstance().getSession().getTransaction().registerSynchronization(bundles);
+      pending.set(bundles);
+    }
+    return bundles;
+  }
+
+  private void queue(DynamicAppVersion appVersion) {
+    getPending().versions.put(appVersion.getId(), new PendingBundle(appVersion.getEtdappApp().getId(),
+        appVersion.getFileName(), RoleAppResolver.resolveBundlePath(appVersion.getEtdappApp(), appVersion)));
+  }
+
+  private static class PendingBundle {
+    private final String appId;
+    private final String fileName;
+    private final String path;
+
+    private PendingBundle(String appId, String fileName, String path) {
+      this.appId = appId;
+      this.fileName = fileName;
+      this.path = path;
+    }
+  }
+
+  private static class PendingBundles implements Synchronization {
+    private final Map<String, PendingBundle> versions = new LinkedHashMap<>();
+    private boolean directoriesChanged;
+
+    @Override
+    public void beforeCompletion() {
+      // The bundles are queued once the versions are visible to other transactions
+    }
+
+    @Override
+    public void afterCompletion(int status) {
+      pending.remove();
+      if (status != Status.STATUS_COMMITTED) {
+        return;
+      }
+      BundleMetadataService service = BundleMetadataService.getInstance();
+      BundleDirectoryWatcher watcher = BundleDirectoryWatcher.getInstance();
+      versions.forEach((versionId, bundle) -> {
+        Path path = Paths.get(bundle.path);
+        watcher.watch(path.getParent());
+        service.enqueue(versionId, bundle.appId, bundle.fileName, path);
+      });
+      if (directoriesChanged) {
+        watcher.unwatchUnused();
+      }
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package com.etendoerp.dynamic.app.event;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+import javax.enterprise.event.Observes;
+
+import org.openbravo.base.exception.OBException;
+import org.openbravo.base.model.Entity;
+import org.openbravo.base.model.ModelProvider;
+import org.openbravo.base.structure.ClientEnabled;
+import org.openbravo.base.structure.OrganizationEnabled;
+import org.openbravo.client.kernel.event.EntityDeleteEvent;
+import org.openbravo.client.kernel.event.EntityPersistenceEventObserver;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.model.ad.access.RoleInheritance;
+
+import com.etendoerp.dynamic.app.data.DynamicApp;
+import com.etendoerp.dynamic.app.data.DynamicAppVersion;
+import com.etendoerp.dynamic.app.data.DynamicRoleApp;
+import com.etendoerp.dynamic.app.service.CatalogChangeStore;
+
+/**
+ * Leaves a tombstone for each deleted app, version, role assignment or role inheritance, so the incremental sync of
+ * the app list can tell the clients what was removed.
+ */
+public class RecordCatalogTombstones extends EntityPersistenceEventObserver {
+  private static final Entity[] entities = {
+      ModelProvider.getInstance().getEntity(DynamicApp.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(DynamicAppVersion.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(DynamicRoleApp.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(RoleInheritance.ENTITY_NAME) };
+
+  @Override
+  protected Entity[] getObservedEntities() {
+    return entities;
+  }
+
+  public void onDelete(@Observes EntityDeleteEvent event) {
+    if (!isValidEvent(event)) {
+      return;
+    }
+    Object target = event.getTargetInstance();
+    String roleId = null;
+    String appId = null;
+    if (target instanceof DynamicRoleApp) {
+      roleId = ((DynamicRoleApp) target).getRole().getId();
+      appId = ((DynamicRoleApp) target).getEtdappApp().getId();
+    } else if (target instanceof RoleInheritance) {
+      roleId = ((RoleInheritance) target).getRole().getId();
+    } else if (target instanceof DynamicAppVersion) {
+      appId = ((DynamicAppVersion) target).getEtdappApp().getId();
+    } else {
+      appId = ((DynamicApp) target).getId();
+    }
+    try {
+      CatalogChangeStore.recordDeletion(OBDal.getInstance().getConnection(false), event.getTargetInstance().getId()
+          .toString(), roleId, appId, ((ClientEnabled) target).getClient().getId(),
+          ((OrganizationEnabled) target).getOrganization().getId(), OBContext.getOBContext().getUser().getId(),
+          new Timestamp(System.currentTimeMillis()));
+    } catch (SQLException e) {
+      throw new OBException("Could not record the deletion of " + event.getTargetInstance().getIdentifier(), e);
+    }
+  }
+}
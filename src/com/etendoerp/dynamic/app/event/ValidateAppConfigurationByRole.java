@@ -15,6 +15,7 @@ import org.openbravo.dal.service.OBDal;
 import org.openbravo.erpCommon.utility.OBMessageUtils;
 
 import com.etendoerp.dynamic.app.data.DynamicRoleApp;
+import com.etendoerp.dynamic.app.jfr.AppValidationEvent;
 
 public class ValidateAppConfigurationByRole extends EntityPersistenceEventObserver {
   private static final Entity[] entities = { ModelProvider.getInstance().getEntity(DynamicRoleApp.ENTITY_NAME) };
@@ -29,7 +30,7 @@ public class ValidateAppConfigurationByRole extends EntityPersistenceEventObserv
       return;
     }
     final DynamicRoleApp roleApp = (DynamicRoleApp) event.getTargetInstance();
-    existsOtherRecord(roleApp);
+    validate(roleApp);
   }
 
   public void onSave(@Observes EntityNewEvent event) {
@@ -37,16 +38,27 @@ public class ValidateAppConfigurationByRole extends EntityPersistenceEventObserv
       return;
     }
     final DynamicRoleApp roleApp = (DynamicRoleApp) event.getTargetInstance();
-    existsOtherRecord(roleApp);
+    validate(roleApp);
+  }
+
+  private void validate(DynamicRoleApp roleApp) {
+    if (DeferredAppValidation.isEnabled()) {
+      DeferredAppValidation.getCurrent().addRoleApp(roleApp);
+    } else {
+      existsOtherRecord(roleApp);
+    }
   }
 
   private void existsOtherRecord(DynamicRoleApp roleApp) {
+    AppValidationEvent validationEvent = AppValidationEvent.start("App configuration by role");
     OBCriteria<DynamicRoleApp> cRoleApp = OBDal.getInstance().createCriteria(DynamicRoleApp.class);
     cRoleApp.add(Restrictions.eq(DynamicRoleApp.PROPERTY_ETDAPPAPP, roleApp.getEtdappApp()));
     cRoleApp.add(Restrictions.ne(DynamicRoleApp.PROPERTY_ID, roleApp.getId()));
     cRoleApp.add(Restrictions.eq(DynamicRoleApp.PROPERTY_ROLE, roleApp.getRole()));
     cRoleApp.setMaxResults(1);
-    if (cRoleApp.uniqueResult() != null) {
+    boolean exists = cRoleApp.uniqueResult() != null;
+    validationEvent.finish(roleApp.getId(), !exists);
+    if (exists) {
       throw new OBException(OBMessageUtils.messageBD("ETDAPP_ExistsAppForRole"));
     }
   }
@@ -18,6 +18,7 @@ import org.openbravo.dal.service.OBDal;
 import org.openbravo.erpCommon.utility.OBMessageUtils;
 
 import com.etendoerp.dynamic.app.data.DynamicAppVersion;
+import com.etendoerp.dynamic.app.jfr.AppValidationEvent;
 
 public class ValidateDefaultValueInAppVersion extends EntityPersistenceEventObserver {
   private static final Entity[] entities = { ModelProvider.getInstance().getEntity(DynamicAppVersion.ENTITY_NAME) };
@@ -33,7 +34,7 @@ public class ValidateDefaultValueInAppVersion extends EntityPersistenceEventObse
       return;
     }
     final DynamicAppVersion appVersion = (DynamicAppVersion) event.getTargetInstance();
-    existsOtherRecord(appVersion);
+    validate(appVersion);
   }
 
   public void onSave(@Observes EntityNewEvent event) {
@@ -41,17 +42,28 @@ public class ValidateDefaultValueInAppVersion extends EntityPersistenceEventObse
       return;
     }
     final DynamicAppVersion appVersion = (DynamicAppVersion) event.getTargetInstance();
-    existsOtherRecord(appVersion);
+    validate(appVersion);
+  }
+
+  private void validate(DynamicAppVersion appVersion) {
+    if (DeferredAppValidation.isEnabled()) {
+      DeferredAppValidation.getCurrent().addVersion(appVersion);
+    } else {
+      existsOtherRecord(appVersion);
+    }
   }
 
   private void existsOtherRecord(DynamicAppVersion appVersion) {
     if (appVersion.isDefault()) {
+      AppValidationEvent validationEvent = AppValidationEvent.start("Default value in app version");
       OBCriteria<DynamicAppVersion> cAppVersion = OBDal.getInstance().createCriteria(DynamicAppVersion.class);
       cAppVersion.add(Restrictions.eq(DynamicAppVersion.PROPERTY_ETDAPPAPP, appVersion.getEtdappApp()));
       cAppVersion.add(Restrictions.eq(DynamicAppVersion.PROPERTY_DEFAULT, true));
       cAppVersion.add(Restrictions.ne(DynamicAppVersion.PROPERTY_ID, appVersion.getId()));
       cAppVersion.setMaxResults(1);
-      if (cAppVersion.uniqueResult() != null) {
+      boolean exists = cAppVersion.uniqueResult() != null;
+      validationEvent.finish(appVersion.getId(), !exists);
+      if (exists) {
         throw new OBException(OBMessageUtils.messageBD("ETDAPP_ExistsOtherRecordAsDefault"));
       }
     }
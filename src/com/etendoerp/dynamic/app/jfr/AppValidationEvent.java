@@ -0,0 +1,53 @@
+package com.etendoerp.dynamic.app.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event emitted by the persistence observers that validate dynamic app records.
+ */
+@Name("com.etendoerp.dynamic.app.Validation")
+@Label("Dynamic App Validation")
+@Category({ "Etendo", "Dynamic App" })
+@Description("Time spent validating a dynamic app record on save")
+@StackTrace(false)
+public class AppValidationEvent extends Event {
+
+  @Label("Validation")
+  String validation;
+
+  @Label("Record Id")
+  String recordId;
+
+  @Label("Passed")
+  boolean passed;
+
+  public AppValidationEvent(String validation) {
+    this.validation = validation;
+  }
+
+  /**
+   * Creates the event of a validation and starts timing it.
+   */
+  public static AppValidationEvent start(String validation) {
+    AppValidationEvent event = new AppValidationEvent(validation);
+    event.begin();
+    return event;
+  }
+
+  /**
+   * Stops timing the validation and commits the event if it is enabled and over its threshold.
+   */
+  public void finish(String validatedRecordId, boolean validationPassed) {
+    end();
+    if (shouldCommit()) {
+      this.recordId = validatedRecordId;
+      this.passed = validationPassed;
+      commit();
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package com.etendoerp.dynamic.app.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event emitted for each phase of a userApp request, so latency can be attributed in
+ * production recordings without attaching a profiler.
+ */
+@Name("com.etendoerp.dynamic.app.RequestPhase")
+@Label("Dynamic App Request Phase")
+@Category({ "Etendo", "Dynamic App" })
+@Description("Time spent in a phase of the userApp service")
+@StackTrace(false)
+public class AppsRequestPhaseEvent extends Event {
+  public static final String TOKEN_DECODE = "Token decode";
+  public static final String ROLE_LOOKUP = "Role lookup";
+  public static final String ROLE_APP_ITERATION = "Role app iteration";
+  public static final String DEFAULT_VERSION_RESOLUTION = "Default version resolution";
+  public static final String PATH_RESOLUTION = "Path resolution";
+  public static final String SERIALIZATION = "Serialization";
+
+  @Label("Phase")
+  String phase;
+
+  @Label("Role Id")
+  String roleId;
+
+  @Label("App Count")
+  int appCount;
+
+  public AppsRequestPhaseEvent(String phase) {
+    this.phase = phase;
+  }
+
+  /**
+   * Creates the event of a phase and starts timing it.
+   */
+  public static AppsRequestPhaseEvent start(String phase) {
+    AppsRequestPhaseEvent event = new AppsRequestPhaseEvent(phase);
+    event.begin();
+    return event;
+  }
+
+  /**
+   * Stops timing the phase and commits the event if it is enabled and over its threshold.
+   */
+  public void finish(String phaseRoleId, int phaseAppCount) {
+    end();
+    if (shouldCommit()) {
+      this.roleId = phaseRoleId;
+      this.appCount = phaseAppCount;
+      commit();
+    }
+  }
+}
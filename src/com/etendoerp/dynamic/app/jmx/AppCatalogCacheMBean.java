@@ -0,0 +1,21 @@
+package com.etendoerp.dynamic.app.jmx;
+
+/**
+ * Management interface of the cache of the app lists of each role.
+ */
+public interface AppCatalogCacheMBean extends CacheStatisticsMBean {
+
+  int getMaxRoles();
+
+  void setMaxRoles(int maxRoles);
+
+  /**
+   * Forgets the app list of the role and of the roles that inherit from it.
+   */
+  void invalidateRole(String roleId);
+
+  /**
+   * Forgets the app lists that include the app and the cached bundles of its versions.
+   */
+  void invalidateApp(String appId);
+}
@@ -0,0 +1,51 @@
+package com.etendoerp.dynamic.app.jmx;
+
+import com.etendoerp.dynamic.app.cache.AppCatalogCache;
+import com.etendoerp.dynamic.app.cache.BundleContentCache;
+import com.etendoerp.dynamic.app.cache.CacheStatistics;
+import com.etendoerp.dynamic.app.cache.RoleInheritanceCache;
+
+/**
+ * MBean of the {@link AppCatalogCache}.
+ */
+class AppCatalogCacheMonitor extends CacheMonitor implements AppCatalogCacheMBean {
+
+  @Override
+  protected CacheStatistics getStatistics() {
+    return AppCatalogCache.getInstance().getStatistics();
+  }
+
+  @Override
+  public int getSize() {
+    return AppCatalogCache.getInstance().size();
+  }
+
+  @Override
+  public int getMaxRoles() {
+    return AppCatalogCache.getInstance().getMaxRoles();
+  }
+
+  @Override
+  public void setMaxRoles(int maxRoles) {
+    AppCatalogCache.getInstance().setMaxRoles(maxRoles);
+  }
+
+  @Override
+  public void invalidateRole(String roleId) {
+    for (String inheritingRoleId : RoleInheritanceCache.getInstance().getInheritingRoles(roleId)) {
+      AppCatalogCache.getInstance().invalidateRole(inheritingRoleId);
+    }
+  }
+
+  @Override
+  public void invalidateApp(String appId) {
+    for (String versionId : AppCatalogCache.getInstance().invalidateApp(appId)) {
+      BundleContentCache.getInstance().invalidate(versionId);
+    }
+  }
+
+  @Override
+  public void invalidateAll() {
+    AppCatalogCache.getInstance().invalidateAll();
+  }
+}
@@ -0,0 +1,17 @@
+package com.etendoerp.dynamic.app.jmx;
+
+/**
+ * Management interface of the cache of bundle contents.
+ */
+public interface BundleContentCacheMBean extends CacheStatisticsMBean {
+
+  long getUsedBytes();
+
+  long getMaxBytes();
+
+  void setMaxBytes(long maxBytes);
+
+  long getMaxEntryBytes();
+
+  void invalidateVersion(String versionId);
+}
@@ -0,0 +1,50 @@
+package com.etendoerp.dynamic.app.jmx;
+
+import com.etendoerp.dynamic.app.cache.BundleContentCache;
+import com.etendoerp.dynamic.app.cache.CacheStatistics;
+
+/**
+ * MBean of the {@link BundleContentCache}.
+ */
+class BundleContentCacheMonitor extends CacheMonitor implements BundleContentCacheMBean {
+
+  @Override
+  protected CacheStatistics getStatistics() {
+    return BundleContentCache.getInstance().getStatistics();
+  }
+
+  @Override
+  public int getSize() {
+    return BundleContentCache.getInstance().size();
+  }
+
+  @Override
+  public long getUsedBytes() {
+    return BundleContentCache.getInstance().getUsedBytes();
+  }
+
+  @Override
+  public long getMaxBytes() {
+    return BundleContentCache.getInstance().getMaxBytes();
+  }
+
+  @Override
+  public void setMaxBytes(long maxBytes) {
+    BundleContentCache.getInstance().setMaxBytes(maxBytes);
+  }
+
+  @Override
+  public long getMaxEntryBytes() {
+    return BundleContentCache.getInstance().getMaxEntryBytes();
+  }
+
+  @Override
+  public void invalidateVersion(String versionId) {
+    BundleContentCache.getInstance().invalidate(versionId);
+  }
+
+  @Override
+  public void invalidateAll() {
+    BundleContentCache.getInstance().invalidateAll();
+  }
+}
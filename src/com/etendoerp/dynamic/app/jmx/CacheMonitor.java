@@ -0,0 +1,53 @@
+package com.etendoerp.dynamic.app.jmx;
+
+import com.etendoerp.dynamic.app.cache.CacheStatistics;
+
+/**
+ * Base of the cache MBeans, exposing the {@link CacheStatistics} of the cache.
+ */
+abstract class CacheMonitor implements CacheStatisticsMBean {
+
+  protected abstract CacheStatistics getStatistics();
+
+  @Override
+  public long getHitCount() {
+    return getStatistics().getHitCount();
+  }
+
+  @Override
+  public long getMissCount() {
+    return getStatistics().getMissCount();
+  }
+
+  @Override
+  public double getHitRatio() {
+    long hits = getHitCount();
+    long requests = hits + getMissCount();
+    return requests == 0 ? 0 : (double) hits / requests;
+  }
+
+  @Override
+  public long getEvictionCount() {
+    return getStatistics().getEvictionCount();
+  }
+
+  @Override
+  public long getLoadCount() {
+    return getStatistics().getLoadCount();
+  }
+
+  @Override
+  public long getTotalLoadMillis() {
+    return getStatistics().getTotalLoadMillis();
+  }
+
+  @Override
+  public double getAverageLoadMillis() {
+    return getStatistics().getAverageLoadMillis();
+  }
+
+  @Override
+  public void resetStatistics() {
+    getStatistics().reset();
+  }
+}
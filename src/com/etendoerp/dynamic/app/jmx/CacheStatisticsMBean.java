@@ -0,0 +1,27 @@
+package com.etendoerp.dynamic.app.jmx;
+
+/**
+ * Attributes and operations shared by the management interfaces of the dynamic app caches.
+ */
+public interface CacheStatisticsMBean {
+
+  int getSize();
+
+  long getHitCount();
+
+  long getMissCount();
+
+  double getHitRatio();
+
+  long getEvictionCount();
+
+  long getLoadCount();
+
+  long getTotalLoadMillis();
+
+  double getAverageLoadMillis();
+
+  void resetStatistics();
+
+  void invalidateAll();
+}
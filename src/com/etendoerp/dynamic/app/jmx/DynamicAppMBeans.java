@@ -0,0 +1,52 @@
+package com.etendoerp.dynamic.app.jmx;
+
+import java.lang.management.ManagementFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.client.kernel.ApplicationInitializer;
+
+/**
+ * Registers the MBeans of the dynamic app caches in the platform MBean server when the application starts, under
+ * {@value #DOMAIN}{@code :type=Cache}, so they can be inspected and managed with JConsole or jcmd. The caches are
+ * local to each node of a cluster.
+ */
+@ApplicationScoped
+public class DynamicAppMBeans implements ApplicationInitializer {
+  static final String DOMAIN = "com.etendoerp.dynamic.app";
+  private static final Logger logger = LogManager.getLogger();
+
+  @Override
+  public void initialize() {
+    register(ManagementFactory.getPlatformMBeanServer());
+  }
+
+  static void register(MBeanServer server) {
+    register(server, "AppCatalog", new AppCatalogCacheMonitor(), AppCatalogCacheMBean.class);
+    register(server, "BundleContent", new BundleContentCacheMonitor(), BundleContentCacheMBean.class);
+    register(server, "RoleInheritance", new RoleInheritanceCacheMonitor(), RoleInheritanceCacheMBean.class);
+  }
+
+  private static <T> void register(MBeanServer server, String name, T monitor, Class<T> mbeanInterface) {
+    try {
+      ObjectName objectName = getObjectName(name);
+      // A redeployed webapp replaces the MBeans of the previous one
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+      server.registerMBean(new StandardMBean(monitor, mbeanInterface), objectName);
+    } catch (JMException e) {
+      logger.warn("Could not register the MBean of the {} cache", name, e);
+    }
+  }
+
+  static ObjectName getObjectName(String name) throws JMException {
+    return new ObjectName(DOMAIN + ":type=Cache,name=" + name);
+  }
+}
@@ -0,0 +1,16 @@
+package com.etendoerp.dynamic.app.jmx;
+
+/**
+ * Management interface of the cache of flattened role inheritance.
+ */
+public interface RoleInheritanceCacheMBean extends CacheStatisticsMBean {
+
+  int getMaxRoles();
+
+  void setMaxRoles(int maxRoles);
+
+  /**
+   * Forgets the flattening of the role and of the roles that inherit from it, together with their app lists.
+   */
+  void invalidateRole(String roleId);
+}
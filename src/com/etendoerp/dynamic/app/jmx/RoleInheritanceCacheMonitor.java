@@ -0,0 +1,44 @@
+package com.etendoerp.dynamic.app.jmx;
+
+import com.etendoerp.dynamic.app.cache.AppCatalogCache;
+import com.etendoerp.dynamic.app.cache.CacheStatistics;
+import com.etendoerp.dynamic.app.cache.RoleInheritanceCache;
+
+/**
+ * MBean of the {@link RoleInheritanceCache}.
+ */
+class RoleInheritanceCacheMonitor extends CacheMonitor implements RoleInheritanceCacheMBean {
+
+  @Override
+  protected CacheStatistics getStatistics() {
+    return RoleInheritanceCache.getInstance().getStatistics();
+  }
+
+  @Override
+  public int getSize() {
+    return RoleInheritanceCache.getInstance().size();
+  }
+
+  @Override
+  public int getMaxRoles() {
+    return RoleInheritanceCache.getInstance().getMaxRoles();
+  }
+
+  @Override
+  public void setMaxRoles(int maxRoles) {
+    RoleInheritanceCache.getInstance().setMaxRoles(maxRoles);
+  }
+
+  @Override
+  public void invalidateRole(String roleId) {
+    for (String inheritingRoleId : RoleInheritanceCache.getInstance().invalidateRole(roleId)) {
+      AppCatalogCache.getInstance().invalidateRole(inheritingRoleId);
+    }
+  }
+
+  @Override
+  public void invalidateAll() {
+    RoleInheritanceCache.getInstance().invalidateAll();
+    AppCatalogCache.getInstance().invalidateAll();
+  }
+}
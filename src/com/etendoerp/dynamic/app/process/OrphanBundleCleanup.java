@@ -0,0 +1,110 @@
+package com.etendoerp.dynamic.app.process;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.erpCommon.utility.OBError;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+import org.openbravo.scheduling.ProcessBundle;
+import org.openbravo.scheduling.ProcessLogger;
+import org.openbravo.service.db.DalBaseProcess;
+
+import com.etendoerp.dynamic.app.data.DynamicApp;
+import com.etendoerp.dynamic.app.service.RoleAppResolver;
+import com.etendoerp.dynamic.app.util.DynamicAppProperties;
+
+/**
+ * Background process that finds the bundle files no app version references, once they are older than
+ * {@code etdapp.bundleGc.graceDays} days. They are only reported by default, and quarantined or deleted when
+ * {@code etdapp.bundleGc.mode} is {@code quarantine} or {@code delete}.
+ */
+public class OrphanBundleCleanup extends DalBaseProcess {
+  private static final long DEFAULT_GRACE_DAYS = 7;
+  private static final String REFERENCED_FILES_HQL = "select a.directoryLocation, v.fileName from "
+      + DynamicApp.ENTITY_NAME + " a left join a.eTDAPPAppVersionList v";
+  private static final Logger log = LogManager.getLogger();
+
+  @Override
+  protected void doExecute(ProcessBundle bundle) throws Exception {
+    ProcessLogger processLogger = bundle.getLogger();
+    Map<Path, Set<String>> referencedFiles;
+    try {
+      OBContext.setAdminMode(true);
+      referencedFiles = getReferencedFiles();
+    } finally {
+      OBContext.restorePreviousMode();
+    }
+
+    long graceMillis = TimeUnit.DAYS.toMillis(DynamicAppProperties.getLong("etdapp.bundleGc.graceDays",
+        DEFAULT_GRACE_DAYS));
+    List<OrphanBundleCollector.Orphan> orphans = new OrphanBundleCollector(graceMillis, getMode())
+        .collect(referencedFiles);
+
+    long bytes = 0;
+    int failed = 0;
+    for (OrphanBundleCollector.Orphan orphan : orphans) {
+      processLogger.logln(orphan.getAction() + " " + orphan.getPath() + " (" + orphan.getSize() + " bytes)");
+      bytes += orphan.getSize();
+      if (orphan.getAction() == OrphanBundleCollector.Action.FAILED) {
+        failed++;
+      }
+    }
+    String summary = String.format(OBMessageUtils.messageBD("ETDAPP_OrphanBundlesSummary"), orphans.size(), bytes,
+        referencedFiles.size(), failed);
+    processLogger.logln(summary);
+    log.info(summary);
+
+    OBError result = new OBError();
+    result.setType(failed == 0 ? "Success" : "Warning");
+    result.setTitle(OBMessageUtils.messageBD(failed == 0 ? "Success" : "Warning"));
+    result.setMessage(summary);
+    bundle.setResult(result);
+  }
+
+  protected OrphanBundleCollector.Mode getMode() {
+    String mode = DynamicAppProperties.getString("etdapp.bundleGc.mode", "report");
+    if (StringUtils.equalsIgnoreCase(mode, "delete")) {
+      return OrphanBundleCollector.Mode.DELETE;
+    }
+    if (StringUtils.equalsIgnoreCase(mode, "quarantine")) {
+      return OrphanBundleCollector.Mode.QUARANTINE;
+    }
+    return OrphanBundleCollector.Mode.DRY_RUN;
+  }
+
+  /**
+   * Returns the files referenced by the versions of every app, active or not, grouped by directory, with a single
+   * query.
+   */
+  private Map<Path, Set<String>> getReferencedFiles() {
+    List<Object[]> rows = OBDal.getInstance().getSession().createQuery(REFERENCED_FILES_HQL, Object[].class).list();
+    Map<String, String> resolvedDirectories = new HashMap<>();
+    Map<Path, Set<String>> referencedFiles = new HashMap<>();
+    for (Object[] row : rows) {
+      String directoryLocation = (String) row[0];
+      String fileName = (String) row[1];
+      if (StringUtils.isEmpty(directoryLocation)) {
+        continue;
+      }
+      Path directory = Paths.get(resolvedDirectories.computeIfAbsent(directoryLocation,
+          RoleAppResolver::resolveDirectory)).normalize();
+      referencedFiles.computeIfAbsent(directory, key -> new HashSet<>());
+      if (!StringUtils.isEmpty(fileName)) {
+        Path file = directory.resolve(fileName).normalize();
+        referencedFiles.computeIfAbsent(file.getParent(), key -> new HashSet<>()).add(file.getFileName().toString());
+      }
+    }
+    return referencedFiles;
+  }
+}
@@ -0,0 +1,12 @@
+package com.etendoerp.dynamic.app.process;
+
+/**
+ * Reports the bundle files {@link OrphanBundleCleanup} would remove without touching them.
+ */
+public class OrphanBundleCleanupDryRun extends OrphanBundleCleanup {
+
+  @Override
+  protected OrphanBundleCollector.Mode getMode() {
+    return OrphanBundleCollector.Mode.DRY_RUN;
+  }
+}
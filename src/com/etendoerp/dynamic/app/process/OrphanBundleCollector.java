@@ -0,0 +1,185 @@
+package com.etendoerp.dynamic.app.process;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.etendoerp.dynamic.app.service.BundleMetadata;
+
+/**
+ * Finds the bundle files of the app directories that no version references anymore.
+ * <p>
+ * Only bundles ({@code *.js}) and their sidecars ({@code *.js.*}, like the compressed copies and the manifest) in
+ * the top level of each directory are considered, and only once they are older than the grace period. The
+ * directories can be shared with other files, so only the bundles written by this module, the ones with a
+ * {@code .manifest.json} sidecar written by {@code subapp.build} or by the bundle upload, are ever
+ * collected. Depending on
+ * the mode they are reported, moved to a {@value #QUARANTINE_DIRECTORY} directory, where they are deleted after
+ * another grace period, or deleted right away. Directories are processed in parallel.
+ */
+public class OrphanBundleCollector {
+  static final String QUARANTINE_DIRECTORY = ".etdapp-quarantine";
+  private static final Logger log = LogManager.getLogger();
+
+  public enum Mode {
+    DRY_RUN, QUARANTINE, DELETE
+  }
+
+  public enum Action {
+    REPORTED, QUARANTINED, DELETED, FAILED
+  }
+
+  private final long graceMillis;
+  private final Mode mode;
+
+  public OrphanBundleCollector(long graceMillis, Mode mode) {
+    this.graceMillis = graceMillis;
+    this.mode = mode;
+  }
+
+  /**
+   * Collects the orphaned bundles.
+   *
+   * @param referencedFiles
+   *     names of the files referenced by a version, by directory. Directories without references are included
+   *     with an empty set.
+   */
+  public List<Orphan> collect(Map<Path, Set<String>> referencedFiles) {
+    long threshold = System.currentTimeMillis() - graceMillis;
+    return referencedFiles.entrySet()
+        .parallelStream()
+        .flatMap(entry -> collect(entry.getKey(), entry.getValue(), threshold).stream())
+        .collect(Collectors.toList());
+  }
+
+  private List<Orphan> collect(Path directory, Set<String> referenced, long threshold) {
+    if (!Files.isDirectory(directory)) {
+      return Collections.emptyList();
+    }
+    List<Path> candidates = new ArrayList<>();
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        String name = file.getFileName().toString();
+        if (Files.isRegularFile(file) && isBundle(name) && !isReferenced(name, referenced)
+            && Files.getLastModifiedTime(file).toMillis() < threshold && hasManifest(directory, name)) {
+          candidates.add(file);
+        }
+      }
+    } catch (IOException e) {
+      log.error("Could not scan the bundle directory {}", directory, e);
+    }
+    // Processed once all are found, as the manifests they are found by are collected with them
+    List<Orphan> orphans = new ArrayList<>();
+    for (Path file : candidates) {
+      orphans.add(process(file));
+    }
+    if (mode == Mode.QUARANTINE) {
+      orphans.addAll(purgeQuarantine(directory.resolve(QUARANTINE_DIRECTORY), threshold));
+    }
+    return orphans;
+  }
+
+  private Orphan process(Path file) {
+    long size = 0;
+    try {
+      size = Files.size(file);
+      if (mode == Mode.DELETE) {
+        Files.delete(file);
+        return new Orphan(file, size, Action.DELETED);
+      }
+      if (mode == Mode.QUARANTINE) {
+        Path quarantine = Files.createDirectories(file.resolveSibling(QUARANTINE_DIRECTORY));
+        Path target = Files.move(file, quarantine.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        // The grace period in quarantine starts now
+        Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+        return new Orphan(file, size, Action.QUARANTINED);
+      }
+    } catch (IOException e) {
+      log.error("Could not remove the orphaned bundle {}", file, e);
+      return new Orphan(file, size, Action.FAILED);
+    }
+    return new Orphan(file, size, Action.REPORTED);
+  }
+
+  private List<Orphan> purgeQuarantine(Path quarantine, long threshold) {
+    if (!Files.isDirectory(quarantine)) {
+      return Collections.emptyList();
+    }
+    List<Orphan> purged = new ArrayList<>();
+    try (Stream<Path> files = Files.list(quarantine)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        if (Files.isRegularFile(file) && Files.getLastModifiedTime(file).toMillis() < threshold) {
+          long size = Files.size(file);
+          Files.delete(file);
+          purged.add(new Orphan(file, size, Action.DELETED));
+        }
+      }
+    } catch (IOException e) {
+      log.error("Could not purge the bundle quarantine {}", quarantine, e);
+    }
+    return purged;
+  }
+
+  static boolean isBundle(String name) {
+    return name.endsWith(".js") || name.contains(".js.");
+  }
+
+  /**
+   * Returns whether the bundle of the file, the file itself or the bundle it is a sidecar of, has a manifest.
+   */
+  static boolean hasManifest(Path directory, String name) {
+    String bundleName = name.endsWith(".js") ? name : name.substring(0, name.indexOf(".js.") + 3);
+    return Files.isRegularFile(directory.resolve(bundleName + BundleMetadata.MANIFEST_SUFFIX));
+  }
+
+  static boolean isReferenced(String name, Set<String> referenced) {
+    if (referenced.contains(name)) {
+      return true;
+    }
+    for (String referencedName : referenced) {
+      if (name.startsWith(referencedName + ".")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Orphaned bundle file and what was done with it.
+   */
+  public static class Orphan {
+    private final Path path;
+    private final long size;
+    private final Action action;
+
+    Orphan(Path path, long size, Action action) {
+      this.path = path;
+      this.size = size;
+      this.action = action;
+    }
+
+    public Path getPath() {
+      return path;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public Action getAction() {
+      return action;
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package com.etendoerp.dynamic.app.process;
+
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.erpCommon.utility.OBError;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+import org.openbravo.scheduling.ProcessBundle;
+import org.openbravo.service.db.DalBaseProcess;
+
+import com.etendoerp.dynamic.app.service.CatalogChangeStore;
+import com.etendoerp.dynamic.app.service.CatalogSync;
+
+/**
+ * Background process that removes the catalog tombstones older than {@code etdapp.sync.retentionDays} days. Clients
+ * that sync from an older time receive the whole app list, so these tombstones are no longer read.
+ */
+public class PurgeCatalogTombstones extends DalBaseProcess {
+  private static final Logger log = LogManager.getLogger();
+
+  @Override
+  protected void doExecute(ProcessBundle bundle) throws Exception {
+    long retentionDays = CatalogSync.getRetentionDays();
+    Timestamp before = new Timestamp(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays));
+    int purged = CatalogChangeStore.purge(OBDal.getInstance().getConnection(false), before);
+
+    String summary = String.format(OBMessageUtils.messageBD("ETDAPP_TombstonesPurged"), purged, retentionDays);
+    bundle.getLogger().logln(summary);
+    log.info(summary);
+
+    OBError result = new OBError();
+    result.setType("Success");
+    result.setTitle(OBMessageUtils.messageBD("Success"));
+    result.setMessage(summary);
+    bundle.setResult(result);
+  }
+}
@@ -0,0 +1,110 @@
+package com.etendoerp.dynamic.app.service;
+
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+import org.codehaus.jettison.json.JSONObject;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.model.ad.access.Role;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.etendoerp.dynamic.app.cache.BundleContentCache;
+import com.smf.securewebservices.service.BaseWebService;
+import com.smf.securewebservices.utils.SecureWebServicesUtils;
+import com.smf.securewebservices.utils.WSResult;
+
+/**
+ * Serves the bundle of an app version assigned to the role of the token, from the {@link BundleContentCache} when
+ * possible. The hash of the bundle is sent as ETag so clients can revalidate it.
+ */
+public class AppBundleServlet extends BaseWebService {
+  private static final String CONTENT_TYPE = "application/javascript";
+
+  private final RoleAppResolver resolver = new RoleAppResolver();
+
+  @Override
+  public void doGet(String path, HttpServletRequest request, HttpServletResponse response) throws Exception {
+    String authStr = request.getHeader("Authorization");
+    String token = null;
+    if (authStr != null && authStr.startsWith("Bearer ")) {
+      token = authStr.substring(7);
+    }
+    String versionId = request.getParameter("version");
+    if (token == null || StringUtils.isEmpty(versionId)) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+
+    Path bundlePath;
+    try {
+      OBContext.setAdminMode(true);
+      DecodedJWT decodedToken = SecureWebServicesUtils.decodeToken(token);
+      Role role = resolver.getRole(decodedToken.getClaim("role").asString());
+      bundlePath = findBundle(role, versionId);
+    } finally {
+      OBContext.restorePreviousMode();
+    }
+    if (bundlePath == null || !Files.isRegularFile(bundlePath)) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    BundleContentCache.Bundle bundle = BundleContentCache.getInstance().get(versionId, bundlePath);
+    response.setContentType(CONTENT_TYPE);
+    if (bundle == null) {
+      response.setContentLengthLong(Files.size(bundlePath));
+      Files.copy(bundlePath, response.getOutputStream());
+      return;
+    }
+
+    String etag = "\"" + bundle.getSha256() + "\"";
+    response.setHeader("ETag", etag);
+    if (etag.equals(request.getHeader("If-None-Match"))) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+    response.setContentLengthLong(bundle.getSize());
+    OutputStream out = response.getOutputStream();
+    WritableByteChannel channel = Channels.newChannel(out);
+    channel.write(bundle.getContent());
+    out.flush();
+  }
+
+  private Path findBundle(Role role, String versionId) throws Exception {
+    for (ResolvedRoleApp roleApp : resolver.getRoleApps(role)) {
+      if (versionId.equals(roleApp.getVersionId())) {
+        return Paths.get(roleApp.getPath());
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public WSResult get(String path, Map<String, String> parameters) throws Exception {
+    return null;
+  }
+
+  @Override
+  public WSResult post(String path, Map<String, String> parameters, JSONObject body) throws Exception {
+    return null;
+  }
+
+  @Override
+  public WSResult put(String path, Map<String, String> parameters, JSONObject body) throws Exception {
+    return null;
+  }
+
+  @Override
+  public WSResult delete(String path, Map<String, String> parameters, JSONObject body) throws Exception {
+    return null;
+  }
+}
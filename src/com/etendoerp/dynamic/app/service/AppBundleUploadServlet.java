@@ -0,0 +1,253 @@
+package com.etendoerp.dynamic.app.service;
+
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codehaus.jettison.json.JSONObject;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.base.exception.OBSecurityException;
+import org.openbravo.base.model.ModelProvider;
+import org.openbravo.base.provider.OBProvider;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.security.EntityAccessChecker;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+import com.etendoerp.dynamic.app.data.DynamicApp;
+import com.etendoerp.dynamic.app.data.DynamicAppVersion;
+import com.smf.securewebservices.service.BaseWebService;
+import com.smf.securewebservices.utils.WSResult;
+
+/**
+ * Publishes new app versions by uploading their bundle in resumable chunks.
+ * <ul>
+ * <li>POST {@code ?app=<id>&version=<name>&fileName=<file>&size=<bytes>[&sha256=<hash>]} starts an upload.</li>
+ * <li>PUT {@code ?upload=<id>} with an {@code Upload-Offset} header appends the body at that offset. The version is
+ * created when the last byte is received. A PUT sent while another one for the same upload is still being received
+ * is answered with 409 and the current offset.</li>
+ * <li>GET {@code ?upload=<id>} returns the offset to resume an interrupted upload from.</li>
+ * <li>DELETE {@code ?upload=<id>} cancels the upload.</li>
+ * </ul>
+ * The version is created with the permissions of the role of the token. Only the user and role that started an upload
+ * can continue, query or cancel it.
+ */
+public class AppBundleUploadServlet extends BaseWebService {
+  private static final Logger log = LogManager.getLogger();
+  private static final String UPLOAD_OFFSET = "Upload-Offset";
+
+  @Override
+  public void doPost(String path, HttpServletRequest request, HttpServletResponse response) throws Exception {
+    try {
+      String appId = request.getParameter("app");
+      String versionName = request.getParameter("version");
+      DynamicApp app = StringUtils.isEmpty(appId) ? null : OBDal.getInstance().get(DynamicApp.class, appId);
+      if (app == null || StringUtils.isEmpty(versionName)) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+        return;
+      }
+      // Refused before any byte is stored, and checked again when the version is created
+      checkWritable();
+      long size = NumberUtils.toLong(request.getParameter("size"), -1);
+      OBContext context = OBContext.getOBContext();
+      BundleUploadStore.Upload upload = BundleUploadStore.getInstance()
+          .create(app.getId(), versionName, request.getParameter("fileName"), size, request.getParameter("sha256"),
+              context.getUser().getId(), context.getRole().getId());
+      writeUpload(response, HttpServletResponse.SC_CREATED, upload, null);
+    } catch (OBSecurityException e) {
+      writeError(response, HttpServletResponse.SC_FORBIDDEN, e.getMessage());
+    } catch (OBException e) {
+      writeError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+    }
+  }
+
+  @Override
+  public void doPut(String path, HttpServletRequest request, HttpServletResponse response) throws Exception {
+    BundleUploadStore store = BundleUploadStore.getInstance();
+    BundleUploadStore.Upload upload = findUpload(store, request);
+    if (upload == null) {
+      writeError(response, HttpServletResponse.SC_NOT_FOUND, OBMessageUtils.messageBD("ETDAPP_UploadNotFound"));
+      return;
+    }
+    String offset = request.getHeader(UPLOAD_OFFSET);
+    try {
+      if (!store.append(upload, NumberUtils.toLong(offset, 0), request.getInputStream())) {
+        writeUpload(response, HttpServletResponse.SC_CONFLICT, upload, null);
+        return;
+      }
+      if (!upload.isComplete()) {
+        writeUpload(response, HttpServletResponse.SC_OK, upload, null);
+        return;
+      }
+      DynamicAppVersion version = publish(store, upload);
+      writeUpload(response, HttpServletResponse.SC_CREATED, upload, version);
+    } catch (FileAlreadyExistsException e) {
+      writeError(response, HttpServletResponse.SC_CONFLICT,
+          String.format(OBMessageUtils.messageBD("ETDAPP_UploadFileExists"), upload.getFileName()));
+    } catch (OBSecurityException e) {
+      writeError(response, HttpServletResponse.SC_FORBIDDEN, e.getMessage());
+    } catch (OBException e) {
+      writeError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+    }
+  }
+
+  @Override
+  public void doGet(String path, HttpServletRequest request, HttpServletResponse response) throws Exception {
+    BundleUploadStore.Upload upload = findUpload(BundleUploadStore.getInstance(), request);
+    if (upload == null) {
+      writeError(response, HttpServletResponse.SC_NOT_FOUND, OBMessageUtils.messageBD("ETDAPP_UploadNotFound"));
+      return;
+    }
+    response.setHeader(UPLOAD_OFFSET, String.valueOf(upload.getOffset()));
+    writeUpload(response, HttpServletResponse.SC_OK, upload, null);
+  }
+
+  @Override
+  public void doDelete(String path, HttpServletRequest request, HttpServletResponse response) throws Exception {
+    BundleUploadStore store = BundleUploadStore.getInstance();
+    BundleUploadStore.Upload upload = findUpload(store, request);
+    if (upload == null) {
+      writeError(response, HttpServletResponse.SC_NOT_FOUND, OBMessageUtils.messageBD("ETDAPP_UploadNotFound"));
+      return;
+    }
+    store.discard(upload);
+    response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+  }
+
+  /**
+   * Returns the upload of the request when it was started by the same user and role, so an upload cannot be
+   * continued or cancelled by anyone else who learns its id.
+   *
+   * @return the upload or null when it does not exist or belongs to someone else
+   */
+  private BundleUploadStore.Upload findUpload(BundleUploadStore store, HttpServletRequest request) throws Exception {
+    BundleUploadStore.Upload upload = store.get(request.getParameter("upload"));
+    OBContext context = OBContext.getOBContext();
+    if (upload == null || !upload.isOwnedBy(context.getUser().getId(), context.getRole().getId())) {
+      return null;
+    }
+    return upload;
+  }
+
+  /**
+   * Creates the version of the bundle in its own transaction and moves the bundle to the directory of the app once
+   * it is committed. The write access of the role is checked before anything is changed, and the version is removed
+   * again when the bundle cannot be moved, so a file is never left without its record nor a record without its file.
+   */
+  private DynamicAppVersion publish(BundleUploadStore store, BundleUploadStore.Upload upload) throws Exception {
+    checkWritable();
+    store.verify(upload);
+
+    DynamicApp app = OBDal.getInstance().get(DynamicApp.class, upload.getAppId());
+    Path directory = Paths.get(RoleAppResolver.resolveDirectory(app));
+    if (Files.exists(directory.resolve(upload.getFileName()))) {
+      throw new FileAlreadyExistsException(directory.resolve(upload.getFileName()).toString());
+    }
+    DynamicAppVersion version = OBProvider.getInstance().get(DynamicAppVersion.class);
+    try {
+      version.setOrganization(app.getOrganization());
+      version.setEtdappApp(app);
+      version.setName(upload.getVersionName());
+      version.setFileName(upload.getFileName());
+      version.setDefault(false);
+      version.setDevelopment(false);
+      OBDal.getInstance().save(version);
+      OBDal.getInstance().commitAndClose();
+    } catch (Exception e) {
+      OBDal.getInstance().rollbackAndClose();
+      throw e;
+    }
+
+    Path bundle;
+    try {
+      bundle = store.complete(upload, directory);
+    } catch (Exception e) {
+      removeVersion(version.getId());
+      throw e;
+    }
+    store.discard(upload);
+    // The metadata queued on commit may have been computed before the bundle was in place
+    BundleMetadataService.getInstance().enqueue(version.getId(), upload.getAppId(), upload.getFileName(), bundle);
+    return version;
+  }
+
+  /**
+   * Checks that the role of the token can write apps and their versions.
+   *
+   * @throws OBSecurityException
+   *     when it cannot
+   */
+  private static void checkWritable() {
+    EntityAccessChecker accessChecker = OBContext.getOBContext().getEntityAccessChecker();
+    accessChecker.checkWritable(ModelProvider.getInstance().getEntity(DynamicApp.ENTITY_NAME));
+    accessChecker.checkWritable(ModelProvider.getInstance().getEntity(DynamicAppVersion.ENTITY_NAME));
+  }
+
+  private void removeVersion(String versionId) {
+    try {
+      DynamicAppVersion version = OBDal.getInstance().get(DynamicAppVersion.class, versionId);
+      if (version != null) {
+        OBDal.getInstance().remove(version);
+      }
+      OBDal.getInstance().commitAndClose();
+    } catch (Exception e) {
+      OBDal.getInstance().rollbackAndClose();
+      log.error("Could not remove the version {} whose bundle could not be moved", versionId, e);
+    }
+  }
+
+  private void writeUpload(HttpServletResponse response, int status, BundleUploadStore.Upload upload,
+      DynamicAppVersion version) throws Exception {
+    JSONObject json = new JSONObject();
+    json.put("upload", upload.getId());
+    json.put("offset", upload.getOffset());
+    json.put("size", upload.getSize());
+    if (version != null) {
+      json.put("etdappAppVersion", version.getId());
+      json.put("sha256", upload.getSha256());
+    }
+    writeJson(response, status, json);
+  }
+
+  private void writeError(HttpServletResponse response, int status, String message) throws Exception {
+    JSONObject error = new JSONObject();
+    error.put("Error", message);
+    writeJson(response, status, error);
+  }
+
+  private void writeJson(HttpServletResponse response, int status, JSONObject json) throws Exception {
+    response.setStatus(status);
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    response.getWriter().write(json.toString());
+  }
+
+  @Override
+  public WSResult get(String path, Map<String, String> parameters) throws Exception {
+    return null;
+  }
+
+  @Override
+  public WSResult post(String path, Map<String, String> parameters, JSONObject body) throws Exception {
+    return null;
+  }
+
+  @Override
+  public WSResult put(String path, Map<String, String> parameters, JSONObject body) throws Exception {
+    return null;
+  }
+
+  @Override
+  public WSResult delete(String path, Map<String, String> parameters, JSONObject body) throws Exception {
+    return null;
+  }
+}
@@ -1,6 +1,10 @@
 package com.etendoerp.dynamic.app.service;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -8,25 +12,24 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.lang3.StringUtils;
 import org.codehaus.jettison.json.JSONArray;
 import org.codehaus.jettison.json.JSONObject;
-import org.hibernate.criterion.Restrictions;
 import org.openbravo.base.exception.OBException;
-import org.openbravo.dal.core.DalContextListener;
 import org.openbravo.dal.core.OBContext;
-import org.openbravo.dal.service.OBCriteria;
-import org.openbravo.dal.service.OBDal;
 import org.openbravo.erpCommon.utility.OBMessageUtils;
 import org.openbravo.model.ad.access.Role;
 
 import com.auth0.jwt.interfaces.DecodedJWT;
-import com.etendoerp.dynamic.app.data.DynamicApp;
-import com.etendoerp.dynamic.app.data.DynamicAppVersion;
-import com.etendoerp.dynamic.app.data.DynamicRoleApp;
+import com.etendoerp.dynamic.app.cache.AppCatalogCache;
+import com.etendoerp.dynamic.app.jfr.AppsRequestPhaseEvent;
 import com.smf.securewebservices.rsql.OBRestUtils;
 import com.smf.securewebservices.service.BaseWebService;
 import com.smf.securewebservices.utils.SecureWebServicesUtils;
 import com.smf.securewebservices.utils.WSResult;
 
 public class AppsForUserServlet extends BaseWebService {
+  private static final int SC_TOO_MANY_REQUESTS = 429;
+
+  private final RoleAppResolver resolver = new RoleAppResolver();
+  private final CatalogSync catalogSync = new CatalogSync(resolver);
 
   @Override
   public void doGet(String path, HttpServletRequest request, HttpServletResponse response) throws Exception {
@@ -36,71 +39,208 @@ public class AppsForUserServlet extends BaseWebService {
       token = authStr.substring(7);
     }
 
-    Map<String, String> requestParams = OBRestUtils.requestParamsToMap(request);
-    requestParams.put("token", token);
+    AppsRequestLimiter limiter = AppsRequestLimiter.isEnabled() ? AppsRequestLimiter.getInstance() : null;
+    if (limiter != null) {
+      long retryAfter = limiter.tryAcquire(token != null ? token : String.valueOf(request.getRemoteAddr()));
+      if (retryAfter > 0) {
+        writeTooManyRequests(response, retryAfter);
+        return;
+      }
+      if (!limiter.tryEnter()) {
+        writeTooManyRequests(response, 1);
+        return;
+      }
+    }
+    try {
+      Map<String, String> requestParams = OBRestUtils.requestParamsToMap(request);
+      requestParams.put("token", token);
 
-    WSResult result = get(path, requestParams);
-    OBRestUtils.writeWSResponse(result, response);
+      if (requestParams.get("since") == null) {
+        CompactCatalogFormat format = CompactCatalogFormat.negotiate(request.getHeader("Accept"));
+        String encoding = negotiateEncoding(request);
+        if (format != null || encoding != null) {
+          writeApps(format, encoding, requestParams, request, response);
+          return;
+        }
+      }
+      WSResult result = get(path, requestParams);
+      writeResponse(result, request, response);
+    } finally {
+      if (limiter != null) {
+        limiter.release();
+      }
+    }
   }
 
-  @Override
-  public WSResult get(String path, Map<String, String> requestParams) throws Exception {
-    String token = requestParams.get("token");
-    DecodedJWT decodedToken = SecureWebServicesUtils.decodeToken(token);
-    String roleId = decodedToken.getClaim("role").asString();
+  /**
+   * Writes the result, compressed with the encoding accepted by the client when it is big enough. The same URL
+   * returns a binary format for other {@code Accept} headers, so caches must tell them apart.
+   */
+  private void writeResponse(WSResult result, HttpServletRequest request, HttpServletResponse response)
+      throws Exception {
+    response.addHeader("Vary", "Accept");
+    String encoding = negotiateEncoding(request);
+    if (encoding == null) {
+      OBRestUtils.writeWSResponse(result, response);
+      return;
+    }
+    BufferedResponse buffered = new BufferedResponse(response);
+    OBRestUtils.writeWSResponse(result, buffered);
+    writeBody(buffered.getBody(), encoding, response);
+  }
 
-    JSONArray appsArray = new JSONArray();
-    WSResult wsResult = new WSResult();
+  /**
+   * Writes the apps of the role of the token straight from the resolved apps, in a binary format or as JSON when
+   * the format is null. Errors are written as JSON, as {@link #get} does.
+   * <p>
+   * The compressed responses of the whole app list are kept in the {@link AppCatalogCache} next to the apps they
+   * were written from, so they are only written and compressed again once the apps of the role change.
+   */
+  private void writeApps(CompactCatalogFormat format, String encoding, Map<String, String> requestParams,
+      HttpServletRequest request, HttpServletResponse response) throws Exception {
+    String roleId = decodeRoleId(requestParams.get("token"));
+    Set<String> installedVersionIds = parseInstalled(requestParams.get("installed"));
+    String variant = installedVersionIds == null && encoding != null
+        ? (format != null ? format.name() : "JSON") + ":" + encoding
+        : null;
+    byte[] body = null;
+    byte[] cached = null;
     try {
       OBContext.setAdminMode(true);
-      Role role = OBContext.getOBContext().getRole();
-      if (!StringUtils.isEmpty(roleId)) {
-        role = OBDal.getInstance().get(Role.class, roleId);
+      long resolutionStart = System.nanoTime();
+      Role targetRole = findRole(roleId);
+      List<ResolvedRoleApp> roleApps = getAvailableRoleApps(targetRole);
+      recordResolution(resolutionStart);
+      AppCatalogCache catalogCache = AppCatalogCache.getInstance();
+      cached = variant != null ? catalogCache.getResponse(targetRole.getId(), roleApps, variant) : null;
+      if (cached == null) {
+        AppsRequestPhaseEvent serializationEvent = AppsRequestPhaseEvent.start(AppsRequestPhaseEvent.SERIALIZATION);
+        body = format != null ? format.write(roleApps, installedVersionIds)
+            : writeJSON(roleApps, installedVersionIds, response);
+        serializationEvent.finish(targetRole.getId(), roleApps.size());
+        ResponseCompression compression = ResponseCompression.getInstance();
+        if (variant != null && compression.shouldCompress(body)) {
+          cached = compression.compress(body, encoding);
+          catalogCache.putResponse(targetRole.getId(), roleApps, variant, cached);
+        }
       }
+    } catch (OBException e) {
+      writeResponse(errorResult(WSResult.Status.NOT_FOUND, e), request, response);
+      return;
+    } catch (Exception e) {
+      writeResponse(errorResult(WSResult.Status.BAD_REQUEST, e), request, response);
+      return;
+    } finally {
+      OBContext.restorePreviousMode();
+    }
+    response.setStatus(HttpServletResponse.SC_OK);
+    if (format != null) {
+      response.setContentType(format.getContentType());
+    } else {
+      response.setContentType("application/json");
+      response.setCharacterEncoding("UTF-8");
+    }
+    response.addHeader("Vary", "Accept");
+    if (cached != null) {
+      response.addHeader("Vary", "Accept-Encoding");
+      response.setHeader("Content-Encoding", encoding);
+      response.setContentLength(cached.length);
+      response.getOutputStream().write(cached);
+    } else {
+      writeBody(body, encoding, response);
+    }
+  }
 
-      for (DynamicRoleApp roleApp : role.getETDAPPDynamicRoleAppList()) {
-        JSONObject roleAppJson = new JSONObject();
-
-        roleAppJson.put("id", roleApp.getId());
-        roleAppJson.put("etdappApp", roleApp.getEtdappApp().getId());
-        roleAppJson.put("etdappAppName", roleApp.getEtdappApp().getName());
-        DynamicAppVersion version = roleApp.getEtdappAppVersion() != null ? roleApp.getEtdappAppVersion() : getVersionDefault(roleApp.getEtdappApp());
-        roleAppJson.put("etdappAppVersion", version.getId());
-        roleAppJson.put("etdappAppVersionName", version.getName());
-        roleAppJson.put("etdappShareEnabled", version.isReceiveExternalFiles());
-        if (version.isDevelopment()) {
-          roleAppJson.put("etdappAppVersionIsDev", version.isDevelopment());
-        }
-        String strBaseDesign = DalContextListener.getServletContext().getRealPath("") + "src-loc/design/";
-        String strDirectory = roleApp.getEtdappApp().getDirectoryLocation();
-        String strFileName = version.getFileName();
+  /**
+   * Returns the apps as the JSON written by {@link #get}.
+   */
+  private static byte[] writeJSON(List<ResolvedRoleApp> roleApps, Set<String> installedVersionIds,
+      HttpServletResponse response) throws Exception {
+    WSResult wsResult = new WSResult();
+    wsResult.setStatus(WSResult.Status.OK);
+    wsResult.setData(toJSON(roleApps, installedVersionIds));
+    BufferedResponse buffered = new BufferedResponse(response);
+    OBRestUtils.writeWSResponse(wsResult, buffered);
+    return buffered.getBody();
+  }
 
-        strDirectory = strDirectory.replace("@basedesign@", strBaseDesign);
-        String strFinalPath = strDirectory + strFileName;
-        strFinalPath = strFinalPath.replace("//", "/");
+  private static JSONArray toJSON(List<ResolvedRoleApp> roleApps, Set<String> installedVersionIds)
+      throws Exception {
+    JSONArray appsArray = new JSONArray();
+    for (ResolvedRoleApp roleApp : roleApps) {
+      appsArray.put(installedVersionIds == null ? roleApp.toJSON() : roleApp.toJSON(installedVersionIds));
+    }
+    return appsArray;
+  }
 
-        roleAppJson.put("path", strFinalPath);
+  private static String negotiateEncoding(HttpServletRequest request) {
+    return ResponseCompression.isEnabled() ? ResponseCompression.negotiate(request.getHeader("Accept-Encoding"))
+        : null;
+  }
 
-        appsArray.put(roleAppJson);
+  /**
+   * Writes the body, compressed with the encoding when it is big enough.
+   *
+   * @param encoding
+   *     the encoding accepted by the client, null to write the body as it is
+   */
+  private static void writeBody(byte[] body, String encoding, HttpServletResponse response) throws Exception {
+    byte[] content = body;
+    if (encoding != null) {
+      ResponseCompression compression = ResponseCompression.getInstance();
+      response.addHeader("Vary", "Accept-Encoding");
+      if (compression.shouldCompress(body)) {
+        content = compression.compress(body, encoding);
+        response.setHeader("Content-Encoding", encoding);
       }
+    }
+    response.setContentLength(content.length);
+    response.getOutputStream().write(content);
+  }
+
+  private void writeTooManyRequests(HttpServletResponse response, long retryAfterSeconds) throws Exception {
+    response.setStatus(SC_TOO_MANY_REQUESTS);
+    response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    JSONObject error = new JSONObject();
+    error.put("Error", OBMessageUtils.messageBD("ETDAPP_TooManyRequests"));
+    response.getWriter().write(error.toString());
+  }
+
+  @Override
+  public WSResult get(String path, Map<String, String> requestParams) throws Exception {
+    String roleId = decodeRoleId(requestParams.get("token"));
+
+    WSResult wsResult = new WSResult();
+    try {
+      OBContext.setAdminMode(true);
+      long resolutionStart = System.nanoTime();
+      Role targetRole = findRole(roleId);
+
+      String since = requestParams.get("since");
+      if (since != null) {
+        JSONObject changes = catalogSync.getChanges(targetRole, parseSince(since));
+        recordResolution(resolutionStart);
+        wsResult.setStatus(WSResult.Status.OK);
+        wsResult.setData(changes);
+        return wsResult;
+      }
+
+      List<ResolvedRoleApp> roleApps = getAvailableRoleApps(targetRole);
+      recordResolution(resolutionStart);
+      Set<String> installedVersionIds = parseInstalled(requestParams.get("installed"));
+      AppsRequestPhaseEvent serializationEvent = AppsRequestPhaseEvent.start(AppsRequestPhaseEvent.SERIALIZATION);
+      JSONArray appsArray = toJSON(roleApps, installedVersionIds);
+      serializationEvent.finish(targetRole.getId(), roleApps.size());
 
       wsResult.setStatus(WSResult.Status.OK);
       wsResult.setData(appsArray);
 
     } catch (OBException e) {
-      wsResult.setStatus(WSResult.Status.NOT_FOUND);
-      JSONObject error = new JSONObject();
-      error.put("Error", e.getMessage());
-      appsArray.put(error);
-      wsResult.setData(appsArray);
-      return wsResult;
+      return errorResult(WSResult.Status.NOT_FOUND, e);
     } catch (Exception e) {
-      wsResult.setStatus(WSResult.Status.BAD_REQUEST);
-      JSONObject error = new JSONObject();
-      error.put("Error", e.getMessage());
-      appsArray.put(error);
-      wsResult.setData(appsArray);
-      return wsResult;
+      return errorResult(WSResult.Status.BAD_REQUEST, e);
     } finally {
       OBContext.restorePreviousMode();
     }
@@ -108,6 +248,85 @@ public class AppsForUserServlet extends BaseWebService {
     return wsResult;
   }
 
+  private static String decodeRoleId(String token) throws Exception {
+    AppsRequestPhaseEvent decodeEvent = AppsRequestPhaseEvent.start(AppsRequestPhaseEvent.TOKEN_DECODE);
+    DecodedJWT decodedToken = SecureWebServicesUtils.decodeToken(token);
+    String roleId = decodedToken.getClaim("role").asString();
+    decodeEvent.finish(roleId, 0);
+    return roleId;
+  }
+
+  private Role findRole(String roleId) {
+    AppsRequestPhaseEvent roleEvent = AppsRequestPhaseEvent.start(AppsRequestPhaseEvent.ROLE_LOOKUP);
+    Role targetRole = resolver.getRole(roleId);
+    roleEvent.finish(roleId, 0);
+    return targetRole;
+  }
+
+  /**
+   * Adapts the concurrency limit to the time the catalog took to resolve, leaving out the serialization, compression
+   * and writing of the response.
+   */
+  private static void recordResolution(long startNanos) {
+    if (AppsRequestLimiter.isEnabled()) {
+      AppsRequestLimiter.getInstance().recordLatency(System.nanoTime() - startNanos);
+    }
+  }
+
+  /**
+   * Returns the apps of the role, leaving out the versions whose bundle is broken when
+   * {@link BundleHealthCheck#isFilterEnabled() filtering} is enabled.
+   */
+  private List<ResolvedRoleApp> getAvailableRoleApps(Role role) throws Exception {
+    List<ResolvedRoleApp> roleApps = resolver.getRoleApps(role);
+    if (!BundleHealthCheck.isFilterEnabled()) {
+      return roleApps;
+    }
+    BundleHealthCheck healthCheck = BundleHealthCheck.getInstance();
+    List<ResolvedRoleApp> available = new ArrayList<>(roleApps.size());
+    for (ResolvedRoleApp roleApp : roleApps) {
+      if (!healthCheck.isBroken(roleApp.getVersionId())) {
+        available.add(roleApp);
+      }
+    }
+    // The cached list keeps its cached responses when no version is left out
+    return available.size() == roleApps.size() ? roleApps : available;
+  }
+
+  private static WSResult errorResult(WSResult.Status status, Exception e) throws Exception {
+    WSResult wsResult = new WSResult();
+    wsResult.setStatus(status);
+    JSONObject error = new JSONObject();
+    error.put("Error", e.getMessage());
+    JSONArray errors = new JSONArray();
+    errors.put(error);
+    wsResult.setData(errors);
+    return wsResult;
+  }
+
+  /**
+   * Returns the ids of the versions installed in the client, sent as a comma separated list, or null when the client
+   * did not send them.
+   */
+  private static Set<String> parseInstalled(String installed) {
+    if (installed == null) {
+      return null;
+    }
+    Set<String> versionIds = new HashSet<>();
+    for (String versionId : StringUtils.split(installed, ',')) {
+      versionIds.add(versionId.trim());
+    }
+    return versionIds;
+  }
+
+  private static long parseSince(String since) {
+    try {
+      return Long.parseLong(since);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(String.format(OBMessageUtils.messageBD("ETDAPP_InvalidSince"), since), e);
+    }
+  }
+
   @Override
   public WSResult post(String path, Map<String, String> parameters, JSONObject body) throws Exception {
     return null;
@@ -122,16 +341,4 @@ public class AppsForUserServlet extends BaseWebService {
   public WSResult delete(String path, Map<String, String> parameters, JSONObject body) throws Exception {
     return null;
   }
-
-  private DynamicAppVersion getVersionDefault(DynamicApp etdappApp) {
-    OBCriteria<DynamicAppVersion> cAppVersion = OBDal.getInstance().createCriteria(DynamicAppVersion.class);
-    cAppVersion.add(Restrictions.eq(DynamicAppVersion.PROPERTY_ETDAPPAPP, etdappApp));
-    cAppVersion.add(Restrictions.eq(DynamicAppVersion.PROPERTY_DEFAULT, true));
-    cAppVersion.setMaxResults(1);
-    DynamicAppVersion version = (DynamicAppVersion) cAppVersion.uniqueResult();
-    if (version == null) {
-      throw new OBException(String.format(OBMessageUtils.messageBD("ETDAPP_NoDefaultVersion"), etdappApp.getName()));
-    }
-    return version;
-  }
 }
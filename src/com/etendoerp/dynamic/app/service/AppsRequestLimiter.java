@@ -0,0 +1,140 @@
+package com.etendoerp.dynamic.app.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.etendoerp.dynamic.app.util.DynamicAppProperties;
+
+/**
+ * Protects the userApp service from misbehaving clients and from overloading the database.
+ * <p>
+ * Each client (token) gets a token bucket of {@code etdapp.ratelimit.perMinute} requests with bursts of
+ * {@code etdapp.ratelimit.burst}, implemented as a generic cell rate algorithm over a single {@link AtomicLong} so
+ * it is updated with a CAS and never locks. On top of that a global concurrency limit adapts to the time the requests
+ * take to resolve the catalog, the part that loads the database: it grows by one while they resolve it under
+ * {@code etdapp.concurrency.targetLatencyMs} and is halved when they do not, staying between {@code etdapp.concurrency.min} and {@code etdapp.concurrency.max}.
+ * <p>
+ * Both limits are disabled unless {@code etdapp.ratelimit.enabled} is {@code true}.
+ */
+public class AppsRequestLimiter {
+  private static final long DEFAULT_PER_MINUTE = 60;
+  private static final long DEFAULT_BURST = 10;
+  private static final int DEFAULT_MIN_CONCURRENCY = 4;
+  private static final int DEFAULT_MAX_CONCURRENCY = 64;
+  private static final long DEFAULT_TARGET_LATENCY_MS = 500;
+  private static final int MAX_TRACKED_CLIENTS = 10000;
+
+  private static AppsRequestLimiter instance;
+
+  private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+  private final long emissionIntervalNanos;
+  private final long burstToleranceNanos;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger concurrencyLimit;
+  private final int minConcurrency;
+  private final int maxConcurrency;
+  private final long targetLatencyNanos;
+
+  public static synchronized AppsRequestLimiter getInstance() {
+    if (instance == null) {
+      instance = new AppsRequestLimiter(DynamicAppProperties.getLong("etdapp.ratelimit.perMinute", DEFAULT_PER_MINUTE),
+          DynamicAppProperties.getLong("etdapp.ratelimit.burst", DEFAULT_BURST),
+          (int) DynamicAppProperties.getLong("etdapp.concurrency.min", DEFAULT_MIN_CONCURRENCY),
+          (int) DynamicAppProperties.getLong("etdapp.concurrency.max", DEFAULT_MAX_CONCURRENCY),
+          DynamicAppProperties.getLong("etdapp.concurrency.targetLatencyMs", DEFAULT_TARGET_LATENCY_MS));
+    }
+    return instance;
+  }
+
+  public AppsRequestLimiter(long requestsPerMinute, long burst, int minConcurrency, int maxConcurrency,
+      long targetLatencyMs) {
+    this.emissionIntervalNanos = TimeUnit.MINUTES.toNanos(1) / Math.max(1, requestsPerMinute);
+    this.burstToleranceNanos = emissionIntervalNanos * Math.max(0, burst - 1);
+    this.minConcurrency = Math.max(1, minConcurrency);
+    this.maxConcurrency = Math.max(this.minConcurrency, maxConcurrency);
+    this.concurrencyLimit = new AtomicInteger(this.maxConcurrency);
+    this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMs);
+  }
+
+  public static boolean isEnabled() {
+    return "true".equalsIgnoreCase(DynamicAppProperties.getString("etdapp.ratelimit.enabled", "false"));
+  }
+
+  /**
+   * Takes a token from the bucket of the client.
+   *
+   * @return 0 when the request is allowed, otherwise the seconds the client should wait before retrying
+   */
+  public long tryAcquire(String clientKey) {
+    long now = System.nanoTime();
+    AtomicLong bucket = buckets.get(clientKey);
+    if (bucket == null) {
+      if (buckets.size() >= MAX_TRACKED_CLIENTS) {
+        removeIdleBuckets(now);
+      }
+      bucket = buckets.computeIfAbsent(clientKey, key -> new AtomicLong(now));
+    }
+    while (true) {
+      long theoreticalArrival = bucket.get();
+      long allowedAt = theoreticalArrival - burstToleranceNanos;
+      if (now - allowedAt < 0) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(allowedAt - now + TimeUnit.SECONDS.toNanos(1) - 1));
+      }
+      long next = Math.max(theoreticalArrival, now) + emissionIntervalNanos;
+      if (bucket.compareAndSet(theoreticalArrival, next)) {
+        return 0;
+      }
+    }
+  }
+
+  /**
+   * Enters the global concurrency limit. Every successful call must be paired with {@link #release()}.
+   *
+   * @return false when the service is saturated and the request should be shed
+   */
+  public boolean tryEnter() {
+    while (true) {
+      int current = inFlight.get();
+      if (current >= concurrencyLimit.get()) {
+        return false;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Leaves the global concurrency limit.
+   */
+  public void release() {
+    inFlight.decrementAndGet();
+  }
+
+  /**
+   * Adapts the concurrency limit to the time a request took to resolve the catalog. Writing the response is left
+   * out, so slow clients or big responses do not shrink the limit.
+   */
+  public void recordLatency(long latencyNanos) {
+    if (latencyNanos > targetLatencyNanos) {
+      concurrencyLimit.updateAndGet(limit -> Math.max(minConcurrency, limit / 2));
+    } else {
+      concurrencyLimit.updateAndGet(limit -> Math.min(maxConcurrency, limit + 1));
+    }
+  }
+
+  public int getConcurrencyLimit() {
+    return concurrencyLimit.get();
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  private void removeIdleBuckets(long now) {
+    buckets.entrySet().removeIf(entry -> entry.getValue().get() - now <= 0);
+  }
+}
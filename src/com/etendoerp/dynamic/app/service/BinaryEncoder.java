@@ -0,0 +1,214 @@
+package com.etendoerp.dynamic.app.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the values of a response in a binary format, CBOR (RFC 8949) or MessagePack, using the shortest encoding of
+ * each value.
+ */
+abstract class BinaryEncoder {
+  protected final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+  static BinaryEncoder cbor() {
+    return new Cbor();
+  }
+
+  static BinaryEncoder messagePack() {
+    return new MessagePack();
+  }
+
+  abstract BinaryEncoder writeMapHeader(int size);
+
+  abstract BinaryEncoder writeArrayHeader(int size);
+
+  abstract BinaryEncoder writeString(String value);
+
+  abstract BinaryEncoder writeLong(long value);
+
+  abstract BinaryEncoder writeBoolean(boolean value);
+
+  abstract BinaryEncoder writeNull();
+
+  BinaryEncoder writeNullable(String value) {
+    return value != null ? writeString(value) : writeNull();
+  }
+
+  byte[] toByteArray() {
+    return output.toByteArray();
+  }
+
+  /**
+   * Writes the bytes of the value, most significant first.
+   */
+  protected void writeBigEndian(long value, int bytes) {
+    for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+      output.write((int) (value >>> shift));
+    }
+  }
+
+  private static class Cbor extends BinaryEncoder {
+    private static final int UNSIGNED = 0;
+    private static final int NEGATIVE = 1;
+    private static final int TEXT = 3;
+    private static final int ARRAY = 4;
+    private static final int MAP = 5;
+
+    @Override
+    BinaryEncoder writeMapHeader(int size) {
+      writeHeader(MAP, size);
+      return this;
+    }
+
+    @Override
+    BinaryEncoder writeArrayHeader(int size) {
+      writeHeader(ARRAY, size);
+      return this;
+    }
+
+    @Override
+    BinaryEncoder writeString(String value) {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeHeader(TEXT, bytes.length);
+      output.write(bytes, 0, bytes.length);
+      return this;
+    }
+
+    @Override
+    BinaryEncoder writeLong(long value) {
+      if (value >= 0) {
+        writeHeader(UNSIGNED, value);
+      } else {
+        writeHeader(NEGATIVE, -1 - value);
+      }
+      return this;
+    }
+
+    @Override
+    BinaryEncoder writeBoolean(boolean value) {
+      output.write(value ? 0xf5 : 0xf4);
+      return this;
+    }
+
+    @Override
+    BinaryEncoder writeNull() {
+      output.write(0xf6);
+      return this;
+    }
+
+    private void writeHeader(int majorType, long argument) {
+      int type = majorType << 5;
+      if (argument < 24) {
+        output.write(type | (int) argument);
+      } else if (argument <= 0xff) {
+        output.write(type | 24);
+        writeBigEndian(argument, 1);
+      } else if (argument <= 0xffff) {
+        output.write(type | 25);
+        writeBigEndian(argument, 2);
+      } else if (argument <= 0xffffffffL) {
+        output.write(type | 26);
+        writeBigEndian(argument, 4);
+      } else {
+        output.write(type | 27);
+        writeBigEndian(argument, 8);
+      }
+    }
+  }
+
+  private static class MessagePack extends BinaryEncoder {
+
+    @Override
+    BinaryEncoder writeMapHeader(int size) {
+      writeHeader(size, 0x80, 0xde, 0xdf);
+      return this;
+    }
+
+    @Override
+    BinaryEncoder writeArrayHeader(int size) {
+      writeHeader(size, 0x90, 0xdc, 0xdd);
+      return this;
+    }
+
+    @Override
+    BinaryEncoder writeString(String value) {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      if (bytes.length < 32) {
+        output.write(0xa0 | bytes.length);
+      } else if (bytes.length <= 0xff) {
+        output.write(0xd9);
+        writeBigEndian(bytes.length, 1);
+      } else if (bytes.length <= 0xffff) {
+        output.write(0xda);
+        writeBigEndian(bytes.length, 2);
+      } else {
+        output.write(0xdb);
+        writeBigEndian(bytes.length, 4);
+      }
+      output.write(bytes, 0, bytes.length);
+      return this;
+    }
+
+    @Override
+    BinaryEncoder writeLong(long value) {
+      if (value >= -32 && value < 128) {
+        output.write((int) value);
+      } else if (value > 0) {
+        writeUnsigned(value);
+      } else if (value >= Byte.MIN_VALUE) {
+        output.write(0xd0);
+        writeBigEndian(value, 1);
+      } else if (value >= Short.MIN_VALUE) {
+        output.write(0xd1);
+        writeBigEndian(value, 2);
+      } else if (value >= Integer.MIN_VALUE) {
+        output.write(0xd2);
+        writeBigEndian(value, 4);
+      } else {
+        output.write(0xd3);
+        writeBigEndian(value, 8);
+      }
+      return this;
+    }
+
+    private void writeUnsigned(long value) {
+      if (value <= 0xff) {
+        output.write(0xcc);
+        writeBigEndian(value, 1);
+      } else if (value <= 0xffff) {
+        output.write(0xcd);
+        writeBigEndian(value, 2);
+      } else if (value <= 0xffffffffL) {
+        output.write(0xce);
+        writeBigEndian(value, 4);
+      } else {
+        output.write(0xcf);
+        writeBigEndian(value, 8);
+      }
+    }
+
+    @Override
+    BinaryEncoder writeBoolean(boolean value) {
+      output.write(value ? 0xc3 : 0xc2);
+      return this;
+    }
+
+    @Override
+    BinaryEncoder writeNull() {
+      output.write(0xc0);
+      return this;
+    }
+
+    private void writeHeader(int size, int fixType, int type16, int type32) {
+      if (size < 16) {
+        output.write(fixType | size);
+      } else if (size <= 0xffff) {
+        output.write(type16);
+        writeBigEndian(size, 2);
+      } else {
+        output.write(type32);
+        writeBigEndian(size, 4);
+      }
+    }
+  }
+}
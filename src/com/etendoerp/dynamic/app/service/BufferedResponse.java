@@ -0,0 +1,85 @@
+package com.etendoerp.dynamic.app.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Keeps the body written to a response in memory, so it can be compressed before it is sent. Status and headers go
+ * to the wrapped response.
+ */
+class BufferedResponse extends HttpServletResponseWrapper {
+  private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+  private ServletOutputStream outputStream;
+  private PrintWriter writer;
+
+  BufferedResponse(HttpServletResponse response) {
+    super(response);
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() {
+    if (outputStream == null) {
+      outputStream = new ServletOutputStream() {
+        @Override
+        public void write(int b) {
+          body.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) {
+          body.write(bytes, off, len);
+        }
+
+        @Override
+        public boolean isReady() {
+          return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+    return outputStream;
+  }
+
+  @Override
+  public PrintWriter getWriter() {
+    if (writer == null) {
+      String encoding = getCharacterEncoding();
+      writer = new PrintWriter(new OutputStreamWriter(getOutputStream(),
+          encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8));
+    }
+    return writer;
+  }
+
+  @Override
+  public void setContentLength(int length) {
+    // The length of the body is set once it is compressed
+  }
+
+  @Override
+  public void setContentLengthLong(long length) {
+    // The length of the body is set once it is compressed
+  }
+
+  /**
+   * Returns the body written so far.
+   */
+  byte[] getBody() throws IOException {
+    if (writer != null) {
+      writer.flush();
+    }
+    return body.toByteArray();
+  }
+}
@@ -0,0 +1,320 @@
+package com.etendoerp.dynamic.app.service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.dal.service.OBDal;
+
+import com.etendoerp.dynamic.app.cache.BundleContentCache;
+import com.etendoerp.dynamic.app.util.DynamicAppProperties;
+
+/**
+ * Watches the directories of the bundles of the active versions, so a bundle overwritten in place by a developer or a
+ * deploy script gets its metadata computed again, its cached contents dropped and its {@link BundleHealthCheck}
+ * result updated.
+ * <p>
+ * Changes are collected until no file changes for {@code etdapp.bundleWatcher.debounceMillis} milliseconds, and then
+ * the versions of the changed files are queued in {@link BundleMetadataService} at once. The directories are read
+ * when the watcher starts, new ones are added when an app or version is saved, and the ones no active version uses
+ * anymore are dropped when an app changes its directory or an app or version is deleted. Set
+ * {@code etdapp.bundleWatcher.enabled} to {@code false} to disable it.
+ */
+public class BundleDirectoryWatcher implements Runnable {
+  private static final Logger log = LogManager.getLogger();
+  private static final String VERSIONS_SQL = "SELECT V.ETDAPP_APP_VERSION_ID, V.ETDAPP_APP_ID, V.FILENAME,"
+      + " A.DIRLOCATION FROM ETDAPP_APP_VERSION V JOIN ETDAPP_APP A ON A.ETDAPP_APP_ID = V.ETDAPP_APP_ID"
+      + " WHERE V.ISACTIVE = 'Y' AND A.ISACTIVE = 'Y'";
+  // Matches the file names of the changed files, directly in the app directory or in one of its subdirectories
+  private static final String FILE_NAME_CONDITION = "(V.FILENAME = ? OR V.FILENAME LIKE ?)";
+  private static final long DEFAULT_DEBOUNCE_MILLIS = 500;
+  private static final int MAX_FILES_PER_QUERY = 500;
+
+  private static BundleDirectoryWatcher instance;
+
+  private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+  private final long debounceMillis;
+  private final AtomicBoolean unwatchRequested = new AtomicBoolean();
+  private volatile WatchService watchService;
+
+  public static synchronized BundleDirectoryWatcher getInstance() {
+    if (instance == null) {
+      instance = new BundleDirectoryWatcher(
+          DynamicAppProperties.getLong("etdapp.bundleWatcher.debounceMillis", DEFAULT_DEBOUNCE_MILLIS));
+    }
+    return instance;
+  }
+
+  BundleDirectoryWatcher(long debounceMillis) {
+    this.debounceMillis = debounceMillis;
+  }
+
+  public static boolean isEnabled() {
+    return !"false".equalsIgnoreCase(DynamicAppProperties.getString("etdapp.bundleWatcher.enabled", "true"));
+  }
+
+  /**
+   * Starts watching the directories of the bundles in a background thread, unless it is already started.
+   */
+  public synchronized void start() throws IOException {
+    if (watchService != null) {
+      return;
+    }
+    watchService = FileSystems.getDefault().newWatchService();
+    Thread thread = new Thread(this, "etdapp-bundle-watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stops the watcher, if it was created.
+   */
+  public static synchronized void shutdown() throws IOException {
+    if (instance != null) {
+      instance.stop();
+      instance = null;
+    }
+  }
+
+  public synchronized void stop() throws IOException {
+    if (watchService != null) {
+      watchService.close();
+      watchService = null;
+      directories.clear();
+    }
+  }
+
+  /**
+   * Watches the directory, if the watcher is started and it is not watched yet. Missing directories are ignored,
+   * they are watched once a bundle is saved in them.
+   */
+  public void watch(Path directory) {
+    WatchService service = watchService;
+    Path normalized = directory.toAbsolutePath().normalize();
+    if (service == null || !Files.isDirectory(normalized) || directories.containsValue(normalized)) {
+      return;
+    }
+    try {
+      directories.put(normalized.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), normalized);
+    } catch (ClosedWatchServiceException e) {
+      // Stopped meanwhile
+    } catch (IOException e) {
+      log.warn("Could not watch the bundle directory {}", normalized, e);
+    }
+  }
+
+  /**
+   * Stops watching the directories no active version uses anymore. They are looked up by the watcher thread, so the
+   * transaction of the caller is not used.
+   */
+  public void unwatchUnused() {
+    unwatchRequested.set(true);
+  }
+
+  /**
+   * Cancels the watch of the directories that do not hold the bundle of any of the given versions.
+   */
+  void unwatchUnused(Collection<VersionBundle> versions) {
+    Set<Path> used = new HashSet<>();
+    for (VersionBundle bundle : versions) {
+      used.add(bundle.path.toAbsolutePath().normalize().getParent());
+    }
+    directories.entrySet().removeIf(entry -> {
+      if (used.contains(entry.getValue())) {
+        return false;
+      }
+      entry.getKey().cancel();
+      return true;
+    });
+  }
+
+  public int getWatchedCount() {
+    return directories.size();
+  }
+
+  @Override
+  public void run() {
+    WatchService service = watchService;
+    watchActiveVersions();
+    try {
+      Set<Path> changed = new LinkedHashSet<>();
+      while (true) {
+        // Wakes up every debounce period to handle the requests to unwatch directories
+        WatchKey key = service.poll(debounceMillis, TimeUnit.MILLISECONDS);
+        if (key != null) {
+          collect(key, changed);
+          continue;
+        }
+        if (!changed.isEmpty()) {
+          process(changed);
+          changed = new LinkedHashSet<>();
+        }
+        if (unwatchRequested.compareAndSet(true, false)) {
+          unwatchInactiveDirectories();
+        }
+      }
+    } catch (ClosedWatchServiceException e) {
+      log.debug("The bundle watcher was stopped");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      log.error("The bundle watcher stopped unexpectedly", e);
+    }
+  }
+
+  private void watchActiveVersions() {
+    try {
+      for (VersionBundle bundle : loadVersions(null)) {
+        watch(bundle.path.getParent());
+      }
+    } catch (Exception e) {
+      log.warn("Could not read the bundle directories, only the ones of the versions saved from now on are watched",
+          e);
+    }
+  }
+
+  private void unwatchInactiveDirectories() {
+    try {
+      unwatchUnused(loadVersions(null));
+    } catch (Exception e) {
+      log.warn("Could not read the bundle directories to drop the unused ones", e);
+    }
+  }
+
+  private void collect(WatchKey key, Set<Path> changed) {
+    Path directory = directories.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (directory == null) {
+        continue;
+      }
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        // Events were lost, any file of the directory may have changed
+        try (Stream<Path> files = Files.list(directory)) {
+          files.forEach(changed::add);
+        } catch (IOException e) {
+          log.warn("Could not list the bundle directory {}", directory, e);
+        }
+      } else {
+        changed.add(directory.resolve((Path) event.context()));
+      }
+    }
+    if (!key.reset()) {
+      directories.remove(key);
+    }
+  }
+
+  private void process(Set<Path> changed) {
+    try {
+      BundleMetadataService metadataService = BundleMetadataService.getInstance();
+      for (VersionBundle bundle : loadVersions(changed)) {
+        BundleContentCache.getInstance().invalidate(bundle.versionId);
+        BundleHealthCheck.getInstance().update(bundle);
+        metadataService.enqueue(bundle.versionId, bundle.appId, bundle.fileName, bundle.path);
+      }
+    } catch (Exception e) {
+      log.error("Could not update the metadata of the changed bundles {}", changed, e);
+    }
+  }
+
+  /**
+   * Returns the active versions whose bundle is one of the given files, or all of them when no files are given, in a
+   * transaction of its own.
+   */
+  static List<VersionBundle> loadVersions(Collection<Path> files) throws SQLException {
+    try {
+      return findVersions(OBDal.getInstance().getConnection(false), files);
+    } finally {
+      OBDal.getInstance().rollbackAndClose();
+    }
+  }
+
+  /**
+   * Returns the active versions whose bundle is one of the given files, or all of them when no files are given.
+   */
+  static List<VersionBundle> findVersions(Connection connection, Collection<Path> files) throws SQLException {
+    List<VersionBundle> bundles = new ArrayList<>();
+    if (files == null) {
+      query(connection, VERSIONS_SQL, new ArrayList<>(), null, bundles);
+      return bundles;
+    }
+    List<Path> pending = new ArrayList<>(files);
+    for (int from = 0; from < pending.size(); from += MAX_FILES_PER_QUERY) {
+      Set<Path> chunk = new LinkedHashSet<>(
+          pending.subList(from, Math.min(pending.size(), from + MAX_FILES_PER_QUERY)));
+      List<String> conditions = new ArrayList<>();
+      List<String> parameters = new ArrayList<>();
+      for (Path file : chunk) {
+        String fileName = file.getFileName().toString();
+        conditions.add(FILE_NAME_CONDITION);
+        parameters.add(fileName);
+        parameters.add("%/" + fileName);
+      }
+      query(connection, VERSIONS_SQL + " AND (" + String.join(" OR ", conditions) + ")", parameters, chunk, bundles);
+    }
+    return bundles;
+  }
+
+  private static void query(Connection connection, String sql, List<String> parameters, Set<Path> files,
+      List<VersionBundle> bundles) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      for (int i = 0; i < parameters.size(); i++) {
+        statement.setString(i + 1, parameters.get(i));
+      }
+      try (ResultSet rs = statement.executeQuery()) {
+        while (rs.next()) {
+          String fileName = rs.getString("FILENAME");
+          Path path = Paths.get(RoleAppResolver.resolveDirectory(rs.getString("DIRLOCATION")) + fileName)
+              .toAbsolutePath()
+              .normalize();
+          // The file name condition also matches files with the same name in other directories
+          if (files == null || files.contains(path)) {
+            bundles.add(new VersionBundle(rs.getString("ETDAPP_APP_VERSION_ID"), rs.getString("ETDAPP_APP_ID"),
+                fileName, path));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Bundle file of a version.
+   */
+  static class VersionBundle {
+    final String versionId;
+    final String appId;
+    final String fileName;
+    final Path path;
+
+    VersionBundle(String versionId, String appId, String fileName, Path path) {
+      this.versionId = versionId;
+      this.appId = appId;
+      this.fileName = fileName;
+      this.path = path;
+    }
+  }
+}
@@ -0,0 +1,252 @@
+package com.etendoerp.dynamic.app.service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import com.etendoerp.dynamic.app.util.DynamicAppProperties;
+
+/**
+ * Checks that the bundles of all the active versions exist and can be read, with
+ * {@code etdapp.bundleHealth.threads} threads at once, and keeps the results for
+ * {@code etdapp.bundleHealth.ttlMillis} milliseconds.
+ * <p>
+ * The apps returned to the users only look at the kept results, so they never read the disk: once the results are
+ * expired they are checked again in the background. Versions not checked yet are considered available. The
+ * {@link BundleDirectoryWatcher} updates the results of the bundles that change in the meantime.
+ */
+public class BundleHealthCheck {
+  private static final Logger log = LogManager.getLogger();
+  private static final long DEFAULT_TTL_MILLIS = 60_000;
+  private static final int DEFAULT_THREADS = 4;
+
+  private static BundleHealthCheck instance;
+
+  private final ExecutorService executor;
+  private final long ttlMillis;
+  private final AtomicBoolean refreshing = new AtomicBoolean();
+  private volatile Map<String, BundleStatus> statuses = Collections.emptyMap();
+  private volatile long checkedAt;
+
+  public static synchronized BundleHealthCheck getInstance() {
+    if (instance == null) {
+      int threads = (int) DynamicAppProperties.getLong("etdapp.bundleHealth.threads", DEFAULT_THREADS);
+      instance = new BundleHealthCheck(createExecutor(Math.max(1, threads)),
+          DynamicAppProperties.getLong("etdapp.bundleHealth.ttlMillis", DEFAULT_TTL_MILLIS));
+    }
+    return instance;
+  }
+
+  /**
+   * Stops the threads of the checks, if it was created.
+   */
+  public static synchronized void shutdown() {
+    if (instance != null) {
+      instance.executor.shutdownNow();
+      instance = null;
+    }
+  }
+
+  BundleHealthCheck(ExecutorService executor, long ttlMillis) {
+    this.executor = executor;
+    this.ttlMillis = ttlMillis;
+  }
+
+  private static ExecutorService createExecutor(int threads) {
+    AtomicInteger count = new AtomicInteger();
+    return Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "etdapp-bundle-health-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Returns whether the versions whose bundle is missing or unreadable are left out of the apps returned to the
+   * users, set by {@code etdapp.bundleHealth.filter}.
+   */
+  public static boolean isFilterEnabled() {
+    return "true".equalsIgnoreCase(DynamicAppProperties.getString("etdapp.bundleHealth.filter", "false"));
+  }
+
+  /**
+   * Returns whether the last check found the bundle of the version missing or unreadable. It never reads the disk,
+   * expired results are checked again in the background.
+   */
+  public boolean isBroken(String versionId) {
+    if (isExpired()) {
+      refreshInBackground();
+    }
+    BundleStatus status = statuses.get(versionId);
+    return status != null && status.state != State.AVAILABLE;
+  }
+
+  /**
+   * Returns the result of the last check, checking the bundles again first when it is expired or when asked to.
+   */
+  public Report getReport(boolean refresh) throws Exception {
+    refresh(refresh);
+    return new Report(statuses.values(), checkedAt);
+  }
+
+  private boolean isExpired() {
+    return System.currentTimeMillis() - checkedAt > ttlMillis;
+  }
+
+  /**
+   * Loads the versions in the executor and checks their bundles there, once at a time. The task does not wait for
+   * the checks it submits, so it never blocks a thread of the executor.
+   */
+  private void refreshInBackground() {
+    if (!refreshing.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      executor.execute(() -> {
+        try {
+          check(BundleDirectoryWatcher.loadVersions(null)).whenComplete((checked, e) -> {
+            refreshing.set(false);
+            if (e != null) {
+              log.warn("Could not check the bundles of the versions", e);
+            }
+          });
+        } catch (Exception e) {
+          refreshing.set(false);
+          log.warn("Could not load the versions to check their bundles", e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      refreshing.set(false);
+    }
+  }
+
+  private synchronized void refresh(boolean force) throws Exception {
+    // Requests waiting for a check in progress take its results
+    if (force || isExpired()) {
+      check(BundleDirectoryWatcher.loadVersions(null)).get();
+    }
+  }
+
+  /**
+   * Checks the given bundles in parallel and replaces the results with theirs once all are checked.
+   */
+  CompletableFuture<Void> check(Collection<BundleDirectoryWatcher.VersionBundle> bundles) {
+    List<CompletableFuture<BundleStatus>> futures = new ArrayList<>();
+    for (BundleDirectoryWatcher.VersionBundle bundle : bundles) {
+      futures.add(CompletableFuture.supplyAsync(() -> BundleStatus.of(bundle), executor));
+    }
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenRun(() -> {
+      Map<String, BundleStatus> checked = new HashMap<>();
+      for (CompletableFuture<BundleStatus> future : futures) {
+        BundleStatus status = future.join();
+        checked.put(status.bundle.versionId, status);
+      }
+      statuses = checked;
+      checkedAt = System.currentTimeMillis();
+    });
+  }
+
+  /**
+   * Checks the bundle of a version again, if it was checked before.
+   */
+  synchronized void update(BundleDirectoryWatcher.VersionBundle bundle) {
+    if (!statuses.containsKey(bundle.versionId)) {
+      return;
+    }
+    Map<String, BundleStatus> updated = new HashMap<>(statuses);
+    updated.put(bundle.versionId, BundleStatus.of(bundle));
+    statuses = updated;
+  }
+
+  public enum State {
+    AVAILABLE, MISSING, UNREADABLE
+  }
+
+  /**
+   * Result of the check of the bundle of a version.
+   */
+  static class BundleStatus {
+    private final BundleDirectoryWatcher.VersionBundle bundle;
+    private final State state;
+
+    private BundleStatus(BundleDirectoryWatcher.VersionBundle bundle, State state) {
+      this.bundle = bundle;
+      this.state = state;
+    }
+
+    static BundleStatus of(BundleDirectoryWatcher.VersionBundle bundle) {
+      Path path = bundle.path;
+      if (!Files.exists(path)) {
+        return new BundleStatus(bundle, State.MISSING);
+      }
+      boolean readable = Files.isRegularFile(path) && Files.isReadable(path);
+      return new BundleStatus(bundle, readable ? State.AVAILABLE : State.UNREADABLE);
+    }
+
+    State getState() {
+      return state;
+    }
+
+    JSONObject toJSON() throws JSONException {
+      JSONObject json = new JSONObject();
+      json.put("etdappAppId", bundle.appId);
+      json.put("etdappAppVersionId", bundle.versionId);
+      json.put("fileName", bundle.fileName);
+      json.put("state", state.name());
+      return json;
+    }
+  }
+
+  /**
+   * Bundles found missing or unreadable by a check.
+   */
+  public static class Report {
+    private final List<BundleStatus> broken = new ArrayList<>();
+    private final int checkedCount;
+    private final long checkedAt;
+
+    Report(Collection<BundleStatus> statuses, long checkedAt) {
+      for (BundleStatus status : statuses) {
+        if (status.state != State.AVAILABLE) {
+          broken.add(status);
+        }
+      }
+      this.checkedCount = statuses.size();
+      this.checkedAt = checkedAt;
+    }
+
+    public boolean isHealthy() {
+      return broken.isEmpty();
+    }
+
+    public JSONObject toJSON() throws JSONException {
+      JSONArray brokenBundles = new JSONArray();
+      for (BundleStatus status : broken) {
+        brokenBundles.put(status.toJSON());
+      }
+      JSONObject json = new JSONObject();
+      json.put("status", isHealthy() ? "UP" : "DEGRADED");
+      json.put("checked", checkedCount);
+      json.put("checkedAt", checkedAt);
+      json.put("broken", brokenBundles);
+      return json;
+    }
+  }
+}
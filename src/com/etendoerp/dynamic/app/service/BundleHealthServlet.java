@@ -0,0 +1,121 @@
+package com.etendoerp.dynamic.app.service;
+
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+import com.smf.securewebservices.rsql.OBRestUtils;
+import com.smf.securewebservices.service.BaseWebService;
+import com.smf.securewebservices.utils.WSResult;
+
+/**
+ * Reports the versions whose bundle is missing or unreadable, from the results kept by the
+ * {@link BundleHealthCheck}. Send {@code refresh=true} to check the bundles again.
+ * <p>
+ * The report covers the versions of every client, so only the System Administrator role can get it.
+ * <p>
+ * The status is 503 while any bundle is broken, so monitors and load balancers that only look at the status see the
+ * degraded report too.
+ */
+public class BundleHealthServlet extends BaseWebService {
+  private static final String SYSTEM_ADMINISTRATOR_ROLE = "0";
+
+  @Override
+  public void doGet(String path, HttpServletRequest request, HttpServletResponse response) throws Exception {
+    if (!isSystemAdministrator()) {
+      OBRestUtils.writeWSResponse(forbiddenResult(), response);
+      return;
+    }
+    BundleHealthCheck.Report report;
+    try {
+      report = getReport(OBRestUtils.requestParamsToMap(request));
+    } catch (Exception e) {
+      OBRestUtils.writeWSResponse(errorResult(e), response);
+      return;
+    }
+    OBRestUtils.writeWSResponse(reportResult(report),
+        report.isHealthy() ? response : new UnavailableResponse(response));
+  }
+
+  @Override
+  public WSResult get(String path, Map<String, String> parameters) throws Exception {
+    if (!isSystemAdministrator()) {
+      return forbiddenResult();
+    }
+    try {
+      return reportResult(getReport(parameters));
+    } catch (Exception e) {
+      return errorResult(e);
+    }
+  }
+
+  private BundleHealthCheck.Report getReport(Map<String, String> parameters) throws Exception {
+    return BundleHealthCheck.getInstance().getReport(Boolean.parseBoolean(parameters.get("refresh")));
+  }
+
+  private static boolean isSystemAdministrator() {
+    return SYSTEM_ADMINISTRATOR_ROLE.equals(OBContext.getOBContext().getRole().getId());
+  }
+
+  private WSResult forbiddenResult() throws Exception {
+    WSResult wsResult = new WSResult();
+    wsResult.setStatus(WSResult.Status.FORBIDDEN);
+    JSONObject error = new JSONObject();
+    error.put("Error", OBMessageUtils.messageBD("ETDAPP_BundleHealthForbidden"));
+    wsResult.setData(error);
+    return wsResult;
+  }
+
+  private WSResult reportResult(BundleHealthCheck.Report report) throws Exception {
+    WSResult wsResult = new WSResult();
+    wsResult.setStatus(WSResult.Status.OK);
+    wsResult.setData(report.toJSON());
+    return wsResult;
+  }
+
+  private WSResult errorResult(Exception e) throws Exception {
+    WSResult wsResult = new WSResult();
+    wsResult.setStatus(WSResult.Status.INTERNAL_SERVER_ERROR);
+    JSONObject error = new JSONObject();
+    error.put("Error", e.getMessage());
+    wsResult.setData(error);
+    return wsResult;
+  }
+
+  /**
+   * Sends the report with the status 503 instead of 200.
+   */
+  private static class UnavailableResponse extends HttpServletResponseWrapper {
+
+    private UnavailableResponse(HttpServletResponse response) {
+      super(response);
+      response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    @Override
+    public void setStatus(int status) {
+      super.setStatus(status == HttpServletResponse.SC_OK ? HttpServletResponse.SC_SERVICE_UNAVAILABLE : status);
+    }
+  }
+
+  @Override
+  public WSResult post(String path, Map<String, String> parameters, JSONObject body) throws Exception {
+    return null;
+  }
+
+  @Override
+  public WSResult put(String path, Map<String, String> parameters, JSONObject body) throws Exception {
+    return null;
+  }
+
+  @Override
+  public WSResult delete(String path, Map<String, String> parameters, JSONObject body) throws Exception {
+    return null;
+  }
+}
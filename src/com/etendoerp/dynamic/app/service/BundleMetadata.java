@@ -0,0 +1,167 @@
+package com.etendoerp.dynamic.app.service;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Deflater;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.openbravo.base.exception.OBException;
+
+import com.etendoerp.dynamic.app.data.DynamicAppVersion;
+
+/**
+ * Integrity and size information of the bundle of a version, so clients can verify the downloaded bundles and plan
+ * their downloads. It is computed in the background by {@link BundleMetadataService} when the version is saved, from
+ * the {@code <bundle>.manifest.json} written by {@code subapp.build} when there is one.
+ */
+public class BundleMetadata {
+  public static final String MANIFEST_SUFFIX = ".manifest.json";
+  private static final Logger log = LogManager.getLogger();
+  private static final int MAP_SIZE = 64 * 1024 * 1024;
+  // Header and trailer gzip writes around the deflated content
+  private static final int GZIP_OVERHEAD = 18;
+
+  private final String sha256;
+  private final long size;
+  private final long gzipSize;
+
+  public BundleMetadata(String sha256, long size, long gzipSize) {
+    this.sha256 = sha256;
+    this.size = size;
+    this.gzipSize = gzipSize;
+  }
+
+  /**
+   * Returns the metadata stored in the version, or null when it has not been computed yet.
+   */
+  public static BundleMetadata from(DynamicAppVersion version) {
+    if (version.getBundleSha256() == null) {
+      return null;
+    }
+    return new BundleMetadata(version.getBundleSha256(), toLong(version.getBundleSize()),
+        toLong(version.getBundleGzipSize()));
+  }
+
+  private static long toLong(Long value) {
+    return value != null ? value : 0L;
+  }
+
+  /**
+   * Returns the metadata listed in the manifest of the bundle, hashing and compressing the bundle when it has none.
+   */
+  public static BundleMetadata compute(Path bundle) throws IOException {
+    BundleMetadata metadata = fromManifest(bundle);
+    return metadata != null ? metadata : compute(bundle, MAP_SIZE);
+  }
+
+  public static Path getManifest(Path bundle) {
+    return bundle.resolveSibling(bundle.getFileName() + MANIFEST_SUFFIX);
+  }
+
+  /**
+   * Reads the metadata from the manifest of the bundle.
+   *
+   * @return null when there is no manifest, it is older than the bundle or it does not list the bundle and its gzip
+   *     copy with the size the bundle has
+   */
+  static BundleMetadata fromManifest(Path bundle) throws IOException {
+    Path manifest = getManifest(bundle);
+    FileTime bundleModified = Files.getLastModifiedTime(bundle);
+    if (!Files.isRegularFile(manifest) || Files.getLastModifiedTime(manifest).compareTo(bundleModified) < 0) {
+      return null;
+    }
+    try {
+      JSONArray artifacts = new JSONObject(new String(Files.readAllBytes(manifest), StandardCharsets.UTF_8))
+          .getJSONArray("artifacts");
+      String sha256 = null;
+      long size = -1;
+      long gzipSize = -1;
+      for (int i = 0; i < artifacts.length(); i++) {
+        JSONObject artifact = artifacts.getJSONObject(i);
+        String encoding = artifact.optString("encoding");
+        if ("identity".equals(encoding) && bundle.getFileName().toString().equals(artifact.optString("file"))) {
+          sha256 = artifact.optString("sha256", null);
+          size = artifact.optLong("size", -1);
+        } else if ("gzip".equals(encoding)) {
+          gzipSize = artifact.optLong("size", -1);
+        }
+      }
+      if (sha256 == null || gzipSize < 0 || size != Files.size(bundle)) {
+        return null;
+      }
+      return new BundleMetadata(sha256, size, gzipSize);
+    } catch (JSONException e) {
+      log.warn("Ignoring the invalid manifest {}", manifest, e);
+      return null;
+    }
+  }
+
+  /**
+   * Hashes and compresses the bundle through read-only mappings of at most the given size, so big bundles are
+   * neither copied to the heap nor kept mapped at once.
+   */
+  static BundleMetadata compute(Path bundle, int mapSize) throws IOException {
+    MessageDigest digest = createDigest();
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    byte[] output = new byte[64 * 1024];
+    long deflated = 0;
+    try (FileChannel channel = FileChannel.open(bundle, StandardOpenOption.READ)) {
+      long size = channel.size();
+      for (long position = 0; position < size; position += mapSize) {
+        MappedByteBuffer content = channel.map(FileChannel.MapMode.READ_ONLY, position,
+            Math.min(mapSize, size - position));
+        digest.update(content.duplicate());
+        deflater.setInput(content);
+        while (!deflater.needsInput()) {
+          deflated += deflater.deflate(output);
+        }
+      }
+      deflater.finish();
+      while (!deflater.finished()) {
+        deflated += deflater.deflate(output);
+      }
+      return new BundleMetadata(Hex.encodeHexString(digest.digest()), size, deflated + GZIP_OVERHEAD);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new OBException(e);
+    }
+  }
+
+  void addTo(JSONObject roleAppJson) throws JSONException {
+    roleAppJson.put("etdappBundleSha256", sha256);
+    roleAppJson.put("etdappBundleSize", size);
+    roleAppJson.put("etdappBundleGzipSize", gzipSize);
+  }
+
+  public String getSha256() {
+    return sha256;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public long getGzipSize() {
+    return gzipSize;
+  }
+}
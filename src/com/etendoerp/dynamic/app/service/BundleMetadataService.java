@@ -0,0 +1,174 @@
+package com.etendoerp.dynamic.app.service;
+
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.dal.service.OBDal;
+
+import com.etendoerp.dynamic.app.cache.AppCatalogCache;
+import com.etendoerp.dynamic.app.util.DynamicAppProperties;
+
+/**
+ * Computes the {@link BundleMetadata} of the saved versions in the background and stores it in the version.
+ * <p>
+ * Bundles are processed by {@code etdapp.bundleMetadata.threads} threads with a queue of at most
+ * {@code etdapp.bundleMetadata.queueSize} bundles. A version already queued is not queued again, and when the
+ * queue is full the bundle is skipped: its metadata is computed again the next time the version is saved. The
+ * metadata of a bundle that no longer exists is cleared.
+ */
+public class BundleMetadataService {
+  private static final Logger log = LogManager.getLogger();
+  // Updating the version makes incremental syncs return the metadata, and checking the file name keeps the metadata
+  // of a bundle replaced meanwhile from being stored
+  private static final String UPDATE_SQL = "UPDATE ETDAPP_APP_VERSION SET BUNDLE_SHA256 = ?, BUNDLE_SIZE = ?,"
+      + " BUNDLE_GZIP_SIZE = ?, UPDATED = CURRENT_TIMESTAMP WHERE ETDAPP_APP_VERSION_ID = ? AND FILENAME = ?";
+  private static final String CLEAR_SQL = "UPDATE ETDAPP_APP_VERSION SET BUNDLE_SHA256 = NULL, BUNDLE_SIZE = NULL,"
+      + " BUNDLE_GZIP_SIZE = NULL, UPDATED = CURRENT_TIMESTAMP WHERE ETDAPP_APP_VERSION_ID = ? AND FILENAME = ?"
+      + " AND BUNDLE_SHA256 IS NOT NULL";
+  private static final int DEFAULT_THREADS = 2;
+  private static final int DEFAULT_QUEUE_SIZE = 1000;
+
+  private static BundleMetadataService instance;
+
+  private final Executor executor;
+  private final Set<String> queued = ConcurrentHashMap.newKeySet();
+
+  public static synchronized BundleMetadataService getInstance() {
+    if (instance == null) {
+      int threads = (int) DynamicAppProperties.getLong("etdapp.bundleMetadata.threads", DEFAULT_THREADS);
+      int queueSize = (int) DynamicAppProperties.getLong("etdapp.bundleMetadata.queueSize", DEFAULT_QUEUE_SIZE);
+      instance = new BundleMetadataService(createExecutor(Math.max(1, threads), Math.max(1, queueSize)));
+    }
+    return instance;
+  }
+
+  /**
+   * Stops the threads of the service, if it was created. The queued versions are computed again when the watcher
+   * starts or the versions are saved.
+   */
+  public static synchronized void shutdown() {
+    if (instance != null && instance.executor instanceof ExecutorService) {
+      ((ExecutorService) instance.executor).shutdownNow();
+    }
+    instance = null;
+  }
+
+  BundleMetadataService(Executor executor) {
+    this.executor = executor;
+  }
+
+  private static ThreadPoolExecutor createExecutor(int threads, int queueSize) {
+    AtomicInteger count = new AtomicInteger();
+    ThreadFactory threadFactory = runnable -> {
+      Thread thread = new Thread(runnable, "etdapp-bundle-metadata-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueSize), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Queues the computation of the metadata of the bundle of a version. The version must be committed, the metadata
+   * is stored from another transaction.
+   *
+   * @return false when the version is already queued or the queue is full
+   */
+  public boolean enqueue(String versionId, String appId, String fileName, Path bundle) {
+    if (!queued.add(versionId)) {
+      return false;
+    }
+    try {
+      executor.execute(() -> process(versionId, appId, fileName, bundle));
+      return true;
+    } catch (RejectedExecutionException e) {
+      queued.remove(versionId);
+      log.warn("The bundle metadata queue is full, skipping version {}", versionId);
+      return false;
+    }
+  }
+
+  public int getQueuedCount() {
+    return queued.size();
+  }
+
+  private void process(String versionId, String appId, String fileName, Path bundle) {
+    // Saving the version again from now on queues it again
+    queued.remove(versionId);
+    try {
+      BundleMetadata metadata = BundleMetadata.compute(bundle);
+      if (store(versionId, appId, fileName, metadata)) {
+        AppCatalogCache.getInstance().invalidateApp(appId);
+      }
+    } catch (NoSuchFileException e) {
+      log.warn("The bundle {} of version {} does not exist", bundle, versionId);
+      clear(versionId, appId, fileName);
+    } catch (Exception e) {
+      log.error("Could not compute the metadata of the bundle {} of version {}", bundle, versionId, e);
+    }
+  }
+
+  private void clear(String versionId, String appId, String fileName) {
+    try {
+      if (store(versionId, appId, fileName, null)) {
+        AppCatalogCache.getInstance().invalidateApp(appId);
+      }
+    } catch (Exception e) {
+      log.error("Could not clear the metadata of the bundle of version {}", versionId, e);
+    }
+  }
+
+  /**
+   * Stores the metadata in the version and in the resolved role apps of its app.
+   *
+   * @param metadata
+   *     the metadata of the bundle, null to clear it when the bundle no longer exists
+   * @return false when the version was removed, its file name changed meanwhile or there was nothing to clear
+   */
+  boolean store(String versionId, String appId, String fileName, BundleMetadata metadata) throws SQLException {
+    try {
+      Connection connection = OBDal.getInstance().getConnection(false);
+      int updated;
+      try (PreparedStatement statement = connection.prepareStatement(metadata != null ? UPDATE_SQL : CLEAR_SQL)) {
+        int index = 1;
+        if (metadata != null) {
+          statement.setString(index++, metadata.getSha256());
+          statement.setLong(index++, metadata.getSize());
+          statement.setLong(index++, metadata.getGzipSize());
+        }
+        statement.setString(index++, versionId);
+        statement.setString(index, fileName);
+        updated = statement.executeUpdate();
+      }
+      if (updated > 0) {
+        ResolvedRoleAppStore.refreshApps(connection, Collections.singleton(appId));
+      }
+      OBDal.getInstance().commitAndClose();
+      if (updated > 0) {
+        CatalogSnapshot.getInstance().scheduleWrite();
+      }
+      return updated > 0;
+    } catch (SQLException | RuntimeException e) {
+      OBDal.getInstance().rollbackAndClose();
+      throw e;
+    }
+  }
+}
@@ -0,0 +1,468 @@
+package com.etendoerp.dynamic.app.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.codec.binary.Hex;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+import com.etendoerp.dynamic.app.util.DynamicAppProperties;
+
+/**
+ * Stores the bundles being uploaded until they are complete.
+ * <p>
+ * Each upload is appended in chunks to a part file in {@code etdapp.upload.dir}, next to a small descriptor, so an
+ * interrupted upload can be resumed from the last byte written, even after a restart. The SHA-256 of the bundle is
+ * computed while it is written and, once complete, the file is moved atomically to the directory of the app.
+ * <p>
+ * Uploads that receive no bytes for {@code etdapp.upload.ttlMillis} milliseconds are abandoned and their files removed,
+ * and a user can have at most {@code etdapp.upload.maxPerUser} uploads open at once.
+ */
+public class BundleUploadStore {
+  private static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+  private static final long DEFAULT_TTL_MILLIS = 24L * 60 * 60 * 1000;
+  private static final int DEFAULT_MAX_PER_USER = 5;
+  private static final int CHUNK_SIZE = 64 * 1024;
+  private static final String PART_EXTENSION = ".part";
+  private static final String DESCRIPTOR_EXTENSION = ".upload";
+
+  private static BundleUploadStore instance;
+
+  private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+  private final Path directory;
+  private final long maxBytes;
+  private final long ttlMillis;
+  private final int maxPerUser;
+
+  public static synchronized BundleUploadStore getInstance() {
+    if (instance == null) {
+      String defaultDirectory = Paths.get(System.getProperty("java.io.tmpdir"), "etdapp-uploads").toString();
+      instance = new BundleUploadStore(Paths.get(DynamicAppProperties.getString("etdapp.upload.dir", defaultDirectory)),
+          DynamicAppProperties.getLong("etdapp.upload.maxBytes", DEFAULT_MAX_BYTES),
+          DynamicAppProperties.getLong("etdapp.upload.ttlMillis", DEFAULT_TTL_MILLIS),
+          (int) DynamicAppProperties.getLong("etdapp.upload.maxPerUser", DEFAULT_MAX_PER_USER));
+    }
+    return instance;
+  }
+
+  public BundleUploadStore(Path directory, long maxBytes) {
+    this(directory, maxBytes, DEFAULT_TTL_MILLIS, DEFAULT_MAX_PER_USER);
+  }
+
+  public BundleUploadStore(Path directory, long maxBytes, long ttlMillis, int maxPerUser) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    this.ttlMillis = ttlMillis;
+    this.maxPerUser = maxPerUser;
+  }
+
+  /**
+   * Starts the upload of the bundle of a new version.
+   *
+   * @param sha256
+   *     expected hash of the bundle, checked when the upload completes. Optional.
+   * @param userId
+   *     user that starts the upload, the only one allowed to continue it
+   * @param roleId
+   *     role of that user, the one the version is created with
+   */
+  public synchronized Upload create(String appId, String versionName, String fileName, long size, String sha256,
+      String userId, String roleId) throws IOException {
+    if (size <= 0 || size > maxBytes) {
+      throw new OBException(String.format(OBMessageUtils.messageBD("ETDAPP_UploadInvalidSize"), maxBytes));
+    }
+    if (!isValidFileName(fileName)) {
+      throw new OBException(String.format(OBMessageUtils.messageBD("ETDAPP_UploadInvalidFileName"), fileName));
+    }
+    Files.createDirectories(directory);
+    purgeExpired();
+    long open = uploads.values().stream().filter(upload -> userId.equals(upload.userId)).count();
+    if (open >= maxPerUser) {
+      throw new OBException(String.format(OBMessageUtils.messageBD("ETDAPP_UploadLimitReached"), maxPerUser));
+    }
+    String id = UUID.randomUUID().toString().replace("-", "").toUpperCase();
+    Upload upload = new Upload(id, appId, versionName, fileName, size, sha256, userId, roleId);
+    Files.createFile(partFile(id));
+    upload.digest = newDigest();
+
+    Properties descriptor = new Properties();
+    descriptor.setProperty("appId", appId);
+    descriptor.setProperty("versionName", versionName);
+    descriptor.setProperty("fileName", fileName);
+    descriptor.setProperty("size", String.valueOf(size));
+    descriptor.setProperty("userId", userId);
+    descriptor.setProperty("roleId", roleId);
+    if (sha256 != null) {
+      descriptor.setProperty("sha256", sha256.toLowerCase());
+    }
+    try (Writer writer = Files.newBufferedWriter(descriptorFile(id), StandardCharsets.UTF_8)) {
+      descriptor.store(writer, null);
+    }
+    uploads.put(id, upload);
+    return upload;
+  }
+
+  /**
+   * Returns the upload, reading its descriptor when it was started before a restart.
+   *
+   * @return the upload or null when it does not exist or has expired
+   */
+  public Upload get(String id) throws IOException {
+    if (id == null || !id.matches("[0-9A-F]{32}")) {
+      return null;
+    }
+    if (isExpired(id)) {
+      discard(id);
+      return null;
+    }
+    Upload upload = uploads.get(id);
+    if (upload != null) {
+      return upload;
+    }
+    Path descriptorFile = descriptorFile(id);
+    if (!Files.isRegularFile(descriptorFile)) {
+      return null;
+    }
+    Properties descriptor = new Properties();
+    try (Reader reader = Files.newBufferedReader(descriptorFile, StandardCharsets.UTF_8)) {
+      descriptor.load(reader);
+    }
+    upload = new Upload(id, descriptor.getProperty("appId"), descriptor.getProperty("versionName"),
+        descriptor.getProperty("fileName"), Long.parseLong(descriptor.getProperty("size")),
+        descriptor.getProperty("sha256"), descriptor.getProperty("userId"), descriptor.getProperty("roleId"));
+    upload.offset = Files.size(partFile(id));
+    Upload existing = uploads.putIfAbsent(id, upload);
+    return existing != null ? existing : upload;
+  }
+
+  /**
+   * Appends the request body to the upload, streaming it to disk in chunks.
+   *
+   * @param offset
+   *     position of the first byte of the body in the bundle, which must be the current offset of the upload
+   * @return false when the offset does not match the bytes already received or another request is appending to the
+   *     upload, so the client has to resume from {@link Upload#getOffset()}
+   */
+  public boolean append(Upload upload, long offset, InputStream in) throws IOException {
+    // A request stalled on a slow link must not hold back the others, they are answered right away
+    if (!upload.lock.tryLock()) {
+      return false;
+    }
+    try {
+      if (offset != upload.offset) {
+        return false;
+      }
+      try (FileChannel channel = FileChannel.open(partFile(upload.id), StandardOpenOption.READ,
+          StandardOpenOption.WRITE)) {
+        channel.position(upload.offset);
+        MessageDigest digest = getDigest(upload, channel);
+        ReadableByteChannel source = Channels.newChannel(in);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        try {
+          while (source.read(buffer) >= 0) {
+            buffer.flip();
+            if (upload.offset + buffer.remaining() > upload.size) {
+              throw new OBException(String.format(OBMessageUtils.messageBD("ETDAPP_UploadInvalidSize"), upload.size));
+            }
+            digest.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+              upload.offset += channel.write(buffer);
+            }
+            buffer.clear();
+          }
+        } catch (IOException | RuntimeException e) {
+          // Keep what was written so the client can resume, the hash is recomputed from the file
+          upload.digest = null;
+          upload.offset = channel.size();
+          throw e;
+        }
+      }
+      return true;
+    } finally {
+      upload.lock.unlock();
+    }
+  }
+
+  /**
+   * Computes the hash of the complete bundle and checks it against the expected one, when one was given. An upload
+   * that does not match is discarded.
+   */
+  public void verify(Upload upload) throws IOException {
+    upload.lock.lock();
+    try {
+      if (!upload.isComplete()) {
+        throw new OBException(String.format(OBMessageUtils.messageBD("ETDAPP_UploadIncomplete"), upload.offset,
+            upload.size));
+      }
+      if (upload.sha256 == null) {
+        try (FileChannel channel = FileChannel.open(partFile(upload.id), StandardOpenOption.READ)) {
+          upload.sha256 = Hex.encodeHexString(getDigest(upload, channel).digest());
+          upload.digest = null;
+        }
+      }
+      if (upload.expectedSha256 != null && !upload.expectedSha256.equalsIgnoreCase(upload.sha256)) {
+        discard(upload);
+        throw new OBException(OBMessageUtils.messageBD("ETDAPP_UploadHashMismatch"));
+      }
+    } finally {
+      upload.lock.unlock();
+    }
+  }
+
+  /**
+   * Moves the complete bundle to the directory of the app, verifying it first.
+   *
+   * @return the path of the bundle
+   */
+  public Path complete(Upload upload, Path targetDirectory) throws IOException {
+    upload.lock.lock();
+    try {
+      verify(upload);
+      Path target = targetDirectory.resolve(upload.fileName);
+      if (Files.exists(target)) {
+        throw new FileAlreadyExistsException(target.toString());
+      }
+      Files.createDirectories(targetDirectory);
+      // Copy next to the target first so the final move is atomic even across file systems
+      Path staging = Files.createTempFile(targetDirectory, "." + upload.fileName, PART_EXTENSION);
+      try {
+        Files.copy(partFile(upload.id), staging, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(staging);
+      }
+      try {
+        writeManifest(upload, target);
+      } catch (IOException | RuntimeException e) {
+        Files.deleteIfExists(target);
+        throw e;
+      }
+      return target;
+    } finally {
+      upload.lock.unlock();
+    }
+  }
+
+  /**
+   * Writes the manifest of the bundle, in the format of the one of {@code subapp.build}, which records the bundle as
+   * written by this module.
+   */
+  private static void writeManifest(Upload upload, Path bundle) throws IOException {
+    try {
+      JSONObject artifact = new JSONObject();
+      artifact.put("file", upload.fileName);
+      artifact.put("encoding", "identity");
+      artifact.put("size", upload.size);
+      artifact.put("sha256", upload.sha256);
+      JSONObject manifest = new JSONObject();
+      manifest.put("bundleFileName", upload.fileName);
+      manifest.put("artifacts", new JSONArray().put(artifact));
+      Files.write(BundleMetadata.getManifest(bundle), manifest.toString().getBytes(StandardCharsets.UTF_8));
+    } catch (JSONException e) {
+      throw new OBException(e);
+    }
+  }
+
+  public void discard(Upload upload) throws IOException {
+    discard(upload.id);
+  }
+
+  private void discard(String id) throws IOException {
+    uploads.remove(id);
+    Files.deleteIfExists(partFile(id));
+    Files.deleteIfExists(descriptorFile(id));
+  }
+
+  /**
+   * Removes the files of the uploads that received no bytes for longer than the time to live, and loads the ones
+   * left so they count towards the limit of their user.
+   */
+  void purgeExpired() throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return;
+    }
+    Set<String> ids = new HashSet<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + DESCRIPTOR_EXTENSION)) {
+      for (Path file : files) {
+        String fileName = file.getFileName().toString();
+        ids.add(fileName.substring(0, fileName.length() - DESCRIPTOR_EXTENSION.length()));
+      }
+    }
+    // Part files left by a descriptor that could not be written
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + PART_EXTENSION)) {
+      for (Path file : files) {
+        String fileName = file.getFileName().toString();
+        String id = fileName.substring(0, fileName.length() - PART_EXTENSION.length());
+        if (!ids.contains(id) && isOlderThanTtl(file)) {
+          Files.deleteIfExists(file);
+        }
+      }
+    }
+    for (String id : ids) {
+      get(id);
+    }
+  }
+
+  /**
+   * Returns whether the upload received its last bytes longer than the time to live ago.
+   */
+  private boolean isExpired(String id) throws IOException {
+    Path partFile = partFile(id);
+    // Without its part file the upload cannot be resumed
+    return !Files.isRegularFile(partFile) || isOlderThanTtl(partFile);
+  }
+
+  private boolean isOlderThanTtl(Path file) throws IOException {
+    try {
+      return System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis() > ttlMillis;
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+  }
+
+  private MessageDigest getDigest(Upload upload, FileChannel channel) throws IOException {
+    if (upload.digest == null) {
+      MessageDigest digest = newDigest();
+      ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+      long position = 0;
+      while (position < upload.offset) {
+        buffer.clear();
+        buffer.limit((int) Math.min(CHUNK_SIZE, upload.offset - position));
+        int read = channel.read(buffer, position);
+        if (read < 0) {
+          break;
+        }
+        buffer.flip();
+        digest.update(buffer);
+        position += read;
+      }
+      upload.digest = digest;
+    }
+    return upload.digest;
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new OBException(e);
+    }
+  }
+
+  private static boolean isValidFileName(String fileName) {
+    return fileName != null && fileName.matches("[A-Za-z0-9._-]+") && !fileName.startsWith(".");
+  }
+
+  private Path partFile(String id) {
+    return directory.resolve(id + PART_EXTENSION);
+  }
+
+  private Path descriptorFile(String id) {
+    return directory.resolve(id + DESCRIPTOR_EXTENSION);
+  }
+
+  /**
+   * State of an upload in progress.
+   */
+  public static class Upload {
+    private final String id;
+    private final String appId;
+    private final String versionName;
+    private final String fileName;
+    private final long size;
+    private final String expectedSha256;
+    private final String userId;
+    private final String roleId;
+    // Held while the upload is written, its offset and hash are read without it
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile long offset;
+    private MessageDigest digest;
+    private volatile String sha256;
+
+    private Upload(String id, String appId, String versionName, String fileName, long size, String expectedSha256,
+        String userId, String roleId) {
+      this.id = id;
+      this.appId = appId;
+      this.versionName = versionName;
+      this.fileName = fileName;
+      this.size = size;
+      this.expectedSha256 = expectedSha256;
+      this.userId = userId;
+      this.roleId = roleId;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public String getAppId() {
+      return appId;
+    }
+
+    public String getVersionName() {
+      return versionName;
+    }
+
+    public String getFileName() {
+      return fileName;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public String getUserId() {
+      return userId;
+    }
+
+    /**
+     * Returns whether the upload was started by the user with the role, uploads started by others are not visible.
+     */
+    public boolean isOwnedBy(String userId, String roleId) {
+      return this.userId != null && this.userId.equals(userId) && this.roleId != null && this.roleId.equals(roleId);
+    }
+
+    public long getOffset() {
+      return offset;
+    }
+
+    public boolean isComplete() {
+      return offset == size;
+    }
+
+    /**
+     * Returns the hash of the bundle, available once the upload is completed.
+     */
+    public String getSha256() {
+      return sha256;
+    }
+  }
+}
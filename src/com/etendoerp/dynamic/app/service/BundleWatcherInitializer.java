@@ -0,0 +1,42 @@
+package com.etendoerp.dynamic.app.service;
+
+import java.io.IOException;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.client.kernel.ApplicationInitializer;
+
+/**
+ * Starts the {@link BundleDirectoryWatcher} when the application starts, unless it is disabled, and stops it with
+ * the threads of the {@link BundleMetadataService} and the {@link BundleHealthCheck} when the application stops.
+ */
+@ApplicationScoped
+public class BundleWatcherInitializer implements ApplicationInitializer {
+  private static final Logger logger = LogManager.getLogger();
+
+  @Override
+  public void initialize() {
+    if (!BundleDirectoryWatcher.isEnabled()) {
+      return;
+    }
+    try {
+      BundleDirectoryWatcher.getInstance().start();
+    } catch (IOException e) {
+      logger.warn("Could not start watching the bundle directories", e);
+    }
+  }
+
+  @PreDestroy
+  public void destroy() {
+    try {
+      BundleDirectoryWatcher.shutdown();
+    } catch (IOException e) {
+      logger.warn("Could not stop watching the bundle directories", e);
+    }
+    BundleMetadataService.shutdown();
+    BundleHealthCheck.shutdown();
+  }
+}
@@ -0,0 +1,135 @@
+package com.etendoerp.dynamic.app.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.openbravo.erpCommon.utility.SequenceIdData;
+
+/**
+ * Finds the apps of a set of roles that changed after a given time, for the incremental sync of the app list.
+ * <p>
+ * Additions and updates are found through the UPDATED columns of ETDAPP_ROLE_APP, ETDAPP_APP and the effective
+ * version in ETDAPP_APP_VERSION. Deletions leave a tombstone in ETDAPP_ROLE_APP_TOMBSTONE: a tombstone without role
+ * applies to every role, and one without app means the inheritance of the role changed.
+ */
+public class CatalogChangeStore {
+  private static final String APP = "A";
+  private static final String INHERITANCE = "I";
+  // The second column tells the apps from the roles whose inheritance changed
+  private static final String CHANGES_SQL = "SELECT RA.ETDAPP_APP_ID, '" + APP + "' FROM ETDAPP_ROLE_APP RA"
+      + " JOIN ETDAPP_APP A ON A.ETDAPP_APP_ID = RA.ETDAPP_APP_ID"
+      + " LEFT JOIN ETDAPP_APP_VERSION V ON V.ETDAPP_APP_ID = A.ETDAPP_APP_ID"
+      + " AND (V.ETDAPP_APP_VERSION_ID = RA.ETDAPP_APP_VERSION_ID"
+      + " OR (RA.ETDAPP_APP_VERSION_ID IS NULL AND V.ISDEFAULT = 'Y'))"
+      + " WHERE %s AND (RA.UPDATED > ? OR A.UPDATED > ? OR V.UPDATED > ?)"
+      + " UNION SELECT ETDAPP_APP_ID, '" + APP + "' FROM ETDAPP_ROLE_APP_TOMBSTONE"
+      + " WHERE DELETED > ? AND (AD_ROLE_ID IS NULL OR %s)"
+      + " UNION SELECT AD_ROLE_ID, '" + INHERITANCE + "' FROM AD_ROLE_INHERITANCE WHERE UPDATED > ? AND %s";
+  private static final String INSERT_SQL = "INSERT INTO ETDAPP_ROLE_APP_TOMBSTONE (ETDAPP_ROLE_APP_TOMBSTONE_ID,"
+      + " AD_CLIENT_ID, AD_ORG_ID, ISACTIVE, CREATED, CREATEDBY, UPDATED, UPDATEDBY, RECORD_ID, AD_ROLE_ID,"
+      + " ETDAPP_APP_ID, DELETED) VALUES (?, ?, ?, 'Y', ?, ?, ?, ?, ?, ?, ?, ?)";
+  private static final String PURGE_SQL = "DELETE FROM ETDAPP_ROLE_APP_TOMBSTONE WHERE DELETED < ?";
+
+  private CatalogChangeStore() {
+  }
+
+  /**
+   * Returns the apps of the roles added, changed or removed after the given time.
+   */
+  public static Changes getChanges(Connection connection, List<String> roleIds, Timestamp since)
+      throws SQLException {
+    String sql = String.format(CHANGES_SQL, ResolvedRoleAppStore.inClause("RA.AD_ROLE_ID", roleIds.size()),
+        ResolvedRoleAppStore.inClause("AD_ROLE_ID", roleIds.size()),
+        ResolvedRoleAppStore.inClause("AD_ROLE_ID", roleIds.size()));
+    Changes changes = new Changes();
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      int index = setRoles(statement, 1, roleIds);
+      statement.setTimestamp(index++, since);
+      statement.setTimestamp(index++, since);
+      statement.setTimestamp(index++, since);
+      statement.setTimestamp(index++, since);
+      index = setRoles(statement, index, roleIds);
+      statement.setTimestamp(index++, since);
+      setRoles(statement, index, roleIds);
+      try (ResultSet rs = statement.executeQuery()) {
+        while (rs.next()) {
+          String appId = rs.getString(1);
+          if (appId == null || INHERITANCE.equals(rs.getString(2))) {
+            changes.inheritanceChanged = true;
+          } else {
+            changes.appIds.add(appId);
+          }
+        }
+      }
+    }
+    return changes;
+  }
+
+  private static int setRoles(PreparedStatement statement, int index, List<String> roleIds) throws SQLException {
+    int next = index;
+    for (String roleId : roleIds) {
+      statement.setString(next++, roleId);
+    }
+    return next;
+  }
+
+  /**
+   * Records the deletion of a record, in the client and organization of the record and by the user that deleted it.
+   * The role is null when the deletion affects every role, the app is null when it changes the inheritance of the
+   * role.
+   */
+  public static void recordDeletion(Connection connection, String recordId, String roleId, String appId,
+      String clientId, String orgId, String userId, Timestamp deleted) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+      statement.setString(1, SequenceIdData.getUUID());
+      statement.setString(2, clientId);
+      statement.setString(3, orgId);
+      statement.setTimestamp(4, deleted);
+      statement.setString(5, userId);
+      statement.setTimestamp(6, deleted);
+      statement.setString(7, userId);
+      statement.setString(8, recordId);
+      statement.setString(9, roleId);
+      statement.setString(10, appId);
+      statement.setTimestamp(11, deleted);
+      statement.executeUpdate();
+    }
+  }
+
+  /**
+   * Removes the tombstones older than the given time.
+   *
+   * @return the number of tombstones removed
+   */
+  public static int purge(Connection connection, Timestamp before) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(PURGE_SQL)) {
+      statement.setTimestamp(1, before);
+      return statement.executeUpdate();
+    }
+  }
+
+  /**
+   * Apps changed after a given time.
+   */
+  public static class Changes {
+    private final Set<String> appIds = new HashSet<>();
+    private boolean inheritanceChanged;
+
+    public Set<String> getAppIds() {
+      return appIds;
+    }
+
+    /**
+     * Returns whether the inherited roles changed, in which case the whole app list must be sent.
+     */
+    public boolean isInheritanceChanged() {
+      return inheritanceChanged;
+    }
+  }
+}
@@ -0,0 +1,456 @@
+package com.etendoerp.dynamic.app.service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+import com.etendoerp.dynamic.app.cache.AppCatalogCache;
+import com.etendoerp.dynamic.app.util.DynamicAppProperties;
+
+/**
+ * Binary snapshot of ETDAPP_ROLE_APP_RESOLVED in {@code etdapp.catalog.snapshotFile}, so a node that starts can
+ * resolve the apps of the roles from the memory-mapped file instead of the database. By default the file is kept in
+ * the attachments directory of the instance, {@code attach.path}.
+ * <p>
+ * The snapshot records the database and context of the instance that wrote it, and is only served by the same one,
+ * so instances that share the file system never serve the catalog of another database.
+ * <p>
+ * The snapshot is served from the start until it is verified against the database in the background: the number of
+ * rows and the last update of the table must match the ones it was written with. A stale snapshot is discarded with
+ * the catalog cached from it. Afterwards the apps are read from the database again, as other nodes may change them.
+ * The file is written again, at most once every {@code etdapp.catalog.snapshotDelayMillis} milliseconds, when the
+ * catalog changes. Set {@code etdapp.catalog.snapshot} to {@code false} to disable it.
+ */
+public class CatalogSnapshot {
+  private static final Logger log = LogManager.getLogger();
+  private static final int MAGIC = 0x45544443;
+  private static final int FORMAT_VERSION = 2;
+  private static final String VERSION_SQL = "SELECT COUNT(*), MAX(UPDATED) FROM ETDAPP_ROLE_APP_RESOLVED";
+  private static final String ROWS_SQL = "SELECT AD_ROLE_ID, AD_CLIENT_ID, AD_ORG_ID, ETDAPP_ROLE_APP_ID,"
+      + " ETDAPP_APP_ID, APP_NAME, ETDAPP_APP_VERSION_ID, VERSION_NAME, SHARE_ENABLED, ISDEVELOPMENT, PATH,"
+      + " BUNDLE_SHA256, BUNDLE_SIZE, BUNDLE_GZIP_SIZE FROM ETDAPP_ROLE_APP_RESOLVED"
+      + " ORDER BY AD_ROLE_ID, ETDAPP_ROLE_APP_ID";
+  private static final long DEFAULT_DELAY_MILLIS = 5000;
+  private static final int SHARE_ENABLED = 1;
+  private static final int DEVELOPMENT = 2;
+  private static final int HAS_VERSION = 4;
+  private static final int HAS_BUNDLE = 8;
+
+  private static CatalogSnapshot instance;
+
+  private final Path file;
+  private final String instanceId;
+  private final long delayMillis;
+  private final AtomicBoolean writeScheduled = new AtomicBoolean();
+  private ScheduledExecutorService executor;
+  private volatile Snapshot serving;
+
+  public static synchronized CatalogSnapshot getInstance() {
+    if (instance == null) {
+      instance = new CatalogSnapshot(
+          Paths.get(DynamicAppProperties.getString("etdapp.catalog.snapshotFile", getDefaultFile().toString())),
+          getInstanceId(), DynamicAppProperties.getLong("etdapp.catalog.snapshotDelayMillis", DEFAULT_DELAY_MILLIS));
+    }
+    return instance;
+  }
+
+  CatalogSnapshot(Path file, String instanceId, long delayMillis) {
+    this.file = file;
+    this.instanceId = instanceId;
+    this.delayMillis = delayMillis;
+  }
+
+  private static Path getDefaultFile() {
+    String attachPath = DynamicAppProperties.getString("attach.path", null);
+    if (attachPath != null) {
+      return Paths.get(attachPath, "etdapp", "catalog.snapshot");
+    }
+    return Paths.get(System.getProperty("java.io.tmpdir"),
+        "etdapp-" + DynamicAppProperties.getString("context.name", "etendo") + "-catalog.snapshot");
+  }
+
+  /**
+   * Returns the database and context of this instance, the ones a snapshot must be written by to be served.
+   */
+  static String getInstanceId() {
+    return DynamicAppProperties.getString("bbdd.url", "") + "/" + DynamicAppProperties.getString("bbdd.sid", "")
+        + "/" + DynamicAppProperties.getString("context.name", "");
+  }
+
+  public static boolean isEnabled() {
+    return ResolvedRoleAppStore.isEnabled()
+        && !"false".equalsIgnoreCase(DynamicAppProperties.getString("etdapp.catalog.snapshot", "true"));
+  }
+
+  /**
+   * Maps the snapshot, if there is a valid one, and verifies it in the background.
+   */
+  public synchronized void start() {
+    if (executor != null) {
+      return;
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "etdapp-catalog-snapshot");
+      thread.setDaemon(true);
+      return thread;
+    });
+    serving = open(file, instanceId);
+    executor.execute(this::verify);
+  }
+
+  /**
+   * Stops writing the snapshot, if it was created. The snapshot in the file is kept for the next start.
+   */
+  public static synchronized void shutdown() {
+    if (instance != null) {
+      instance.stop();
+      instance = null;
+    }
+  }
+
+  synchronized void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+    serving = null;
+  }
+
+  public boolean isServing() {
+    return serving != null;
+  }
+
+  /**
+   * Returns the apps of the roles assigned in the given clients and organizations, grouped by role, as
+   * {@link ResolvedRoleAppStore#read} does.
+   *
+   * @return the apps, or null when the snapshot is not served
+   */
+  public Map<String, List<ResolvedRoleApp>> read(List<String> roleIds, List<String> clientIds,
+      List<String> orgIds) {
+    Snapshot snapshot = serving;
+    return snapshot != null ? snapshot.read(roleIds, new HashSet<>(clientIds), new HashSet<>(orgIds)) : null;
+  }
+
+  /**
+   * Writes the snapshot again once the pending changes of the catalog are committed.
+   */
+  public void scheduleWrite() {
+    ScheduledExecutorService scheduler = executor;
+    if (scheduler != null && writeScheduled.compareAndSet(false, true)) {
+      scheduler.schedule(() -> {
+        writeScheduled.set(false);
+        write();
+      }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void verify() {
+    Snapshot snapshot = serving;
+    if (snapshot == null) {
+      write();
+      return;
+    }
+    try {
+      Version version = readVersion(OBDal.getInstance().getConnection(false));
+      serving = null;
+      if (!version.equals(snapshot.version)) {
+        log.info("The catalog snapshot {} is stale, writing it again", file);
+        AppCatalogCache.getInstance().invalidateAll();
+        write();
+      }
+    } catch (Exception e) {
+      serving = null;
+      AppCatalogCache.getInstance().invalidateAll();
+      log.warn("Could not verify the catalog snapshot {}", file, e);
+    } finally {
+      OBDal.getInstance().rollbackAndClose();
+    }
+  }
+
+  private void write() {
+    try {
+      write(OBDal.getInstance().getConnection(false), file, instanceId);
+    } catch (Exception e) {
+      log.warn("Could not write the catalog snapshot {}", file, e);
+    } finally {
+      OBDal.getInstance().rollbackAndClose();
+    }
+  }
+
+  /**
+   * Writes the rows of ETDAPP_ROLE_APP_RESOLVED to a temporary file that then replaces the snapshot, so a mapped
+   * snapshot is never changed.
+   */
+  static void write(Connection connection, Path file, String instanceId) throws SQLException, IOException {
+    Version version = readVersion(connection);
+    Path directory = Files.createDirectories(file.toAbsolutePath().getParent());
+    Path temporary = Files.createTempFile(directory, "etdapp-catalog", ".tmp");
+    try {
+      try (PreparedStatement statement = connection.prepareStatement(ROWS_SQL);
+          ResultSet rs = statement.executeQuery();
+          DataOutputStream output = new DataOutputStream(
+              new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+        writeSnapshot(output, instanceId, version, rs);
+      }
+      Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  private static Version readVersion(Connection connection) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(VERSION_SQL);
+        ResultSet rs = statement.executeQuery()) {
+      rs.next();
+      Timestamp updated = rs.getTimestamp(2);
+      return new Version(rs.getLong(1), updated != null ? updated.getTime() : 0);
+    }
+  }
+
+  /**
+   * Writes the header, the rows grouped by role and, at the end, the offset and number of rows of each role.
+   */
+  private static void writeSnapshot(DataOutputStream output, String instanceId, Version version, ResultSet rs)
+      throws SQLException, IOException {
+    output.writeInt(MAGIC);
+    output.writeInt(FORMAT_VERSION);
+    output.writeUTF(instanceId);
+    output.writeLong(version.rowCount);
+    output.writeLong(version.updated);
+    Map<String, long[]> index = new LinkedHashMap<>();
+    while (rs.next()) {
+      long[] roleRows = index.computeIfAbsent(rs.getString("AD_ROLE_ID"), id -> new long[] { output.size(), 0 });
+      roleRows[1]++;
+      writeRow(output, rs);
+    }
+    long indexOffset = output.size();
+    output.writeInt(index.size());
+    for (Map.Entry<String, long[]> role : index.entrySet()) {
+      output.writeUTF(role.getKey());
+      output.writeLong(role.getValue()[0]);
+      output.writeInt((int) role.getValue()[1]);
+    }
+    output.writeLong(indexOffset);
+  }
+
+  private static void writeRow(DataOutputStream output, ResultSet rs) throws SQLException, IOException {
+    String versionId = rs.getString("ETDAPP_APP_VERSION_ID");
+    String sha256 = rs.getString("BUNDLE_SHA256");
+    int flags = ("Y".equals(rs.getString("SHARE_ENABLED")) ? SHARE_ENABLED : 0)
+        | ("Y".equals(rs.getString("ISDEVELOPMENT")) ? DEVELOPMENT : 0) | (versionId != null ? HAS_VERSION : 0)
+        | (sha256 != null ? HAS_BUNDLE : 0);
+    output.writeByte(flags);
+    output.writeUTF(rs.getString("AD_CLIENT_ID"));
+    output.writeUTF(rs.getString("AD_ORG_ID"));
+    output.writeUTF(rs.getString("ETDAPP_ROLE_APP_ID"));
+    output.writeUTF(rs.getString("ETDAPP_APP_ID"));
+    output.writeUTF(rs.getString("APP_NAME"));
+    if (versionId != null) {
+      output.writeUTF(versionId);
+      writeNullable(output, rs.getString("VERSION_NAME"));
+      writeNullable(output, rs.getString("PATH"));
+    }
+    if (sha256 != null) {
+      output.writeUTF(sha256);
+      output.writeLong(rs.getLong("BUNDLE_SIZE"));
+      output.writeLong(rs.getLong("BUNDLE_GZIP_SIZE"));
+    }
+  }
+
+  private static void writeNullable(DataOutputStream output, String value) throws IOException {
+    output.writeBoolean(value != null);
+    if (value != null) {
+      output.writeUTF(value);
+    }
+  }
+
+  private static String readNullable(DataInputStream input) throws IOException {
+    return input.readBoolean() ? input.readUTF() : null;
+  }
+
+  /**
+   * Maps the snapshot and reads its index of roles.
+   *
+   * @return the snapshot, or null when there is none, it is not valid or it was written by another instance
+   */
+  static Snapshot open(Path file, String instanceId) {
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      // The mapping stays valid once the channel is closed
+      MappedByteBuffer content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      DataInputStream header = input(content, 0);
+      if (header.readInt() != MAGIC || header.readInt() != FORMAT_VERSION) {
+        log.warn("Ignoring the catalog snapshot {}, it has another format", file);
+        return null;
+      }
+      if (!instanceId.equals(header.readUTF())) {
+        log.warn("Ignoring the catalog snapshot {}, it was written by another instance", file);
+        return null;
+      }
+      Version version = new Version(header.readLong(), header.readLong());
+      DataInputStream index = input(content, (int) content.getLong(content.limit() - Long.BYTES));
+      Map<String, long[]> roles = new HashMap<>();
+      for (int i = index.readInt(); i > 0; i--) {
+        roles.put(index.readUTF(), new long[] { index.readLong(), index.readInt() });
+      }
+      return new Snapshot(content, version, roles);
+    } catch (Exception e) {
+      log.warn("Ignoring the catalog snapshot {}, it cannot be read", file, e);
+      return null;
+    }
+  }
+
+  private static DataInputStream input(ByteBuffer content, int offset) {
+    ByteBuffer buffer = content.duplicate();
+    buffer.position(offset);
+    return new DataInputStream(new InputStream() {
+      @Override
+      public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+      }
+
+      @Override
+      public int read(byte[] bytes, int off, int len) {
+        if (!buffer.hasRemaining()) {
+          return -1;
+        }
+        int count = Math.min(len, buffer.remaining());
+        buffer.get(bytes, off, count);
+        return count;
+      }
+    });
+  }
+
+  /**
+   * Mapped snapshot, read by several threads at once.
+   */
+  static class Snapshot {
+    private final ByteBuffer content;
+    private final Version version;
+    private final Map<String, long[]> roles;
+
+    private Snapshot(ByteBuffer content, Version version, Map<String, long[]> roles) {
+      this.content = content;
+      this.version = version;
+      this.roles = roles;
+    }
+
+    Map<String, List<ResolvedRoleApp>> read(Collection<String> roleIds, Set<String> clientIds, Set<String> orgIds) {
+      Map<String, List<ResolvedRoleApp>> roleApps = new HashMap<>();
+      try {
+        for (String roleId : roleIds) {
+          long[] roleRows = roles.get(roleId);
+          if (roleRows == null) {
+            continue;
+          }
+          DataInputStream input = input(content, (int) roleRows[0]);
+          for (long i = 0; i < roleRows[1]; i++) {
+            ResolvedRoleApp roleApp = readRow(input, clientIds, orgIds);
+            if (roleApp != null) {
+              roleApps.computeIfAbsent(roleId, id -> new ArrayList<>()).add(roleApp);
+            }
+          }
+        }
+      } catch (IOException e) {
+        throw new OBException("Could not read the catalog snapshot", e);
+      }
+      return roleApps;
+    }
+
+    /**
+     * Reads the next row, returning null when it belongs to another client or organization.
+     *
+     * @throws OBException
+     *     when the app has no version and no default version, as {@link ResolvedRoleAppStore#read} does
+     */
+    private static ResolvedRoleApp readRow(DataInputStream input, Set<String> clientIds, Set<String> orgIds)
+        throws IOException {
+      int flags = input.readByte();
+      String clientId = input.readUTF();
+      String orgId = input.readUTF();
+      String roleAppId = input.readUTF();
+      String appId = input.readUTF();
+      String appName = input.readUTF();
+      String versionId = null;
+      String versionName = null;
+      String path = null;
+      if ((flags & HAS_VERSION) != 0) {
+        versionId = input.readUTF();
+        versionName = readNullable(input);
+        path = readNullable(input);
+      }
+      BundleMetadata bundle = null;
+      if ((flags & HAS_BUNDLE) != 0) {
+        bundle = new BundleMetadata(input.readUTF(), input.readLong(), input.readLong());
+      }
+      if (!clientIds.contains(clientId) || !orgIds.contains(orgId)) {
+        return null;
+      }
+      if (versionId == null) {
+        throw new OBException(String.format(OBMessageUtils.messageBD("ETDAPP_NoDefaultVersion"), appName));
+      }
+      return new ResolvedRoleApp(roleAppId, appId, appName, versionId, versionName, (flags & SHARE_ENABLED) != 0,
+          (flags & DEVELOPMENT) != 0, RoleAppResolver.resolveDirectory(path).replace("//", "/"), bundle);
+    }
+  }
+
+  /**
+   * Number of rows and last update of ETDAPP_ROLE_APP_RESOLVED, which change whenever the catalog does.
+   */
+  private static class Version {
+    private final long rowCount;
+    private final long updated;
+
+    private Version(long rowCount, long updated) {
+      this.rowCount = rowCount;
+      this.updated = updated;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Version && ((Version) obj).rowCount == rowCount && ((Version) obj).updated == updated;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(rowCount) * 31 + Long.hashCode(updated);
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package com.etendoerp.dynamic.app.service;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+
+import org.openbravo.client.kernel.ApplicationInitializer;
+
+/**
+ * Maps the {@link CatalogSnapshot} when the application starts, unless it is disabled, and stops writing it when the
+ * application stops.
+ */
+@ApplicationScoped
+public class CatalogSnapshotInitializer implements ApplicationInitializer {
+
+  @Override
+  public void initialize() {
+    if (CatalogSnapshot.isEnabled()) {
+      CatalogSnapshot.getInstance().start();
+    }
+  }
+
+  @PreDestroy
+  public void destroy() {
+    CatalogSnapshot.shutdown();
+  }
+}
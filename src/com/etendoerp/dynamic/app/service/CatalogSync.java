@@ -0,0 +1,78 @@
+package com.etendoerp.dynamic.app.service;
+
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONObject;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.model.ad.access.Role;
+
+import com.etendoerp.dynamic.app.util.DynamicAppProperties;
+
+/**
+ * Builds the incremental sync of the app list of a role: the apps added or changed since a given time in
+ * {@code changed} and the ids of the apps no longer available in {@code removed}. Clients keep their list by app and
+ * send the returned {@code timestamp} as {@code since} in their next request.
+ * <p>
+ * The returned timestamp is {@code etdapp.sync.windowSeconds} seconds behind the server clock, so changes committed
+ * late or by a node with a slightly different clock are sent again rather than missed. When {@code since} is older
+ * than the tombstones kept, {@code etdapp.sync.retentionDays} days, or the inheritance of the role changed, the
+ * whole list is sent with {@code full} set to true and the client must replace its list.
+ */
+public class CatalogSync {
+  private static final long DEFAULT_WINDOW_SECONDS = 60;
+  private static final long DEFAULT_RETENTION_DAYS = 30;
+
+  private final RoleAppResolver resolver;
+
+  public CatalogSync(RoleAppResolver resolver) {
+    this.resolver = resolver;
+  }
+
+  public JSONObject getChanges(Role role, long since) throws Exception {
+    long now = System.currentTimeMillis();
+    JSONObject sync = new JSONObject();
+    sync.put("timestamp", now - TimeUnit.SECONDS.toMillis(DynamicAppProperties.getLong("etdapp.sync.windowSeconds",
+        DEFAULT_WINDOW_SECONDS)));
+
+    JSONArray changed = new JSONArray();
+    JSONArray removed = new JSONArray();
+    boolean full = since < now - TimeUnit.DAYS.toMillis(getRetentionDays());
+    CatalogChangeStore.Changes changes = null;
+    if (!full) {
+      changes = CatalogChangeStore.getChanges(OBDal.getInstance().getConnection(false),
+          resolver.getEffectiveRoles(role), new Timestamp(since));
+      full = changes.isInheritanceChanged();
+    }
+
+    if (full) {
+      for (ResolvedRoleApp roleApp : resolver.getRoleApps(role)) {
+        changed.put(roleApp.toJSON());
+      }
+    } else if (!changes.getAppIds().isEmpty()) {
+      // The cached list may predate the changes just found, read the current one
+      Set<String> removedAppIds = new HashSet<>(changes.getAppIds());
+      List<ResolvedRoleApp> roleApps = resolver.loadRoleApps(role);
+      for (ResolvedRoleApp roleApp : roleApps) {
+        if (removedAppIds.remove(roleApp.getAppId())) {
+          changed.put(roleApp.toJSON());
+        }
+      }
+      for (String appId : removedAppIds) {
+        removed.put(appId);
+      }
+    }
+    sync.put("full", full);
+    sync.put("changed", changed);
+    sync.put("removed", removed);
+    return sync;
+  }
+
+  public static long getRetentionDays() {
+    return DynamicAppProperties.getLong("etdapp.sync.retentionDays", DEFAULT_RETENTION_DAYS);
+  }
+}
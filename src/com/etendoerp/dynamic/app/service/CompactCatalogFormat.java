@@ -0,0 +1,93 @@
+package com.etendoerp.dynamic.app.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Binary formats of the apps of a role that clients can ask for through the {@code Accept} header, instead of JSON.
+ * <p>
+ * The apps are written straight from the {@link ResolvedRoleApp} as a map with the names of the values, sent once,
+ * and the values of each app in the same order:
+ * {@code {"fields": ["id", "etdappApp", ...], "apps": [["roleAppId", "appId", ...], ...]}}. The values left out of
+ * the JSON of an app are null.
+ */
+public enum CompactCatalogFormat {
+  CBOR("application/cbor", BinaryEncoder::cbor, "application/cbor"),
+  MESSAGE_PACK("application/msgpack", BinaryEncoder::messagePack, "application/msgpack", "application/x-msgpack",
+      "application/vnd.msgpack");
+
+  private static final String JSON = "application/json";
+
+  private final String contentType;
+  private final Supplier<BinaryEncoder> encoder;
+  private final List<String> mediaTypes;
+
+  CompactCatalogFormat(String contentType, Supplier<BinaryEncoder> encoder, String... mediaTypes) {
+    this.contentType = contentType;
+    this.encoder = encoder;
+    this.mediaTypes = Arrays.asList(mediaTypes);
+  }
+
+  public String getContentType() {
+    return contentType;
+  }
+
+  /**
+   * Returns the binary format with the highest quality accepted by the client.
+   *
+   * @return the format, or null when the client does not accept any or prefers JSON
+   */
+  public static CompactCatalogFormat negotiate(String accept) {
+    if (StringUtils.isBlank(accept)) {
+      return null;
+    }
+    CompactCatalogFormat format = null;
+    double quality = 0;
+    for (String range : StringUtils.split(accept, ',')) {
+      String[] parts = StringUtils.split(range, ';');
+      if (parts.length == 0) {
+        continue;
+      }
+      String mediaType = parts[0].trim().toLowerCase(Locale.ROOT);
+      double rangeQuality = ResponseCompression.parseQuality(parts);
+      if (rangeQuality <= quality) {
+        continue;
+      }
+      if (JSON.equals(mediaType)) {
+        format = null;
+        quality = rangeQuality;
+      }
+      for (CompactCatalogFormat candidate : values()) {
+        if (candidate.mediaTypes.contains(mediaType)) {
+          format = candidate;
+          quality = rangeQuality;
+        }
+      }
+    }
+    return format;
+  }
+
+  /**
+   * Writes the apps in this format.
+   *
+   * @param installedVersionIds
+   *     the versions installed in the client, or null when the client did not send them
+   */
+  public byte[] write(List<ResolvedRoleApp> roleApps, Set<String> installedVersionIds) {
+    BinaryEncoder output = encoder.get();
+    output.writeMapHeader(2).writeString("fields").writeArrayHeader(ResolvedRoleApp.FIELDS.size());
+    for (String field : ResolvedRoleApp.FIELDS) {
+      output.writeString(field);
+    }
+    output.writeString("apps").writeArrayHeader(roleApps.size());
+    for (ResolvedRoleApp roleApp : roleApps) {
+      roleApp.writeTo(output, installedVersionIds);
+    }
+    return output.toByteArray();
+  }
+}
@@ -0,0 +1,177 @@
+package com.etendoerp.dynamic.app.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import com.etendoerp.dynamic.app.data.DynamicAppVersion;
+import com.etendoerp.dynamic.app.data.DynamicRoleApp;
+
+/**
+ * Immutable snapshot of an app assigned to a role, with its effective version and bundle path already
+ * resolved. It holds no reference to DAL objects so it can be shared between requests and threads.
+ */
+public class ResolvedRoleApp {
+  /**
+   * Names of the values written by {@link #writeTo}, the same as the ones of {@link #toJSON}.
+   */
+  static final List<String> FIELDS = Collections.unmodifiableList(Arrays.asList("id", "etdappApp", "etdappAppName",
+      "etdappAppVersion", "etdappAppVersionName", "etdappShareEnabled", "etdappAppVersionIsDev", "path",
+      "etdappBundleSha256", "etdappBundleSize", "etdappBundleGzipSize", "upToDate"));
+
+  private final String id;
+  private final String appId;
+  private final String appName;
+  private final String versionId;
+  private final String versionName;
+  private final boolean shareEnabled;
+  private final boolean development;
+  private final String path;
+  private final BundleMetadata bundle;
+
+  public ResolvedRoleApp(String id, String appId, String appName, String versionId, String versionName,
+      boolean shareEnabled, boolean development, String path) {
+    this(id, appId, appName, versionId, versionName, shareEnabled, development, path, null);
+  }
+
+  /**
+   * @param bundle
+   *     the metadata of the bundle of the version, null while it is being computed
+   */
+  public ResolvedRoleApp(String id, String appId, String appName, String versionId, String versionName,
+      boolean shareEnabled, boolean development, String path, BundleMetadata bundle) {
+    this.id = id;
+    this.appId = appId;
+    this.appName = appName;
+    this.versionId = versionId;
+    this.versionName = versionName;
+    this.shareEnabled = shareEnabled;
+    this.development = development;
+    this.path = path;
+    this.bundle = bundle;
+  }
+
+  public static ResolvedRoleApp from(DynamicRoleApp roleApp, DynamicAppVersion version, String path) {
+    return new ResolvedRoleApp(roleApp.getId(), roleApp.getEtdappApp().getId(), roleApp.getEtdappApp().getName(),
+        version.getId(), version.getName(), Boolean.TRUE.equals(version.isReceiveExternalFiles()),
+        Boolean.TRUE.equals(version.isDevelopment()), path, BundleMetadata.from(version));
+  }
+
+  public JSONObject toJSON() throws JSONException {
+    JSONObject roleAppJson = new JSONObject();
+    roleAppJson.put("id", id);
+    roleAppJson.put("etdappApp", appId);
+    roleAppJson.put("etdappAppName", appName);
+    roleAppJson.put("etdappAppVersion", versionId);
+    roleAppJson.put("etdappAppVersionName", versionName);
+    roleAppJson.put("etdappShareEnabled", shareEnabled);
+    if (development) {
+      roleAppJson.put("etdappAppVersionIsDev", development);
+    }
+    roleAppJson.put("path", path);
+    if (bundle != null) {
+      bundle.addTo(roleAppJson);
+    }
+    return roleAppJson;
+  }
+
+  /**
+   * Returns the app compared with the versions installed in the client: only the ids when the resolved version is
+   * installed, the whole app otherwise.
+   */
+  public JSONObject toJSON(Set<String> installedVersionIds) throws JSONException {
+    boolean upToDate = installedVersionIds.contains(versionId);
+    JSONObject roleAppJson;
+    if (upToDate) {
+      roleAppJson = new JSONObject();
+      roleAppJson.put("id", id);
+      roleAppJson.put("etdappApp", appId);
+      roleAppJson.put("etdappAppVersion", versionId);
+    } else {
+      roleAppJson = toJSON();
+    }
+    roleAppJson.put("upToDate", upToDate);
+    return roleAppJson;
+  }
+
+  /**
+   * Writes the values of the app in the order of {@link #FIELDS}, with null for the values {@link #toJSON} leaves
+   * out.
+   *
+   * @param installedVersionIds
+   *     the versions installed in the client, or null when the client did not send them
+   */
+  void writeTo(BinaryEncoder encoder, Set<String> installedVersionIds) {
+    boolean upToDate = installedVersionIds != null && installedVersionIds.contains(versionId);
+    encoder.writeArrayHeader(FIELDS.size());
+    encoder.writeString(id).writeString(appId);
+    if (upToDate) {
+      encoder.writeNull().writeString(versionId);
+      // The version is installed, the rest of its values are left out
+      for (int i = FIELDS.indexOf("etdappAppVersionName"); i < FIELDS.indexOf("upToDate"); i++) {
+        encoder.writeNull();
+      }
+    } else {
+      encoder.writeString(appName)
+          .writeString(versionId)
+          .writeNullable(versionName)
+          .writeBoolean(shareEnabled);
+      if (development) {
+        encoder.writeBoolean(true);
+      } else {
+        encoder.writeNull();
+      }
+      encoder.writeNullable(path);
+      if (bundle != null) {
+        encoder.writeString(bundle.getSha256()).writeLong(bundle.getSize()).writeLong(bundle.getGzipSize());
+      } else {
+        encoder.writeNull().writeNull().writeNull();
+      }
+    }
+    if (installedVersionIds != null) {
+      encoder.writeBoolean(upToDate);
+    } else {
+      encoder.writeNull();
+    }
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getAppId() {
+    return appId;
+  }
+
+  public String getAppName() {
+    return appName;
+  }
+
+  public String getVersionId() {
+    return versionId;
+  }
+
+  public String getVersionName() {
+    return versionName;
+  }
+
+  public boolean isShareEnabled() {
+    return shareEnabled;
+  }
+
+  public boolean isDevelopment() {
+    return development;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public BundleMetadata getBundle() {
+    return bundle;
+  }
+}
@@ -0,0 +1,152 @@
+package com.etendoerp.dynamic.app.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openbravo.base.exception.OBException;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+import com.etendoerp.dynamic.app.modulescript.ResolvedRoleAppSql;
+import com.etendoerp.dynamic.app.util.DynamicAppProperties;
+
+/**
+ * Access to ETDAPP_ROLE_APP_RESOLVED, the denormalized copy of the apps of each role with their effective version
+ * and unresolved bundle path, so the apps of a role and of the roles it inherits from are read with range scans
+ * of the role index.
+ * <p>
+ * The rows are rebuilt from ETDAPP_ROLE_APP, ETDAPP_APP and ETDAPP_APP_VERSION, by role or by app, in the same
+ * transaction that changes them. Set {@code etdapp.catalog.materialized} to {@code false} to resolve the apps
+ * through the DAL instead.
+ */
+public class ResolvedRoleAppStore {
+  private static final String SELECT_SQL = "SELECT ETDAPP_ROLE_APP_ID, AD_ROLE_ID, ETDAPP_APP_ID, APP_NAME,"
+      + " ETDAPP_APP_VERSION_ID, VERSION_NAME, SHARE_ENABLED, ISDEVELOPMENT, PATH, BUNDLE_SHA256, BUNDLE_SIZE,"
+      + " BUNDLE_GZIP_SIZE FROM ETDAPP_ROLE_APP_RESOLVED"
+      + " WHERE %s AND %s AND %s ORDER BY ETDAPP_ROLE_APP_ID";
+  private static final int MAX_IN_LIST = 1000;
+  static final String ROLE_COLUMN = "AD_ROLE_ID";
+  static final String APP_COLUMN = "ETDAPP_APP_ID";
+
+  private ResolvedRoleAppStore() {
+  }
+
+  public static boolean isEnabled() {
+    return !"false".equalsIgnoreCase(DynamicAppProperties.getString("etdapp.catalog.materialized", "true"));
+  }
+
+  /**
+   * Reads the apps of the roles assigned in the given clients and organizations, grouped by role. The bundle paths
+   * still contain {@code @basedesign@}, it is replaced here.
+   *
+   * @throws OBException
+   *     when an app of the roles has no version and no default version
+   */
+  public static Map<String, List<ResolvedRoleApp>> read(Connection connection, List<String> roleIds,
+      List<String> clientIds, List<String> orgIds) throws SQLException {
+    Map<String, List<ResolvedRoleApp>> roleApps = new HashMap<>();
+    String sql = String.format(SELECT_SQL, inClause(ROLE_COLUMN, roleIds.size()),
+        inClause("AD_CLIENT_ID", clientIds.size()), inClause("AD_ORG_ID", orgIds.size()));
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      int index = 1;
+      for (String roleId : roleIds) {
+        statement.setString(index++, roleId);
+      }
+      for (String clientId : clientIds) {
+        statement.setString(index++, clientId);
+      }
+      for (String orgId : orgIds) {
+        statement.setString(index++, orgId);
+      }
+      try (ResultSet rs = statement.executeQuery()) {
+        while (rs.next()) {
+          String versionId = rs.getString("ETDAPP_APP_VERSION_ID");
+          if (versionId == null) {
+            throw new OBException(String.format(OBMessageUtils.messageBD("ETDAPP_NoDefaultVersion"),
+                rs.getString("APP_NAME")));
+          }
+          String path = RoleAppResolver.resolveDirectory(rs.getString("PATH")).replace("//", "/");
+          ResolvedRoleApp roleApp = new ResolvedRoleApp(rs.getString("ETDAPP_ROLE_APP_ID"),
+              rs.getString("ETDAPP_APP_ID"), rs.getString("APP_NAME"), versionId, rs.getString("VERSION_NAME"),
+              "Y".equals(rs.getString("SHARE_ENABLED")), "Y".equals(rs.getString("ISDEVELOPMENT")), path,
+              readBundle(rs));
+          roleApps.computeIfAbsent(rs.getString(ROLE_COLUMN), id -> new ArrayList<>()).add(roleApp);
+        }
+      }
+    }
+    return roleApps;
+  }
+
+  private static BundleMetadata readBundle(ResultSet rs) throws SQLException {
+    String sha256 = rs.getString("BUNDLE_SHA256");
+    if (sha256 == null) {
+      return null;
+    }
+    return new BundleMetadata(sha256, rs.getLong("BUNDLE_SIZE"), rs.getLong("BUNDLE_GZIP_SIZE"));
+  }
+
+  public static void refreshRoles(Connection connection, Collection<String> roleIds) throws SQLException {
+    refresh(connection, ROLE_COLUMN, roleIds);
+  }
+
+  public static void refreshApps(Connection connection, Collection<String> appIds) throws SQLException {
+    refresh(connection, APP_COLUMN, appIds);
+  }
+
+  /**
+   * Rebuilds every row, used to populate the table.
+   */
+  public static void refreshAll(Connection connection) throws SQLException {
+    try (PreparedStatement delete = connection.prepareStatement(ResolvedRoleAppSql.DELETE_SQL);
+        PreparedStatement insert = connection.prepareStatement(ResolvedRoleAppSql.INSERT_SQL)) {
+      delete.executeUpdate();
+      insert.executeUpdate();
+    }
+  }
+
+  private static void refresh(Connection connection, String column, Collection<String> ids) throws SQLException {
+    List<String> pending = new ArrayList<>(ids);
+    for (int from = 0; from < pending.size(); from += MAX_IN_LIST) {
+      refreshChunk(connection, column, pending.subList(from, Math.min(pending.size(), from + MAX_IN_LIST)));
+    }
+  }
+
+  private static void refreshChunk(Connection connection, String column, List<String> ids) throws SQLException {
+    String deleteSql = ResolvedRoleAppSql.DELETE_SQL + " WHERE " + inClause(column, ids.size());
+    String insertSql = ResolvedRoleAppSql.INSERT_SQL + " AND " + inClause("RA." + column, ids.size());
+    try (PreparedStatement delete = connection.prepareStatement(deleteSql);
+        PreparedStatement insert = connection.prepareStatement(insertSql)) {
+      int index = 1;
+      for (String id : ids) {
+        delete.setString(index, id);
+        insert.setString(index, id);
+        index++;
+      }
+      delete.executeUpdate();
+      insert.executeUpdate();
+    }
+  }
+
+  /**
+   * Returns a condition matching the column against the given number of parameters, split in lists of at most
+   * {@value #MAX_IN_LIST} elements.
+   */
+  static String inClause(String column, int size) {
+    if (size == 0) {
+      return "1 = 0";
+    }
+    List<String> lists = new ArrayList<>();
+    for (int from = 0; from < size; from += MAX_IN_LIST) {
+      int length = Math.min(MAX_IN_LIST, size - from);
+      lists.add(column + " IN (" + String.join(", ", Collections.nCopies(length, "?")) + ")");
+    }
+    return lists.size() == 1 ? lists.get(0) : "(" + String.join(" OR ", lists) + ")";
+  }
+}
@@ -0,0 +1,108 @@
+package com.etendoerp.dynamic.app.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.etendoerp.dynamic.app.util.DynamicAppProperties;
+
+/**
+ * Compresses the responses of the web services with the encoding negotiated through {@code Accept-Encoding}, gzip
+ * or deflate. Responses smaller than {@code etdapp.compression.minBytes} bytes are sent as they are.
+ * Set {@code etdapp.compression.enabled} to {@code false} to disable it.
+ */
+public class ResponseCompression {
+  public static final String GZIP = "gzip";
+  public static final String DEFLATE = "deflate";
+  private static final long DEFAULT_MIN_BYTES = 1024;
+
+  private static ResponseCompression instance;
+
+  private final long minBytes;
+
+  public static synchronized ResponseCompression getInstance() {
+    if (instance == null) {
+      instance = new ResponseCompression(
+          DynamicAppProperties.getLong("etdapp.compression.minBytes", DEFAULT_MIN_BYTES));
+    }
+    return instance;
+  }
+
+  ResponseCompression(long minBytes) {
+    this.minBytes = minBytes;
+  }
+
+  public static boolean isEnabled() {
+    return !"false".equalsIgnoreCase(DynamicAppProperties.getString("etdapp.compression.enabled", "true"));
+  }
+
+  /**
+   * Returns the encoding with the highest quality accepted by the client, preferring gzip on ties.
+   *
+   * @return {@link #GZIP}, {@link #DEFLATE} or null when the client accepts neither
+   */
+  public static String negotiate(String acceptEncoding) {
+    if (StringUtils.isBlank(acceptEncoding)) {
+      return null;
+    }
+    String encoding = null;
+    double quality = 0;
+    for (String coding : StringUtils.split(acceptEncoding, ',')) {
+      String[] parts = StringUtils.split(coding, ';');
+      if (parts.length == 0) {
+        continue;
+      }
+      String name = parts[0].trim().toLowerCase(Locale.ROOT);
+      String candidate = GZIP.equals(name) || "x-gzip".equals(name) || "*".equals(name) ? GZIP
+          : DEFLATE.equals(name) ? DEFLATE : null;
+      double candidateQuality = parseQuality(parts);
+      boolean better = candidateQuality > quality || (candidateQuality == quality && GZIP.equals(candidate));
+      if (candidate != null && candidateQuality > 0 && better) {
+        encoding = candidate;
+        quality = candidateQuality;
+      }
+    }
+    return encoding;
+  }
+
+  /**
+   * Returns the quality of a value of an {@code Accept} header split by {@code ;}, 1 when it has none.
+   */
+  static double parseQuality(String[] parts) {
+    for (int i = 1; i < parts.length; i++) {
+      String parameter = parts[i].trim();
+      if (parameter.startsWith("q=")) {
+        try {
+          return Double.parseDouble(parameter.substring(2));
+        } catch (NumberFormatException e) {
+          return 0;
+        }
+      }
+    }
+    return 1;
+  }
+
+  /**
+   * Returns whether the body is big enough to be compressed.
+   */
+  public boolean shouldCompress(byte[] body) {
+    return body.length >= minBytes;
+  }
+
+  /**
+   * Returns the body compressed with the encoding.
+   */
+  public byte[] compress(byte[] body, String encoding) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream(body.length / 4 + 32);
+    try (OutputStream compressed = GZIP.equals(encoding) ? new GZIPOutputStream(output)
+        : new DeflaterOutputStream(output)) {
+      compressed.write(body);
+    }
+    return output.toByteArray();
+  }
+}
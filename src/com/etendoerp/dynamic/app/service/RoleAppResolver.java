@@ -0,0 +1,194 @@
+package com.etendoerp.dynamic.app.service;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.sql.JoinType;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.dal.core.DalContextListener;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBCriteria;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+import org.openbravo.model.ad.access.Role;
+import org.openbravo.model.ad.access.RoleInheritance;
+
+import com.etendoerp.dynamic.app.cache.AppCatalogCache;
+import com.etendoerp.dynamic.app.cache.RoleInheritanceCache;
+import com.etendoerp.dynamic.app.data.DynamicApp;
+import com.etendoerp.dynamic.app.data.DynamicAppVersion;
+import com.etendoerp.dynamic.app.data.DynamicRoleApp;
+import com.etendoerp.dynamic.app.jfr.AppsRequestPhaseEvent;
+
+/**
+ * Resolves the apps a role can use, its own and the ones of the roles it inherits from, with the version and
+ * bundle path of each one, through the {@link AppCatalogCache}. Misses are read from the
+ * {@link CatalogSnapshot} while the node starts, then from the {@link ResolvedRoleAppStore} or, when it is
+ * disabled, resolved through the DAL. The inherited roles are flattened once per role by the
+ * {@link RoleInheritanceCache}.
+ */
+public class RoleAppResolver {
+
+  /**
+   * Returns the role of the request: the one of the token when present, otherwise the role of the context.
+   */
+  public Role getRole(String roleId) {
+    Role role = OBContext.getOBContext().getRole();
+    if (!StringUtils.isEmpty(roleId)) {
+      role = OBDal.getInstance().get(Role.class, roleId);
+    }
+    return role;
+  }
+
+  public List<ResolvedRoleApp> getRoleApps(Role role) throws Exception {
+    return AppCatalogCache.getInstance().get(role.getId(), () -> loadCatalogApps(role));
+  }
+
+  /**
+   * Returns the role followed by the roles it inherits from, directly or through other roles.
+   */
+  public List<String> getEffectiveRoles(Role role) {
+    return RoleInheritanceCache.getInstance().getEffectiveRoles(role.getId(), this::getInheritedRoleIds);
+  }
+
+  /**
+   * Resolves the apps of the role without going through the cache.
+   */
+  List<ResolvedRoleApp> loadRoleApps(Role role) throws SQLException {
+    List<String> roleIds = getEffectiveRoles(role);
+    if (!ResolvedRoleAppStore.isEnabled()) {
+      return mergeInherited(roleIds, resolveRoleApps(role, roleIds));
+    }
+    AppsRequestPhaseEvent iterationEvent = AppsRequestPhaseEvent.start(AppsRequestPhaseEvent.ROLE_APP_ITERATION);
+    OBContext context = OBContext.getOBContext();
+    List<ResolvedRoleApp> roleApps = mergeInherited(roleIds, ResolvedRoleAppStore.read(
+        OBDal.getInstance().getConnection(false), roleIds, Arrays.asList(context.getReadableClients()),
+        Arrays.asList(context.getReadableOrganizations())));
+    iterationEvent.finish(role.getId(), roleApps.size());
+    return roleApps;
+  }
+
+  /**
+   * Resolves the apps of the role for the cache, from the {@link CatalogSnapshot} while the node starts.
+   */
+  private List<ResolvedRoleApp> loadCatalogApps(Role role) throws SQLException {
+    if (CatalogSnapshot.isEnabled()) {
+      List<String> roleIds = getEffectiveRoles(role);
+      OBContext context = OBContext.getOBContext();
+      Map<String, List<ResolvedRoleApp>> appsByRole = CatalogSnapshot.getInstance().read(roleIds,
+          Arrays.asList(context.getReadableClients()), Arrays.asList(context.getReadableOrganizations()));
+      if (appsByRole != null) {
+        return mergeInherited(roleIds, appsByRole);
+      }
+    }
+    return loadRoleApps(role);
+  }
+
+  /**
+   * Returns the apps of the roles in inheritance order. An app assigned to several of them is taken from the
+   * first one, so a role can override the version of an app it inherits.
+   */
+  static List<ResolvedRoleApp> mergeInherited(List<String> roleIds, Map<String, List<ResolvedRoleApp>> appsByRole) {
+    Map<String, ResolvedRoleApp> roleApps = new LinkedHashMap<>();
+    for (String roleId : roleIds) {
+      for (ResolvedRoleApp roleApp : appsByRole.getOrDefault(roleId, Collections.emptyList())) {
+        roleApps.putIfAbsent(roleApp.getAppId(), roleApp);
+      }
+    }
+    return new ArrayList<>(roleApps.values());
+  }
+
+  private Map<String, List<ResolvedRoleApp>> resolveRoleApps(Role role, List<String> roleIds) {
+    AppsRequestPhaseEvent iterationEvent = AppsRequestPhaseEvent.start(AppsRequestPhaseEvent.ROLE_APP_ITERATION);
+    Map<String, List<ResolvedRoleApp>> roleApps = new HashMap<>();
+    int count = 0;
+    for (DynamicRoleApp roleApp : getActiveRoleApps(roleIds)) {
+      DynamicAppVersion version = roleApp.getEtdappAppVersion();
+      if (version == null) {
+        AppsRequestPhaseEvent versionEvent = AppsRequestPhaseEvent
+            .start(AppsRequestPhaseEvent.DEFAULT_VERSION_RESOLUTION);
+        version = getVersionDefault(roleApp.getEtdappApp());
+        versionEvent.finish(role.getId(), 1);
+      }
+      AppsRequestPhaseEvent pathEvent = AppsRequestPhaseEvent.start(AppsRequestPhaseEvent.PATH_RESOLUTION);
+      String strFinalPath = resolveBundlePath(roleApp.getEtdappApp(), version);
+      pathEvent.finish(role.getId(), 1);
+
+      roleApps.computeIfAbsent(roleApp.getRole().getId(), id -> new ArrayList<>())
+          .add(ResolvedRoleApp.from(roleApp, version, strFinalPath));
+      count++;
+    }
+    iterationEvent.finish(role.getId(), count);
+    return roleApps;
+  }
+
+  /**
+   * Returns the active assignments of the roles to active apps and versions, in the readable clients and
+   * organizations. The assignments without version are resolved later to the default one.
+   */
+  private List<DynamicRoleApp> getActiveRoleApps(List<String> roleIds) {
+    OBCriteria<DynamicRoleApp> criteria = OBDal.getInstance().createCriteria(DynamicRoleApp.class);
+    criteria.createAlias(DynamicRoleApp.PROPERTY_ETDAPPAPP, "app");
+    criteria.createAlias(DynamicRoleApp.PROPERTY_ETDAPPAPPVERSION, "version", JoinType.LEFT_OUTER_JOIN);
+    criteria.add(Restrictions.in(DynamicRoleApp.PROPERTY_ROLE + ".id", roleIds));
+    criteria.add(Restrictions.eq("app." + DynamicApp.PROPERTY_ACTIVE, true));
+    criteria.add(Restrictions.or(Restrictions.isNull(DynamicRoleApp.PROPERTY_ETDAPPAPPVERSION),
+        Restrictions.eq("version." + DynamicAppVersion.PROPERTY_ACTIVE, true)));
+    criteria.addOrderBy(DynamicRoleApp.PROPERTY_ID, true);
+    return criteria.list();
+  }
+
+  /**
+   * Returns the roles the role inherits from directly, the roles it inherits first come first.
+   */
+  private List<String> getInheritedRoleIds(String roleId) {
+    OBCriteria<RoleInheritance> criteria = OBDal.getInstance().createCriteria(RoleInheritance.class);
+    criteria.add(Restrictions.eq(RoleInheritance.PROPERTY_ROLE + ".id", roleId));
+    criteria.addOrderBy(RoleInheritance.PROPERTY_SEQUENCENUMBER, true);
+    List<String> roleIds = new ArrayList<>();
+    for (RoleInheritance inheritance : criteria.list()) {
+      roleIds.add(inheritance.getInheritFrom().getId());
+    }
+    return roleIds;
+  }
+
+  /**
+   * Returns the path of the bundle of the version, replacing {@code @basedesign@} in the directory of the app.
+   */
+  public static String resolveBundlePath(DynamicApp app, DynamicAppVersion version) {
+    String strFinalPath = resolveDirectory(app) + version.getFileName();
+    return strFinalPath.replace("//", "/");
+  }
+
+  /**
+   * Returns the directory of the bundles of the app, replacing {@code @basedesign@}.
+   */
+  public static String resolveDirectory(DynamicApp app) {
+    return resolveDirectory(app.getDirectoryLocation());
+  }
+
+  public static String resolveDirectory(String directoryLocation) {
+    String strBaseDesign = DalContextListener.getServletContext().getRealPath("") + "src-loc/design/";
+    return directoryLocation.replace("@basedesign@", strBaseDesign);
+  }
+
+  private DynamicAppVersion getVersionDefault(DynamicApp etdappApp) {
+    OBCriteria<DynamicAppVersion> cAppVersion = OBDal.getInstance().createCriteria(DynamicAppVersion.class);
+    cAppVersion.add(Restrictions.eq(DynamicAppVersion.PROPERTY_ETDAPPAPP, etdappApp));
+    cAppVersion.add(Restrictions.eq(DynamicAppVersion.PROPERTY_DEFAULT, true));
+    cAppVersion.setMaxResults(1);
+    DynamicAppVersion version = (DynamicAppVersion) cAppVersion.uniqueResult();
+    if (version == null) {
+      throw new OBException(String.format(OBMessageUtils.messageBD("ETDAPP_NoDefaultVersion"), etdappApp.getName()));
+    }
+    return version;
+  }
+}
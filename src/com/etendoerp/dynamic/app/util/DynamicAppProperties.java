@@ -0,0 +1,36 @@
+package com.etendoerp.dynamic.app.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.base.session.OBPropertiesProvider;
+
+/**
+ * Access to the {@code etdapp.*} settings of Openbravo.properties, falling back to a default value when the
+ * property is missing, invalid or the properties are not loaded.
+ */
+public class DynamicAppProperties {
+  private static final Logger log = LogManager.getLogger();
+
+  private DynamicAppProperties() {
+  }
+
+  public static long getLong(String name, long defaultValue) {
+    try {
+      String value = OBPropertiesProvider.getInstance().getOpenbravoProperties().getProperty(name);
+      return value != null ? Long.parseLong(value.trim()) : defaultValue;
+    } catch (Exception e) {
+      log.debug("Using default value for {}", name, e);
+      return defaultValue;
+    }
+  }
+
+  public static String getString(String name, String defaultValue) {
+    try {
+      String value = OBPropertiesProvider.getInstance().getOpenbravoProperties().getProperty(name);
+      return value != null && !value.trim().isEmpty() ? value.trim() : defaultValue;
+    } catch (Exception e) {
+      log.debug("Using default value for {}", name, e);
+      return defaultValue;
+    }
+  }
+}